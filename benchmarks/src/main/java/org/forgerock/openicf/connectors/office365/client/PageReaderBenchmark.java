@@ -0,0 +1,74 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.forgerock.openicf.connectors.office365.client.objects.CreateUser;
+import org.forgerock.openicf.connectors.office365.client.objects.Group;
+import org.forgerock.openicf.connectors.office365.client.objects.O365Object;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of full result pages, the $top=999 pages read by searches and reconciliations.
+ * Scores are per object.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PageReaderBenchmark {
+
+    private static final int PAGE_SIZE = 999;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private byte[] userPage;
+    private byte[] groupPage;
+
+    @Setup
+    public void setUp() throws IOException {
+        userPage = mapper.writeValueAsBytes(Payloads.page("users", PAGE_SIZE));
+        groupPage = mapper.writeValueAsBytes(Payloads.page("groups", PAGE_SIZE));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_SIZE)
+    public Page<O365Object> decodeUserPage() throws IOException {
+        return new PageReader<O365Object>(mapper, CreateUser.class).read(new ByteArrayInputStream(userPage));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_SIZE)
+    public Page<O365Object> decodeGroupPage() throws IOException {
+        return new PageReader<O365Object>(mapper, Group.class).read(new ByteArrayInputStream(groupPage));
+    }
+}
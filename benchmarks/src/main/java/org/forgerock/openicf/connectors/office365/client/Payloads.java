@@ -0,0 +1,106 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Synthetic Graph payloads, shaped like the responses of a real tenant.
+ */
+public final class Payloads {
+
+    private static final String DOMAIN = "@contoso.onmicrosoft.com";
+
+    private Payloads() {}
+
+    /**
+     * Return a user as returned by GET /users
+     *
+     * @param i number of the user, which makes its properties unique
+     * @return the JSON object of the user
+     */
+    public static Map<String, Object> user(int i) {
+        Map<String, Object> user = new LinkedHashMap<String, Object>();
+        user.put("id", new UUID(0x5eed, i).toString());
+        user.put("accountEnabled", i % 10 != 0);
+        user.put("city", "Bristol");
+        user.put("companyName", "Contoso");
+        user.put("country", "United Kingdom");
+        user.put("department", "Engineering " + (i % 20));
+        user.put("displayName", "User " + i);
+        user.put("givenName", "Given" + i);
+        user.put("jobTitle", "Engineer");
+        user.put("mail", "user" + i + DOMAIN);
+        user.put("mailNickname", "user" + i);
+        user.put("mobilePhone", "+44 7700 " + (900000 + i % 100000));
+        user.put("onPremisesSecurityIdentifier", null);
+        user.put("passwordPolicies", "DisablePasswordExpiration");
+        user.put("postalCode", "BS1 " + (i % 10) + "AA");
+        user.put("preferredLanguage", "en-GB");
+        user.put("state", null);
+        user.put("streetAddress", i + " Queen Square");
+        user.put("surname", "Surname" + i);
+        user.put("usageLocation", "GB");
+        user.put("userPrincipalName", "user" + i + DOMAIN);
+        user.put("userType", "Member");
+        return user;
+    }
+
+    /**
+     * Return a group as returned by GET /groups
+     *
+     * @param i number of the group, which makes its properties unique
+     * @return the JSON object of the group
+     */
+    public static Map<String, Object> group(int i) {
+        Map<String, Object> group = new LinkedHashMap<String, Object>();
+        group.put("id", new UUID(0x6e0c, i).toString());
+        group.put("description", "Synthetic group " + i);
+        group.put("displayName", "Group " + i);
+        group.put("mail", "group" + i + DOMAIN);
+        group.put("mailEnabled", true);
+        group.put("mailNickname", "group" + i);
+        group.put("onPremisesSecurityIdentifier", null);
+        group.put("proxyAddresses", Arrays.asList("SMTP:group" + i + DOMAIN, "smtp:g" + i + DOMAIN));
+        group.put("securityEnabled", false);
+        return group;
+    }
+
+    /**
+     * Return a page of a collection query
+     *
+     * @param entitySet users or groups
+     * @param size number of objects in the page
+     * @return the JSON object of the page, with a next link
+     */
+    public static Map<String, Object> page(String entitySet, int size) {
+        List<Map<String, Object>> value = new ArrayList<Map<String, Object>>(size);
+        for (int i = 0; i < size; i++) {
+            value.add("users".equals(entitySet) ? user(i) : group(i));
+        }
+        Map<String, Object> page = new LinkedHashMap<String, Object>();
+        page.put("@odata.context", "https://graph.microsoft.com/v1.0/$metadata#" + entitySet);
+        page.put("@odata.nextLink", "https://graph.microsoft.com/v1.0/" + entitySet
+                + "?$top=" + size + "&$skiptoken=X%274453707402000100000017557365722D" + size + "%27");
+        page.put("value", value);
+        return page;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client.objects;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.forgerock.openicf.connectors.office365.O365Configuration;
+import org.forgerock.openicf.connectors.office365.client.Payloads;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversions of single objects between Graph beans, ICF Attributes and request bodies.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConversionBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private CreateUser user;
+    private Group group;
+    private Set<Attribute> userAttributes;
+    private Set<Attribute> groupAttributes;
+    private Map<String, Object> userChanges;
+
+    @Setup
+    public void setUp() throws IOException {
+        user = mapper.readValue(mapper.writeValueAsBytes(Payloads.user(42)), CreateUser.class);
+        group = mapper.readValue(mapper.writeValueAsBytes(Payloads.group(42)), Group.class);
+        userAttributes = user.toAttributes();
+        groupAttributes = group.toAttributes();
+        userChanges = ObjectClassSchema.ACCOUNT.getChanges(userAttributes, O365Configuration.FIELD_ACCOUNT_NAME);
+    }
+
+    @Benchmark
+    public Set<Attribute> userToAttributes() {
+        return user.toAttributes();
+    }
+
+    @Benchmark
+    public CreateUser userFromAttributes() {
+        return new CreateUser(userAttributes);
+    }
+
+    @Benchmark
+    public Set<Attribute> groupToAttributes() {
+        return group.toAttributes();
+    }
+
+    @Benchmark
+    public Group groupFromAttributes() {
+        return new Group(groupAttributes);
+    }
+
+    @Benchmark
+    public Map<String, Object> userChanges() {
+        return ObjectClassSchema.ACCOUNT.getChanges(userAttributes, O365Configuration.FIELD_ACCOUNT_NAME);
+    }
+
+    @Benchmark
+    public byte[] userPatchBody() throws IOException {
+        return mapper.writeValueAsBytes(userChanges);
+    }
+
+    @Benchmark
+    public byte[] userCreateBody() throws IOException {
+        return mapper.writeValueAsBytes(user);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JVM-wide executors for the connector's background work (pool eviction, token renewal,
+ * page prefetching...).
+ *
+ * All threads are daemons so that a connector bundle never keeps the hosting JVM alive.
+ */
+public final class BackgroundExecutors {
+
+    private static final ScheduledExecutorService scheduler;
+    static {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(2, new DaemonThreadFactory("o365-scheduler"));
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        scheduler = executor;
+    }
+
+    private static final ExecutorService prefetcher =
+            Executors.newCachedThreadPool(new DaemonThreadFactory("o365-prefetch"));
+
+    private static final ExecutorService renewer =
+            Executors.newCachedThreadPool(new DaemonThreadFactory("o365-renewal"));
+
+    private BackgroundExecutors() {}
+
+    /**
+     * Return the shared scheduler used for delayed and periodic housekeeping tasks.
+     * Tasks submitted here must be short, at most a single request to the tenant.
+     *
+     * @return the shared scheduler
+     */
+    public static ScheduledExecutorService scheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Return the shared executor running long-lived producer tasks, such as fetching the
+     * following pages of a query while the current one is being handled. Threads are
+     * created on demand and reclaimed once idle.
+     *
+     * @return the shared prefetch executor
+     */
+    public static ExecutorService prefetcher() {
+        return prefetcher;
+    }
+
+    /**
+     * Return the shared executor running background token renewals. A renewal may wait out
+     * the retries of its token request, so it runs here rather than on the scheduler, whose
+     * few threads must stay free for housekeeping.
+     *
+     * @return the shared renewal executor
+     */
+    public static ExecutorService renewer() {
+        return renewer;
+    }
+
+    /**
+     * ThreadFactory producing named daemon threads
+     */
+    static final class DaemonThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+/**
+ * One sub-request of a Graph JSON $batch request.
+ */
+public class BatchRequest {
+    private final String method;
+    private final String url;
+    private final Object body;
+    private final RequestCost cost;
+
+    /**
+     * Create a batch sub-request standing for a single operation
+     *
+     * @param method the HTTP method
+     * @param url the URL relative to the Graph API version root, e.g. {@code /users/{id}}
+     * @param body the JSON body, or null
+     */
+    public BatchRequest(String method, String url, Object body) {
+        this(method, url, body, RequestCost.of(method));
+    }
+
+    /**
+     * Create a batch sub-request
+     *
+     * @param method the HTTP method
+     * @param url the URL relative to the Graph API version root, e.g. {@code /users/{id}}
+     * @param body the JSON body, or null
+     * @param cost the operations the sub-request stands for
+     */
+    public BatchRequest(String method, String url, Object body, RequestCost cost) {
+        this.method = method;
+        this.url = url;
+        this.body = body;
+        this.cost = cost;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public Object getBody() {
+        return body;
+    }
+
+    public RequestCost getCost() {
+        return cost;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import org.forgerock.json.JsonValue;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The outcome of one sub-request of a Graph JSON $batch request.
+ */
+public class BatchResponse {
+    private final int status;
+    private final JsonValue body;
+    private final Map<String, String> headers;
+
+    public BatchResponse(int status, JsonValue body) {
+        this(status, Collections.<String, String>emptyMap(), body);
+    }
+
+    public BatchResponse(int status, Map<String, String> headers, JsonValue body) {
+        this.status = status;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public JsonValue getBody() {
+        return body;
+    }
+
+    /**
+     * Return a header of the sub-response, such as Retry-After
+     *
+     * @param name the header name, in any case
+     * @return the header value, or null if it is not set
+     */
+    public String getHeader(String name) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    public boolean isSuccessful() {
+        return status >= 200 && status < 300;
+    }
+
+    /**
+     * Return the Graph error message of a failed sub-request
+     *
+     * @return the error message, or the status if Graph did not send one
+     */
+    public String getErrorMessage() {
+        if (body != null && body.get("error").isNotNull() && body.get("error").get("message").isNotNull()) {
+            return body.get("error").get("message").asString();
+        }
+        return "HTTP " + status;
+    }
+}
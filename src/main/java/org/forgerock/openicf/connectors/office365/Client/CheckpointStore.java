@@ -0,0 +1,55 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+/**
+ * Records how far a full enumeration got, so that a failed one can be resumed instead of
+ * being restarted from the first page.
+ *
+ * Checkpoints are keyed by the URL of the first page of a query, which identifies its
+ * object class, filter and selected properties. The value is the URL of the next page to
+ * fetch. Implementations must be safe for use by concurrent searches.
+ */
+public interface CheckpointStore {
+
+    /**
+     * Return the URL of the next page to fetch for a query
+     *
+     * @param query the URL of the first page of the query
+     * @return the URL of the page to resume from, or null to start from the first page
+     */
+    String get(String query);
+
+    /**
+     * Record that every page of a query before the given one has been handled
+     *
+     * @param query the URL of the first page of the query
+     * @param link the URL of the next page to fetch
+     */
+    void put(String query, String link);
+
+    /**
+     * Forget the checkpoint of a query, once it is complete or abandoned
+     *
+     * @param query the URL of the first page of the query
+     */
+    void remove(String query);
+
+    /**
+     * Record the checkpoints that are still pending and release the store
+     */
+    void close();
+}
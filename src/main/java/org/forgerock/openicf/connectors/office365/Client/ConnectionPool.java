@@ -0,0 +1,383 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import org.forgerock.http.Client;
+import org.forgerock.http.HttpApplicationException;
+import org.forgerock.http.apache.sync.SyncHttpClientProvider;
+import org.forgerock.http.handler.HttpClientHandler;
+import org.forgerock.http.spi.Loader;
+import org.forgerock.openicf.connectors.office365.O365Configuration;
+import org.forgerock.util.Options;
+import org.identityconnectors.common.StringUtil;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.forgerock.http.handler.HttpClientHandler.OPTION_LOADER;
+import static org.forgerock.http.handler.HttpClientHandler.OPTION_MAX_CONNECTIONS;
+import static org.forgerock.http.handler.HttpClientHandler.OPTION_REUSE_CONNECTIONS;
+
+/**
+ * Shared pool of keep-alive HTTP connections to the Graph API.
+ *
+ * One pool is kept per tenant and is reused by every {@link Office365Client} the connector
+ * creates, so paged searches do not pay a new TCP and TLS handshake for each request. Pools
+ * are reference counted: once the last connector instance releases a pool, it is closed after
+ * it has been idle for the configured timeout.
+ *
+ * Pools are keyed by the tenant and by the settings they are built from, so a connector
+ * configured with other limits than the live pool of its tenant gets a pool of its own rather
+ * than silently running with the old limits.
+ */
+public final class ConnectionPool {
+    private static final Log logger = Log.getLog(ConnectionPool.class);
+
+    /** Upper bound in milliseconds of the backoff between two retries without server hint */
+    private static final long MAX_RETRY_DELAY = 30000;
+
+    /** Live pools by tenant and settings, also used as the lock for reference counting */
+    private static final Map<String, ConnectionPool> pools = new HashMap<String, ConnectionPool>();
+
+    private final String key;
+    private final String tenant;
+    private final HttpClientHandler handler;
+    private final Client client;
+    private final long idleTimeout;
+    private final RetryPolicy retryPolicy;
+    private final RetryBudget retryBudget;
+    private final RateLimiter readLimiter;
+    private final RateLimiter writeLimiter;
+    private final Metrics metrics = new Metrics();
+
+    /** Time of the last successful response received through this pool */
+    private volatile long lastSuccess = 0;
+
+    /** Token managers of this tenant by OAuth2 client id and credentials */
+    private final Map<String, TokenManager> tokenManagers = new HashMap<String, TokenManager>();
+
+    /** Write batchers of this tenant by OAuth2 client id, credentials and Graph endpoint */
+    private final Map<String, WriteBatcher> writeBatchers = new HashMap<String, WriteBatcher>();
+
+    /** Caches of objects looked up by id or name, by OAuth2 client id and credentials */
+    private final Map<String, ObjectCache> objectCaches = new HashMap<String, ObjectCache>();
+
+    /** Checkpoints of full enumerations, created on first use */
+    private CheckpointStore checkpointStore;
+
+    private int references = 0;
+    private ScheduledFuture<?> eviction;
+
+    private ConnectionPool(String key, O365Configuration configuration) {
+        this.key = key;
+        this.tenant = String.valueOf(configuration.getTenant());
+        this.idleTimeout = configuration.getConnectionIdleTimeout();
+        this.retryPolicy = new RetryPolicy(configuration.getMaxRetries(), configuration.getRetryBaseDelay(),
+                MAX_RETRY_DELAY, configuration.getMaxRetryDuration() * 1000L);
+        this.retryBudget = new RetryBudget(configuration.getRetryBudgetPercent() / 100.0);
+        this.readLimiter = configuration.getReadRequestsPerSecond() > 0
+                ? new RateLimiter(configuration.getReadRequestsPerSecond())
+                : null;
+        this.writeLimiter = configuration.getWriteRequestsPerSecond() > 0
+                ? new RateLimiter(configuration.getWriteRequestsPerSecond())
+                : null;
+        try {
+            handler = new HttpClientHandler(
+                    Options.defaultOptions()
+                            // The sync provider applies this limit both per route and in total,
+                            // all requests target a single Graph host so the two are the same
+                            .set(OPTION_MAX_CONNECTIONS, configuration.getMaxConnectionsPerRoute())
+                            .set(OPTION_REUSE_CONNECTIONS, true)
+                            .set(OPTION_LOADER, new Loader() {
+                                @Override
+                                public <S> S load(Class<S> service, Options options) {
+                                    return service.cast(new SyncHttpClientProvider());
+                                }
+                            }));
+        } catch (HttpApplicationException e) {
+            logger.error(e, "HttpClientHandler failure");
+            throw new ConnectorException("HttpClientHandler failure", e);
+        }
+        client = new Client(handler);
+        metrics.register(tenant, Integer.toHexString(key.hashCode()));
+    }
+
+    /**
+     * Return the pool for the configuration's tenant and settings, creating it if needed. Every
+     * call must be balanced by a call to {@link #release()}.
+     *
+     * @param configuration the connector configuration
+     * @return the shared pool
+     */
+    public static ConnectionPool acquire(O365Configuration configuration) {
+        String key = getKey(configuration);
+        synchronized (pools) {
+            ConnectionPool pool = pools.get(key);
+            if (pool == null) {
+                pool = new ConnectionPool(key, configuration);
+                pools.put(key, pool);
+            }
+            pool.references++;
+            if (pool.eviction != null) {
+                pool.eviction.cancel(false);
+                pool.eviction = null;
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Return the key of the pool of a configuration: its tenant, its Graph endpoint and every
+     * setting the pool or the resources it holds are built from.
+     *
+     * @param configuration the connector configuration
+     * @return the key
+     */
+    static String getKey(O365Configuration configuration) {
+        return configuration.getTenant()
+                + "|graphEndpoint=" + configuration.getGraphEndpoint()
+                + "|maxConnectionsPerRoute=" + configuration.getMaxConnectionsPerRoute()
+                + "|connectionIdleTimeout=" + configuration.getConnectionIdleTimeout()
+                + "|maxRetries=" + configuration.getMaxRetries()
+                + "|retryBaseDelay=" + configuration.getRetryBaseDelay()
+                + "|maxRetryDuration=" + configuration.getMaxRetryDuration()
+                + "|retryBudgetPercent=" + configuration.getRetryBudgetPercent()
+                + "|readRequestsPerSecond=" + configuration.getReadRequestsPerSecond()
+                + "|writeRequestsPerSecond=" + configuration.getWriteRequestsPerSecond()
+                + "|batchLinger=" + configuration.getBatchLinger()
+                + "|objectCacheSize=" + configuration.getObjectCacheSize()
+                + "|objectCacheTtl=" + configuration.getObjectCacheTtl()
+                + "|checkpointDirectory=" + configuration.getCheckpointDirectory()
+                + "|checkpointMaxAge=" + configuration.getCheckpointMaxAge();
+    }
+
+    /**
+     * Release one reference to this pool. The pool is closed once it has stayed unreferenced
+     * for the idle timeout.
+     */
+    public void release() {
+        synchronized (pools) {
+            if (references == 0) {
+                return;
+            }
+            if (--references == 0) {
+                eviction = BackgroundExecutors.scheduler().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        evict();
+                    }
+                }, idleTimeout, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private void evict() {
+        synchronized (pools) {
+            if (references > 0 || pools.get(key) != this) {
+                return;
+            }
+            pools.remove(key);
+            eviction = null;
+            // Before a new pool of this tenant can register its own
+            metrics.unregister();
+        }
+        synchronized (tokenManagers) {
+            for (TokenManager tokenManager : tokenManagers.values()) {
+                tokenManager.close();
+            }
+            tokenManagers.clear();
+        }
+        synchronized (writeBatchers) {
+            for (WriteBatcher writeBatcher : writeBatchers.values()) {
+                writeBatcher.close();
+            }
+            writeBatchers.clear();
+        }
+        synchronized (this) {
+            if (checkpointStore != null) {
+                checkpointStore.close();
+                checkpointStore = null;
+            }
+        }
+        try {
+            handler.close();
+        } catch (IOException e) {
+            logger.warn(e, "Failed to close idle connection pool for tenant {0}", tenant);
+        }
+    }
+
+    /**
+     * Return the token manager shared by all clients of the configuration's OAuth2 client and
+     * credentials.
+     *
+     * @param configuration the connector configuration
+     * @return the shared token manager
+     */
+    public TokenManager getTokenManager(O365Configuration configuration) {
+        String tokenKey = TokenManager.getKey(configuration);
+        synchronized (tokenManagers) {
+            TokenManager tokenManager = tokenManagers.get(tokenKey);
+            if (tokenManager == null) {
+                tokenManager = new TokenManager(configuration, this);
+                tokenManagers.put(tokenKey, tokenManager);
+            }
+            return tokenManager;
+        }
+    }
+
+    /**
+     * Return the write batcher shared by all clients of the configuration's OAuth2 client,
+     * credentials and Graph endpoint, so that any of them may send the others' requests.
+     *
+     * @param configuration the connector configuration
+     * @return the shared write batcher
+     */
+    public WriteBatcher getWriteBatcher(O365Configuration configuration) {
+        String batcherKey = TokenManager.getKey(configuration) + "|" + configuration.getGraphEndpoint();
+        synchronized (writeBatchers) {
+            WriteBatcher writeBatcher = writeBatchers.get(batcherKey);
+            if (writeBatcher == null) {
+                writeBatcher = new WriteBatcher(configuration.getBatchLinger());
+                writeBatchers.put(batcherKey, writeBatcher);
+            }
+            return writeBatcher;
+        }
+    }
+
+    /**
+     * Return the object cache shared by all clients of the configuration's OAuth2 client and
+     * credentials. Application registrations may be granted different permissions, so one
+     * never reads the objects cached by another.
+     *
+     * @param configuration the connector configuration
+     * @return the shared object cache, or null if the configuration disables caching
+     */
+    public ObjectCache getObjectCache(O365Configuration configuration) {
+        if (configuration.getObjectCacheSize() <= 0) {
+            return null;
+        }
+        String cacheKey = TokenManager.getKey(configuration);
+        synchronized (objectCaches) {
+            ObjectCache objectCache = objectCaches.get(cacheKey);
+            if (objectCache == null) {
+                objectCache = new ObjectCache(configuration.getObjectCacheSize(),
+                        configuration.getObjectCacheTtl() * 1000L);
+                objectCaches.put(cacheKey, objectCache);
+            }
+            return objectCache;
+        }
+    }
+
+    /**
+     * Return the store of the checkpoints of full enumerations of this tenant, shared by the
+     * connector instances of the tenant.
+     *
+     * @param configuration the configuration naming the checkpoint directory
+     * @return the store, or null if checkpoints are disabled
+     */
+    public synchronized CheckpointStore getCheckpointStore(O365Configuration configuration) {
+        if (StringUtil.isBlank(configuration.getCheckpointDirectory())) {
+            return null;
+        }
+        if (checkpointStore == null) {
+            checkpointStore = new FileCheckpointStore(new File(configuration.getCheckpointDirectory(),
+                    "o365-checkpoints-" + tenant.replaceAll("[^A-Za-z0-9.-]", "_") + ".json"),
+                    configuration.getCheckpointMaxAge() * 1000L);
+        }
+        return checkpointStore;
+    }
+
+    /**
+     * Return the metrics of this tenant.
+     *
+     * @return the metrics
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Return the retry policy applied to requests through this pool.
+     *
+     * @return the retry policy
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Return the retry budget shared by all requests through this pool.
+     *
+     * @return the retry budget
+     */
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    /**
+     * Block until the tenant's rate limits allow the operations of a request. Reads draw from
+     * the read budget and writes from the write budget, one permit per operation.
+     *
+     * @param cost the operations of the request about to be sent
+     */
+    public void acquirePermits(RequestCost cost) {
+        long start = System.nanoTime();
+        boolean paced = false;
+        if (readLimiter != null && cost.getReads() > 0) {
+            readLimiter.acquire(cost.getReads());
+            paced = true;
+        }
+        if (writeLimiter != null && cost.getWrites() > 0) {
+            writeLimiter.acquire(cost.getWrites());
+            paced = true;
+        }
+        if (paced) {
+            metrics.recordRateLimitWait(start);
+        }
+    }
+
+    /**
+     * Record that a request through this pool has just succeeded.
+     */
+    void markSuccess() {
+        lastSuccess = System.currentTimeMillis();
+    }
+
+    /**
+     * Return whether a request through this pool succeeded within the given interval.
+     *
+     * @param interval the interval in milliseconds
+     * @return true if the tenant was reachable within the interval
+     */
+    public boolean succeededWithin(long interval) {
+        return System.currentTimeMillis() - lastSuccess < interval;
+    }
+
+    /**
+     * Return the HTTP client backed by this pool.
+     *
+     * @return the pooled client
+     */
+    public Client getClient() {
+        return client;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import org.forgerock.openicf.connectors.office365.client.objects.O365Object;
+
+import java.util.Set;
+
+/**
+ * One change returned by a Graph delta query: an object that was created or updated, with the
+ * properties that were sent for it, or the id of an object that was removed.
+ */
+public class Delta {
+    private final String id;
+    private final O365Object object;
+    private final Set<String> properties;
+
+    public Delta(String id, O365Object object, Set<String> properties) {
+        this.id = id;
+        this.object = object;
+        this.properties = properties;
+    }
+
+    /**
+     * Return the id of the changed object
+     *
+     * @return the object id
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Return whether the object was removed
+     *
+     * @return true if the object was deleted
+     */
+    public boolean isRemoved() {
+        return object == null;
+    }
+
+    /**
+     * Return the changed object, only holding the properties that were sent
+     *
+     * @return the object, null if it was removed
+     */
+    public O365Object getObject() {
+        return object;
+    }
+
+    /**
+     * Return the properties that were sent for the object. Updates may only carry the
+     * properties that changed, the others must not be taken as cleared.
+     *
+     * @return the names of the properties present in the delta, null if the object was removed
+     */
+    public Set<String> getProperties() {
+        return properties;
+    }
+}
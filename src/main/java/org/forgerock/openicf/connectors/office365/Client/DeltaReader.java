@@ -0,0 +1,56 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.forgerock.openicf.connectors.office365.client.objects.O365Object;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Streams a Graph delta response. Each element is read as a tree first, to tell removed
+ * objects apart and record which properties an update actually carries.
+ */
+class DeltaReader extends PageReader<Delta> {
+
+    private final ObjectMapper mapper;
+    private final Class<? extends O365Object> objectType;
+
+    DeltaReader(ObjectMapper mapper, Class<? extends O365Object> objectType) {
+        super(mapper, Delta.class);
+        this.mapper = mapper;
+        this.objectType = objectType;
+    }
+
+    @Override
+    Delta readElement(JsonParser parser) throws IOException {
+        JsonNode node = mapper.readTree(parser);
+        String id = node.path("id").asText();
+        if (node.has("@removed")) {
+            return new Delta(id, null, null);
+        }
+        Set<String> properties = new HashSet<String>();
+        for (Iterator<String> names = node.fieldNames(); names.hasNext(); ) {
+            properties.add(names.next());
+        }
+        return new Delta(id, mapper.treeToValue(node, objectType), properties);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Snapshot of the values recorded by a histogram, such as the latencies of an operation.
+ */
+public class Distribution {
+    private final String name;
+    private final long count;
+    private final long errors;
+    private final double mean;
+    private final double max;
+    private final double p50;
+    private final double p95;
+    private final double p99;
+
+    @ConstructorProperties({"name", "count", "errors", "mean", "max", "p50", "p95", "p99"})
+    public Distribution(String name, long count, long errors, double mean, double max,
+            double p50, double p95, double p99) {
+        this.name = name;
+        this.count = count;
+        this.errors = errors;
+        this.mean = mean;
+        this.max = max;
+        this.p50 = p50;
+        this.p95 = p95;
+        this.p99 = p99;
+    }
+
+    /**
+     * Return what the values measure, such as an operation or an endpoint
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Return the number of recorded values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Return the number of recorded values of failed operations
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Return the median, approximated within a factor of two
+     */
+    public double getP50() {
+        return p50;
+    }
+
+    /**
+     * Return the 95th percentile, approximated within a factor of two
+     */
+    public double getP95() {
+        return p95;
+    }
+
+    /**
+     * Return the 99th percentile, approximated within a factor of two
+     */
+    public double getP99() {
+        return p99;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.identityconnectors.common.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CheckpointStore} keeping the checkpoints of a tenant in a JSON file.
+ *
+ * The checkpoints put during {@link #SAVE_DELAY} milliseconds are written to the file at once,
+ * rather than once per page: a crash loses at most that much progress, and the pages handled
+ * since are fetched again. Removed checkpoints are written at once, so that a complete query is
+ * never resumed. The file is rewritten through a temporary file, so that a crash never leaves
+ * a partial one. Checkpoints older than the maximum age are ignored: Graph only honors the
+ * skip token of a next link for a limited time.
+ */
+public class FileCheckpointStore implements CheckpointStore {
+    private static final Log logger = Log.getLog(FileCheckpointStore.class);
+
+    /** Milliseconds during which the checkpoints put are gathered into a single write */
+    public static final long SAVE_DELAY = 1000;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final String LINK = "link";
+    private static final String SAVED = "saved";
+
+    private final File file;
+    private final long maxAge;
+    private final long saveDelay;
+    private Map<String, Map<String, Object>> checkpoints;
+    private ScheduledFuture<?> pendingSave;
+
+    /**
+     * Create a store
+     *
+     * @param file the file holding the checkpoints
+     * @param maxAge milliseconds after which a checkpoint is ignored
+     */
+    public FileCheckpointStore(File file, long maxAge) {
+        this(file, maxAge, SAVE_DELAY);
+    }
+
+    FileCheckpointStore(File file, long maxAge, long saveDelay) {
+        this.file = file;
+        this.maxAge = maxAge;
+        this.saveDelay = saveDelay;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String get(String query) {
+        Map<String, Object> checkpoint = load().get(query);
+        return checkpoint == null ? null : (String) checkpoint.get(LINK);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void put(String query, String link) {
+        Map<String, Object> checkpoint = new HashMap<String, Object>();
+        checkpoint.put(LINK, link);
+        checkpoint.put(SAVED, System.currentTimeMillis());
+        load().put(query, checkpoint);
+        if (pendingSave == null) {
+            pendingSave = BackgroundExecutors.scheduler().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    savePending();
+                }
+            }, saveDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void remove(String query) {
+        if (load().remove(query) != null) {
+            save();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() {
+        savePending();
+    }
+
+    private synchronized void savePending() {
+        if (pendingSave != null) {
+            save();
+        }
+    }
+
+    /**
+     * Return the checkpoints, reading them from the file on first use and dropping the
+     * expired ones
+     */
+    private Map<String, Map<String, Object>> load() {
+        if (checkpoints == null) {
+            checkpoints = new HashMap<String, Map<String, Object>>();
+            if (file.isFile()) {
+                try {
+                    checkpoints.putAll(mapper.<Map<String, Map<String, Object>>>readValue(file,
+                            new TypeReference<Map<String, Map<String, Object>>>() {}));
+                } catch (IOException e) {
+                    logger.warn(e, "Ignoring unreadable checkpoint file {0}", file);
+                }
+            }
+        }
+        long now = System.currentTimeMillis();
+        for (Iterator<Map<String, Object>> it = checkpoints.values().iterator(); it.hasNext(); ) {
+            Object saved = it.next().get(SAVED);
+            if (!(saved instanceof Number) || now - ((Number) saved).longValue() > maxAge) {
+                it.remove();
+            }
+        }
+        return checkpoints;
+    }
+
+    /**
+     * Write the checkpoints, including the pending ones
+     */
+    private void save() {
+        if (pendingSave != null) {
+            pendingSave.cancel(false);
+            pendingSave = null;
+        }
+        try {
+            JsonFiles.write(file, checkpoints);
+        } catch (IOException e) {
+            // Without a checkpoint a failed enumeration restarts from the first page
+            logger.warn(e, "Unable to write checkpoint file {0}", file);
+        }
+    }
+}
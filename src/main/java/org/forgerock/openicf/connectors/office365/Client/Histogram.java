@@ -0,0 +1,94 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values in power of two buckets.
+ *
+ * Recording a value is a few atomic increments, cheap enough for every request. Percentiles
+ * are approximated by the upper bound of their bucket, so they are accurate within a factor
+ * of two.
+ */
+final class Histogram {
+
+    /* Bucket i counts the values of i significant bits, that is from 2^(i-1) to 2^i - 1 */
+    private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a value
+     *
+     * @param value the value, negative values are recorded as 0
+     */
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Retry until the maximum is at least this value
+        }
+    }
+
+    /**
+     * Record a value of a failed operation
+     *
+     * @param value the value
+     */
+    void recordError(long value) {
+        errors.incrementAndGet();
+        record(value);
+    }
+
+    /**
+     * Return a snapshot of the recorded values
+     *
+     * @param name name of the snapshot
+     * @param scale factor converting the recorded values to the unit of the snapshot
+     * @return the snapshot
+     */
+    Distribution snapshot(String name, double scale) {
+        long total = count.get();
+        return new Distribution(name, total, errors.get(),
+                total == 0 ? 0 : sum.get() * scale / total,
+                max.get() * scale,
+                percentile(0.50, total) * scale,
+                percentile(0.95, total) * scale,
+                percentile(0.99, total) * scale);
+    }
+
+    private long percentile(double p, long total) {
+        long rank = (long) Math.ceil(p * total);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank && seen > 0) {
+                long upper = i == 0 ? 0 : (i >= Long.SIZE - 1 ? Long.MAX_VALUE : (1L << i) - 1);
+                return Math.min(upper, max.get());
+            }
+        }
+        return 0;
+    }
+}
@@ -20,19 +20,19 @@ import org.forgerock.http.HttpApplicationException;
 import org.forgerock.http.apache.sync.SyncHttpClientProvider;
 import org.forgerock.http.handler.HttpClientHandler;
 import org.forgerock.http.header.ContentTypeHeader;
+import org.forgerock.http.protocol.Header;
 import org.forgerock.http.protocol.Request;
 import org.forgerock.http.protocol.Response;
 import org.forgerock.http.protocol.Status;
 import org.forgerock.http.spi.Loader;
 import org.forgerock.json.JsonValue;
-import org.forgerock.util.Function;
 import org.forgerock.util.Options;
-import org.forgerock.util.promise.NeverThrowsException;
-import org.forgerock.util.promise.Promise;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 
 import static org.forgerock.json.JsonValue.json;
@@ -49,6 +49,16 @@ public class HttpClient {
 
     private final AuthSigner signer;
 
+    private ConnectionPool pool;
+
+    private RetryPolicy retryPolicy = RetryPolicy.NONE;
+
+    private RetryBudget retryBudget;
+
+    private boolean paced = false;
+
+    private Metrics metrics;
+
     public HttpClient() {
         this.signer = new PassthroughSigner();
         initClient();
@@ -59,6 +69,33 @@ public class HttpClient {
         initClient();
     }
 
+    /**
+     * Create an HttpClient sending its requests through a shared {@link ConnectionPool}.
+     *
+     * @param pool the pool providing the underlying client
+     * @param signer signer applied to each request
+     */
+    public HttpClient(ConnectionPool pool, AuthSigner signer) {
+        this(pool, signer, true);
+    }
+
+    /**
+     * Create an HttpClient sending its requests through a shared {@link ConnectionPool}.
+     *
+     * @param pool the pool providing the underlying client
+     * @param signer signer applied to each request
+     * @param paced whether requests count against the tenant's Graph rate limits
+     */
+    public HttpClient(ConnectionPool pool, AuthSigner signer, boolean paced) {
+        this.signer = signer;
+        this.pool = pool;
+        this.paced = paced;
+        this.httpClient = pool.getClient();
+        this.retryPolicy = pool.getRetryPolicy();
+        this.retryBudget = pool.getRetryBudget();
+        this.metrics = pool.getMetrics();
+    }
+
     private void initClient() {
         try {
             httpClient = new Client(
@@ -78,38 +115,164 @@ public class HttpClient {
     }
 
     public JsonValue sendGetRequest(URI uri) {
-        return _sendGetRequest("GET", uri);
+        return _sendGetRequest("GET", uri, RequestCost.READ);
     }
 
     public JsonValue sendDeleteRequest(URI uri) {
-        return _sendGetRequest("DELETE", uri);
+        return _sendGetRequest("DELETE", uri, RequestCost.WRITE);
     }
 
     public JsonValue sendQueryRequest(URI uri) {
-        return _sendGetRequest("QUERY", uri);
+        return _sendGetRequest("QUERY", uri, RequestCost.READ);
     }
 
     public JsonValue sendPostRequest(URI uri, String contentType, Object body) {
-        return _sendPostRequest("POST", uri, contentType, body);
+        return _sendPostRequest("POST", uri, contentType, body, RequestCost.WRITE);
+    }
+
+    /**
+     * Send a POST request standing for other operations than a single write, such as a read
+     * through directoryObjects/getByIds or the sub-requests of a $batch
+     *
+     * @param uri the request URI
+     * @param contentType the content type of the body
+     * @param body the request body
+     * @param cost the operations the request stands for
+     * @return the response body
+     */
+    public JsonValue sendPostRequest(URI uri, String contentType, Object body, RequestCost cost) {
+        return _sendPostRequest("POST", uri, contentType, body, cost);
     }
 
     public JsonValue sendPutRequest(URI uri, String contentType, Object body) {
-        return _sendPostRequest("PUT", uri, contentType, body);
+        return _sendPostRequest("PUT", uri, contentType, body, RequestCost.WRITE);
     }
 
     public JsonValue sendPatchRequest(URI uri, String contentType, Object body) {
-        return _sendPostRequest("PATCH", uri, contentType, body);
+        return _sendPostRequest("PATCH", uri, contentType, body, RequestCost.WRITE);
+    }
+
+    /**
+     * Send a PATCH request standing for other operations than a single write, such as the
+     * members added by a members@odata.bind
+     *
+     * @param uri the request URI
+     * @param contentType the content type of the body
+     * @param body the request body
+     * @param cost the operations the request stands for
+     * @return the response body
+     */
+    public JsonValue sendPatchRequest(URI uri, String contentType, Object body, RequestCost cost) {
+        return _sendPostRequest("PATCH", uri, contentType, body, cost);
     }
 
-    private JsonValue _sendGetRequest(String method, URI uri) {
-        return _sendRequest(method, uri, null, null);
+    private JsonValue _sendGetRequest(String method, URI uri, RequestCost cost) {
+        return _sendRequest(method, uri, null, null, cost);
     }
 
-    private JsonValue _sendPostRequest(String method, URI uri, String contentType, Object body) {
-        return _sendRequest(method, uri, contentType, body);
+    private JsonValue _sendPostRequest(String method, URI uri, String contentType, Object body, RequestCost cost) {
+        return _sendRequest(method, uri, contentType, body, cost);
     }
 
-    private JsonValue _sendRequest(String method, URI uri, String contentType, Object body) {
+    private JsonValue _sendRequest(String method, URI uri, String contentType, Object body, RequestCost cost) {
+        Response response = execute(method, uri, contentType, body, cost);
+        try {
+            if (metrics != null) {
+                long length = getContentLength(response);
+                if (length > 0) {
+                    metrics.recordBytes(length);
+                }
+            }
+            return readResponse(response);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Send a GET request and decode its body from the response stream
+     *
+     * @param uri the request URI
+     * @param reader the decoder of the JSON response body
+     * @return the decoded body
+     */
+    public <T> T sendGetRequest(URI uri, ResponseReader<T> reader) {
+        Response response = execute("GET", uri, null, null, RequestCost.READ);
+        try {
+            if (metrics == null) {
+                return reader.read(response.getEntity().getRawContentInputStream());
+            }
+            long start = System.nanoTime();
+            CountingInputStream in = new CountingInputStream(response.getEntity().getRawContentInputStream());
+            T result = reader.read(in);
+            metrics.recordResponseRead(start);
+            metrics.recordBytes(in.count);
+            if (result instanceof Page) {
+                metrics.recordPageSize(((Page<?>) result).getObjects().size());
+            }
+            return result;
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to perform request", e);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Send a request, retrying it as allowed by the retry policy and budget. Each retry
+     * spends one retry per operation of the request.
+     *
+     * @return the successful response, which the caller must close
+     */
+    private Response execute(String method, URI uri, String contentType, Object body, RequestCost cost) {
+        long deadline = System.currentTimeMillis() + retryPolicy.getMaxRetryDuration();
+        if (retryBudget != null && !cost.isRetry()) {
+            retryBudget.deposit(cost.getOperations());
+        }
+        for (int attempt = 0; ; attempt++) {
+            long start = System.nanoTime();
+            Response response = send(method, uri, contentType, body, cost);
+            Status status = response.getStatus();
+            if (metrics != null) {
+                metrics.recordResponse(method, uri, status.getCode(), start);
+            }
+            if (status.isSuccessful()) {
+                if (pool != null) {
+                    pool.markSuccess();
+                }
+                return response;
+            }
+            long delay;
+            try {
+                delay = retryPolicy.getDelay(attempt, response);
+                if (!retryPolicy.isRetryable(method, status.getCode())
+                        || attempt >= retryPolicy.getMaxRetries()
+                        || System.currentTimeMillis() + delay > deadline
+                        || (retryBudget != null && !retryBudget.tryWithdraw(cost.getOperations()))) {
+                    throw new IllegalStateException("Unable to perform request",
+                            new HttpResponseException(status.getCode(), status.getReasonPhrase(),
+                                    readErrorMessage(response)));
+                }
+                logger.info("{0} {1} returned {2}, retrying in {3}ms", method, uri.getPath(), status.getCode(), delay);
+                if (metrics != null) {
+                    metrics.recordRetry();
+                }
+            } finally {
+                response.close();
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConnectorException("Interrupted while waiting to retry request", e);
+            }
+        }
+    }
+
+    private Response send(String method, URI uri, String contentType, Object body, RequestCost cost) {
+        if (paced) {
+            pool.acquirePermits(cost);
+        }
         Request request = new Request()
                 .setMethod(method)
                 .setUri(uri);
@@ -120,42 +283,95 @@ public class HttpClient {
         if (body != null) {
             request.setEntity(body);
         }
-        return httpClient
-                .send(request)
-                .then(
-                        new Function<Response, JsonValue, NeverThrowsException>() {
-                            @Override
-                            public JsonValue apply(Response response) {
-                                try {
-                                    if (response.getStatus().isSuccessful()) {
-                                        if (response.getStatus().equals(Status.NO_CONTENT)) {
-                                            return json(object());
-                                        }
-                                        String type = response.getHeaders().get("Content-Type") != null
-                                                ? response.getHeaders().get("Content-Type").getFirstValue()
-                                                : null;
-                                        if (type != null && type.startsWith("application/xml")) {
-                                            // no way to pass this back, also not needed currently
-                                            return json(object());
-                                        } else if (type != null && type.startsWith("application/json")) {
-                                            return json(response.getEntity().getJson());
-                                        }
-                                        return json(object());
-                                    } else {
-                                        throw new IOException(response.getStatus().getReasonPhrase());
-                                    }
-                                } catch (IOException e) {
-                                    throw new IllegalStateException("Unable to perform request", e);
-                                }
-                            }
-                        },
-                        new Function<NeverThrowsException, JsonValue, NeverThrowsException>() {
-                            @Override
-                            public JsonValue apply(NeverThrowsException e) {
-                                // return null on Exceptions
-                                return null;
-                            }
-                        })
-                .getOrThrowUninterruptibly();
+        return httpClient.send(request).getOrThrowUninterruptibly();
+    }
+
+    /**
+     * Return the Content-Length of a response, or -1 if it is not set
+     */
+    private static long getContentLength(Response response) {
+        Header length = response.getHeaders().get("Content-Length");
+        if (length == null || length.getFirstValue() == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(length.getFirstValue().trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Return the message of the Graph error in the body of a failed response
+     *
+     * @return the message, or null if the body is not a Graph error
+     */
+    private static String readErrorMessage(Response response) {
+        Header type = response.getHeaders().get("Content-Type");
+        if (type == null || type.getFirstValue() == null || !type.getFirstValue().startsWith("application/json")) {
+            return null;
+        }
+        try {
+            JsonValue message = json(response.getEntity().getJson()).get("error").get("message");
+            return message.isString() ? message.asString() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private JsonValue readResponse(Response response) {
+        try {
+            if (response.getStatus().equals(Status.NO_CONTENT)) {
+                return json(object());
+            }
+            String type = response.getHeaders().get("Content-Type") != null
+                    ? response.getHeaders().get("Content-Type").getFirstValue()
+                    : null;
+            if (type != null && type.startsWith("application/xml")) {
+                // no way to pass this back, also not needed currently
+                return json(object());
+            } else if (type != null && type.startsWith("application/json")) {
+                return json(response.getEntity().getJson());
+            }
+            return json(object());
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to perform request", e);
+        }
+    }
+
+    /**
+     * Counts the bytes read from a response body
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
     }
 }
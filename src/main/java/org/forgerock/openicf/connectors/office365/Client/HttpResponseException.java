@@ -0,0 +1,65 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import java.io.IOException;
+
+/**
+ * Signals a request that completed with a non-successful HTTP status.
+ */
+public class HttpResponseException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    private final String errorMessage;
+
+    public HttpResponseException(int status, String reasonPhrase) {
+        this(status, reasonPhrase, null);
+    }
+
+    /**
+     * Create an exception for a failed response carrying a Graph error
+     *
+     * @param status the HTTP status code
+     * @param reasonPhrase the HTTP reason phrase
+     * @param errorMessage the message of the Graph error in the response body, or null
+     */
+    public HttpResponseException(int status, String reasonPhrase, String errorMessage) {
+        super(status + " " + reasonPhrase + (errorMessage == null ? "" : ": " + errorMessage));
+        this.status = status;
+        this.errorMessage = errorMessage;
+    }
+
+    /**
+     * Return the HTTP status code of the failed response
+     *
+     * @return the status code
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Return the message of the Graph error sent with the failed response
+     *
+     * @return the error message, or null if the response did not carry one
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+}
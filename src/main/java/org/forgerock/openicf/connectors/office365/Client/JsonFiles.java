@@ -0,0 +1,80 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.identityconnectors.common.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes the JSON files the connector keeps between restarts, such as the schema cache and
+ * the enumeration checkpoints.
+ *
+ * A file is written through a temporary file renamed over it, so that concurrent readers and
+ * a crash never leave a partial one. Directories created for the files, and the files, are
+ * only accessible to their owner where the file system supports it.
+ */
+final class JsonFiles {
+    private static final Log logger = Log.getLog(JsonFiles.class);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private JsonFiles() {}
+
+    /**
+     * Replace the content of a file with the JSON form of a value
+     *
+     * @param file the file
+     * @param value the value to write
+     * @throws IOException if the file cannot be written
+     */
+    static void write(File file, Object value) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory()) {
+            if (!directory.mkdirs()) {
+                throw new IOException("Unable to create " + directory);
+            }
+            restrictToOwner(directory);
+        }
+        File temp = File.createTempFile(file.getName(), ".tmp", directory);
+        restrictToOwner(temp);
+        try {
+            mapper.writeValue(temp, value);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+            temp.delete();
+            throw new IOException("Unable to rename " + temp + " to " + file);
+        }
+    }
+
+    /**
+     * Take every permission on a file away from other users than its owner, where the file
+     * system supports it
+     */
+    private static void restrictToOwner(File file) {
+        boolean restricted = file.setReadable(false, false) && file.setReadable(true, true)
+                && file.setWritable(false, false) && file.setWritable(true, true)
+                && (!file.isDirectory() || file.setExecutable(false, false) && file.setExecutable(true, true));
+        if (!restricted) {
+            logger.warn("Unable to restrict the permissions of {0} to its owner", file);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streams a Graph $metadata CSDL document, keeping only the structural properties of its
+ * entity types and the Core annotations that make them read-only. The document is several
+ * megabytes, so it is read with StAX rather than loaded as a DOM.
+ */
+class MetadataReader implements ResponseReader<Map<String, List<MetadataReader.Property>>> {
+
+    private static final XMLInputFactory factory = XMLInputFactory.newInstance();
+    static {
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Read the properties of every entity type, including those inherited from base types
+     *
+     * @param in the CSDL document
+     * @return the properties of each entity type, by unqualified type name
+     */
+    @Override
+    public Map<String, List<Property>> read(InputStream in) throws IOException {
+        Map<String, List<Property>> declared = new HashMap<String, List<Property>>();
+        Map<String, String> baseTypes = new HashMap<String, String>();
+        // Annotations declared apart from their property, by unqualified type and property name
+        Map<String, List<String[]>> targeted = new HashMap<String, List<String[]>>();
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                List<Property> current = null;
+                Property property = null;
+                List<String[]> target = null;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String element = reader.getLocalName();
+                        if ("EntityType".equals(element)) {
+                            String name = reader.getAttributeValue(null, "Name");
+                            current = new ArrayList<Property>();
+                            declared.put(name, current);
+                            String baseType = reader.getAttributeValue(null, "BaseType");
+                            if (baseType != null) {
+                                baseTypes.put(name, unqualify(baseType));
+                            }
+                        } else if ("Property".equals(element) && current != null) {
+                            property = new Property(reader.getAttributeValue(null, "Name"),
+                                    reader.getAttributeValue(null, "Type"));
+                            current.add(property);
+                        } else if ("Annotations".equals(element)) {
+                            String path = reader.getAttributeValue(null, "Target");
+                            int slash = path == null ? -1 : path.indexOf('/');
+                            if (slash > 0) {
+                                String key = unqualify(path.substring(0, slash)) + "/" + path.substring(slash + 1);
+                                target = targeted.get(key);
+                                if (target == null) {
+                                    target = new ArrayList<String[]>();
+                                    targeted.put(key, target);
+                                }
+                            }
+                        } else if ("Annotation".equals(element)) {
+                            String[] annotation = {reader.getAttributeValue(null, "Term"),
+                                    reader.getAttributeValue(null, "EnumMember")};
+                            if (property != null) {
+                                property.annotate(annotation[0], annotation[1]);
+                            } else if (target != null) {
+                                target.add(annotation);
+                            }
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        String element = reader.getLocalName();
+                        if ("EntityType".equals(element)) {
+                            current = null;
+                        } else if ("Property".equals(element)) {
+                            property = null;
+                        } else if ("Annotations".equals(element)) {
+                            target = null;
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to parse $metadata: " + e.getMessage());
+        }
+
+        for (Map.Entry<String, List<Property>> type : declared.entrySet()) {
+            for (Property property : type.getValue()) {
+                List<String[]> annotations = targeted.get(type.getKey() + "/" + property.name);
+                if (annotations != null) {
+                    for (String[] annotation : annotations) {
+                        property.annotate(annotation[0], annotation[1]);
+                    }
+                }
+            }
+        }
+
+        Map<String, List<Property>> properties = new HashMap<String, List<Property>>();
+        for (String type : declared.keySet()) {
+            List<Property> all = new ArrayList<Property>();
+            // Guard against inheritance cycles in a malformed document
+            Set<String> visited = new HashSet<String>();
+            for (String t = type; t != null && declared.containsKey(t) && visited.add(t); t = baseTypes.get(t)) {
+                all.addAll(declared.get(t));
+            }
+            properties.put(type, all);
+        }
+        return properties;
+    }
+
+    private static String unqualify(String type) {
+        return type.substring(type.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * A structural property of an entity type
+     */
+    static final class Property {
+        final String name;
+        final String type;
+        final boolean collection;
+        boolean createable = true;
+        boolean updateable = true;
+
+        Property(String name, String type) {
+            this.name = name;
+            this.collection = type.startsWith("Collection(");
+            this.type = collection ? type.substring("Collection(".length(), type.length() - 1) : type;
+        }
+
+        /**
+         * Apply an OData Core vocabulary annotation restricting how the property is written.
+         * Computed and read-only properties cannot be written, immutable ones only on creation.
+         *
+         * @param term the annotation term, qualified by namespace or alias
+         * @param enumMember the enumeration value of the annotation, or null
+         */
+        void annotate(String term, String enumMember) {
+            if (term == null) {
+                return;
+            }
+            String name = unqualify(term);
+            if ("Computed".equals(name)
+                    || ("Permissions".equals(name) && enumMember != null && enumMember.endsWith("/Read"))) {
+                createable = false;
+                updateable = false;
+            } else if ("Immutable".equals(name)) {
+                updateable = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import org.identityconnectors.common.logging.Log;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Counters and latency histograms of the connector operations and Graph requests of a tenant.
+ *
+ * One instance is kept by each {@link ConnectionPool} and is exposed over JMX while the pool
+ * is alive. Recording is lock-free so the metrics can stay on in production.
+ */
+public final class Metrics implements MetricsMXBean {
+    private static final Log logger = Log.getLog(Metrics.class);
+
+    /* Path segments that are object ids or user principal names */
+    private static final Pattern ID = Pattern.compile("[0-9a-fA-F-]{32,36}|.*@.*");
+
+    /* Timings are recorded in microseconds and reported in milliseconds */
+    private static final double MILLIS = 0.001;
+
+    private final ConcurrentMap<String, Histogram> operations = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, Histogram> endpoints = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, AtomicLong> statusClasses = new ConcurrentHashMap<String, AtomicLong>();
+    private final Histogram responseReads = new Histogram();
+    private final Histogram pageSizes = new Histogram();
+    private final Histogram tokenRefreshes = new Histogram();
+    private final Histogram rateLimitWaits = new Histogram();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    private ObjectName name;
+
+    /**
+     * Register these metrics with the platform MBean server
+     *
+     * @param tenant the tenant they measure
+     * @param settings the hash of the settings of their pool, telling apart the pools of a tenant
+     */
+    void register(String tenant, String settings) {
+        try {
+            ObjectName objectName = new ObjectName("org.forgerock.openicf.connectors.office365:type=Metrics,tenant="
+                    + ObjectName.quote(tenant) + ",settings=" + settings);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+            name = objectName;
+        } catch (JMException e) {
+            logger.warn(e, "Unable to register the metrics of tenant {0}", tenant);
+        }
+    }
+
+    /**
+     * Unregister these metrics from the platform MBean server
+     */
+    void unregister() {
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            logger.warn(e, "Unable to unregister {0}", name);
+        }
+        name = null;
+    }
+
+    /**
+     * Start timing a connector operation
+     *
+     * @param operation name of the operation, such as create
+     * @return the timer to stop when the operation completes
+     */
+    public Timer startOperation(String operation) {
+        return new Timer(histogram(operations, operation));
+    }
+
+    /**
+     * Record a Graph response
+     *
+     * @param method the request method
+     * @param uri the request URI
+     * @param status the response status code
+     * @param start System.nanoTime() when the request was sent
+     */
+    void recordResponse(String method, URI uri, int status, long start) {
+        Histogram endpoint = histogram(endpoints, method + " " + getEndpoint(uri));
+        long micros = (System.nanoTime() - start) / 1000;
+        if (status >= 400) {
+            endpoint.recordError(micros);
+        } else {
+            endpoint.record(micros);
+        }
+        String statusClass = (status / 100) + "xx";
+        AtomicLong counter = statusClasses.get(statusClass);
+        if (counter == null) {
+            statusClasses.putIfAbsent(statusClass, new AtomicLong());
+            counter = statusClasses.get(statusClass);
+        }
+        counter.incrementAndGet();
+        if (status == 429 || status == 503) {
+            throttled.incrementAndGet();
+        }
+    }
+
+    void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    void recordBytes(long bytes) {
+        bytesReceived.addAndGet(bytes);
+    }
+
+    void recordResponseRead(long start) {
+        responseReads.record((System.nanoTime() - start) / 1000);
+    }
+
+    void recordPageSize(int objects) {
+        pageSizes.record(objects);
+    }
+
+    void recordTokenRefresh(long start, boolean failed) {
+        long micros = (System.nanoTime() - start) / 1000;
+        if (failed) {
+            tokenRefreshes.recordError(micros);
+        } else {
+            tokenRefreshes.record(micros);
+        }
+    }
+
+    void recordRateLimitWait(long start) {
+        rateLimitWaits.record((System.nanoTime() - start) / 1000);
+    }
+
+    /**
+     * Return the endpoint of a request: its path, with the ids replaced by {id}
+     */
+    static String getEndpoint(URI uri) {
+        StringBuilder endpoint = new StringBuilder();
+        for (String segment : uri.getPath().split("/")) {
+            if (segment.length() > 0) {
+                endpoint.append('/').append(ID.matcher(segment).matches() ? "{id}" : segment);
+            }
+        }
+        return endpoint.toString();
+    }
+
+    private static Histogram histogram(ConcurrentMap<String, Histogram> histograms, String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histograms.putIfAbsent(name, new Histogram());
+            histogram = histograms.get(name);
+        }
+        return histogram;
+    }
+
+    private static List<Distribution> snapshot(Map<String, Histogram> histograms) {
+        List<Distribution> snapshot = new ArrayList<Distribution>(histograms.size());
+        for (Map.Entry<String, Histogram> histogram : new TreeMap<String, Histogram>(histograms).entrySet()) {
+            snapshot.add(histogram.getValue().snapshot(histogram.getKey(), MILLIS));
+        }
+        return snapshot;
+    }
+
+    @Override
+    public List<Distribution> getOperations() {
+        return snapshot(operations);
+    }
+
+    @Override
+    public List<Distribution> getEndpoints() {
+        return snapshot(endpoints);
+    }
+
+    @Override
+    public Distribution getResponseReads() {
+        return responseReads.snapshot("responseReads", MILLIS);
+    }
+
+    @Override
+    public Distribution getPageSizes() {
+        return pageSizes.snapshot("pageSizes", 1);
+    }
+
+    @Override
+    public Distribution getTokenRefreshes() {
+        return tokenRefreshes.snapshot("tokenRefreshes", MILLIS);
+    }
+
+    @Override
+    public Distribution getRateLimitWaits() {
+        return rateLimitWaits.snapshot("rateLimitWaits", MILLIS);
+    }
+
+    @Override
+    public Map<String, Long> getResponseStatusClasses() {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> counter : statusClasses.entrySet()) {
+            counts.put(counter.getKey(), counter.getValue().get());
+        }
+        return counts;
+    }
+
+    @Override
+    public long getThrottledResponses() {
+        return throttled.get();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.get();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * Times a connector operation
+     */
+    public static final class Timer {
+        private final Histogram histogram;
+        private final long start = System.nanoTime();
+        private boolean failed = false;
+
+        private Timer(Histogram histogram) {
+            this.histogram = histogram;
+        }
+
+        /**
+         * Mark the operation as failed
+         */
+        public void failed() {
+            failed = true;
+        }
+
+        /**
+         * Record the time since the operation started
+         */
+        public void stop() {
+            long micros = (System.nanoTime() - start) / 1000;
+            if (failed) {
+                histogram.recordError(micros);
+            } else {
+                histogram.record(micros);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Management interface of the metrics of a tenant, registered as
+ * {@code org.forgerock.openicf.connectors.office365:type=Metrics,tenant=<tenant>}.
+ * Timings are in milliseconds.
+ */
+public interface MetricsMXBean {
+
+    /**
+     * Return the timings of the connector operations, such as create or search, including
+     * the time spent in the ICF result handlers
+     */
+    List<Distribution> getOperations();
+
+    /**
+     * Return the Graph response times by method and endpoint, until the response headers
+     * are received
+     */
+    List<Distribution> getEndpoints();
+
+    /**
+     * Return the time spent reading and decoding streamed response bodies
+     */
+    Distribution getResponseReads();
+
+    /**
+     * Return the number of objects in each result page
+     */
+    Distribution getPageSizes();
+
+    /**
+     * Return the time spent refreshing OAuth2 tokens
+     */
+    Distribution getTokenRefreshes();
+
+    /**
+     * Return the time requests waited for the configured request rate
+     */
+    Distribution getRateLimitWaits();
+
+    /**
+     * Return the number of responses by status class, such as 2xx
+     */
+    Map<String, Long> getResponseStatusClasses();
+
+    /**
+     * Return the number of 429 and 503 responses
+     */
+    long getThrottledResponses();
+
+    /**
+     * Return the number of retried requests
+     */
+    long getRetries();
+
+    /**
+     * Return the number of response body bytes received
+     */
+    long getBytesReceived();
+}
@@ -0,0 +1,175 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import org.forgerock.openicf.connectors.office365.client.objects.O365Object;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.AttributeUtil;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Bounded cache of the objects of a tenant looked up by id or user principal name.
+ *
+ * Entries expire after a fixed time to live and the least recently used entry is evicted once
+ * the cache is full. Concurrent lookups of a missing key wait for a single read of the object.
+ * Writes through the connector invalidate the object under every key it was cached with;
+ * changes made by others are only seen once the entry expires.
+ */
+public final class ObjectCache {
+
+    private static final String ID = "id";
+
+    private final int maxSize;
+    private final long ttl;
+
+    /* Cached objects in access order, guarded by this */
+    private final LinkedHashMap<String, CachedObject> entries;
+
+    /* Reads in progress by key, guarded by this */
+    private final Map<String, FutureTask<O365Object>> loading = new HashMap<String, FutureTask<O365Object>>();
+
+    /**
+     * Create a cache
+     *
+     * @param maxSize maximum number of cached objects
+     * @param ttl milliseconds an object is cached
+     */
+    public ObjectCache(final int maxSize, long ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.entries = new LinkedHashMap<String, CachedObject>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedObject> eldest) {
+                return size() > ObjectCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Return a cached object, reading it if it is not cached. Objects that are not found are
+     * not cached.
+     *
+     * @param objectClass ObjectClass of the object
+     * @param key id or user principal name of the object
+     * @param loader reads the object, returning null if it does not exist
+     * @return the object, or null if it does not exist
+     */
+    public O365Object get(ObjectClass objectClass, String key, Callable<O365Object> loader) {
+        String cacheKey = getKey(objectClass, key);
+        FutureTask<O365Object> task;
+        boolean owner = false;
+        synchronized (this) {
+            CachedObject entry = entries.get(cacheKey);
+            if (entry != null) {
+                if (entry.expires > System.currentTimeMillis()) {
+                    return entry.object;
+                }
+                entries.remove(cacheKey);
+            }
+            task = loading.get(cacheKey);
+            if (task == null) {
+                task = new FutureTask<O365Object>(loader);
+                loading.put(cacheKey, task);
+                owner = true;
+            }
+        }
+        if (owner) {
+            task.run();
+            synchronized (this) {
+                // An invalidation while reading discards the object that was read
+                if (loading.get(cacheKey) == task) {
+                    loading.remove(cacheKey);
+                    O365Object object = getResult(task);
+                    if (object != null) {
+                        entries.put(cacheKey, new CachedObject(objectClass, object,
+                                System.currentTimeMillis() + ttl));
+                    }
+                }
+            }
+        }
+        return getResult(task);
+    }
+
+    /**
+     * Remove an object from the cache, under its id and any other key
+     *
+     * @param objectClass ObjectClass of the object
+     * @param id id of the object
+     */
+    public synchronized void invalidate(ObjectClass objectClass, String id) {
+        String cacheKey = getKey(objectClass, id);
+        entries.remove(cacheKey);
+        for (Iterator<Map.Entry<String, CachedObject>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            CachedObject entry = it.next().getValue();
+            if (entry.objectClass.equals(objectClass) && id.equalsIgnoreCase(entry.id)) {
+                it.remove();
+            }
+        }
+        // Lookups by name could return the object: discard them
+        for (Iterator<String> it = loading.keySet().iterator(); it.hasNext(); ) {
+            if (it.next().startsWith(objectClass.getObjectClassValue() + "/")) {
+                it.remove();
+            }
+        }
+    }
+
+    private static String getKey(ObjectClass objectClass, String key) {
+        // Graph ids and user principal names are case insensitive
+        return objectClass.getObjectClassValue() + "/" + key.toLowerCase(Locale.ENGLISH);
+    }
+
+    private static O365Object getResult(FutureTask<O365Object> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorException("Interrupted while waiting for object", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ConnectorException(e.getCause());
+        }
+    }
+
+    private static final class CachedObject {
+        final ObjectClass objectClass;
+        final O365Object object;
+        final String id;
+        final long expires;
+
+        CachedObject(ObjectClass objectClass, O365Object object, long expires) {
+            this.objectClass = objectClass;
+            this.object = object;
+            Attribute id = AttributeUtil.find(ID, object.toAttributes(Collections.singleton(ID)));
+            this.id = id == null ? null : AttributeUtil.getStringValue(id);
+            this.expires = expires;
+        }
+    }
+}
@@ -20,35 +20,38 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
-import org.apache.http.HttpResponse;
-import org.apache.http.NameValuePair;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.message.BasicNameValuePair;
-import org.apache.http.util.EntityUtils;
 import org.forgerock.http.header.GenericHeader;
 import org.forgerock.http.protocol.Request;
 import org.forgerock.json.JsonValue;
 import org.forgerock.openicf.connectors.office365.O365Configuration;
 import org.forgerock.openicf.connectors.office365.client.objects.Group;
 import org.forgerock.openicf.connectors.office365.client.objects.CreateUser;
+import org.forgerock.openicf.connectors.office365.client.objects.DiscoveredGroup;
+import org.forgerock.openicf.connectors.office365.client.objects.DiscoveredUser;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.forgerock.openicf.connectors.office365.client.objects.O365Object;
+import org.forgerock.openicf.connectors.office365.client.objects.ObjectClassSchema;
 import org.forgerock.openicf.connectors.office365.client.objects.ReadUser;
 import org.identityconnectors.common.logging.Log;
-import org.identityconnectors.common.security.SecurityUtil;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.objects.ObjectClass;
 
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
 /**
  * Client class for interacting with Office365 AzureAD via its Graph API
  */
-public class Office365Client {
+public class Office365Client implements BatchSender {
     /**
      * Setup logging for the {@link Office365Client}.
      */
@@ -56,15 +59,34 @@ public class Office365Client {
 
     public static final String SEPARATOR = "/";
 
+    /** Maximum number of sub-requests Graph accepts in one $batch request */
+    public static final int MAX_BATCH_SIZE = 20;
+
+    /** Maximum number of references Graph accepts in one members@odata.bind */
+    public static final int MAX_BIND_SIZE = 20;
+
+    /** Maximum number of ids looked up by a directoryObjects/getByIds request */
+    public static final int MAX_IDS_SIZE = 1000;
+
+    /** Number of pages fetched ahead of the caller when streaming a query */
+    private static final int PREFETCH_PAGES = 2;
+
     private static final ObjectMapper mapper = new ObjectMapper();
 
+    private final ConnectionPool connectionPool;
+
     private final HttpClient httpClient;
 
-    /* Pagination properties */
-    private Integer top;
-    private String skipToken;
+    /* Coalesces write operations into $batch requests, null unless batchWrites is set */
+    private final WriteBatcher writeBatcher;
+
+    /* Caches objects looked up by id or name, null unless objectCacheSize is set */
+    private final ObjectCache objectCache;
+
+    /* Records the progress of full enumerations, null unless checkpointDirectory is set */
+    private final CheckpointStore checkpointStore;
 
-    private O365Configuration configuration;
+    private final O365Configuration configuration;
 
     /**
      * Create a Client for a given configuration
@@ -73,34 +95,42 @@ public class Office365Client {
      */
     public Office365Client(final O365Configuration configuration) {
         this.configuration = configuration;
-        this.httpClient = new HttpClient(new OAuth2Signer(configuration, configuration.O365TOKEN_REFRESH_URI));
+        this.connectionPool = ConnectionPool.acquire(configuration);
+        this.httpClient = new HttpClient(connectionPool, new OAuth2Signer(connectionPool.getTokenManager(configuration)));
+        this.writeBatcher = configuration.getBatchWrites()
+                ? connectionPool.getWriteBatcher(configuration)
+                : null;
+        this.objectCache = connectionPool.getObjectCache(configuration);
+        this.checkpointStore = connectionPool.getCheckpointStore(configuration);
     }
 
     /**
-     * Fluently return a Client with paging properties set
-     *
-     * @param top The $top value for an O365 request
-     * @param skipToken The $skipToken value for an O365 request
-     * @return a copy of the calling client with paging properties set
+     * Release the shared resources held by this client.
      */
-    public Office365Client withPaging(Integer top, String skipToken) {
-        Office365Client client = new Office365Client(this.configuration);
-        client.top = top;
-        client.skipToken = skipToken;
-        return client;
+    public void close() {
+        connectionPool.release();
     }
 
     /**
-     * Return the next skipToken or null if no more pages available
+     * Return the metrics of the tenant
      *
-     * @return next skipToken
+     * @return the metrics shared by the clients of the tenant
      */
-    public String getSkipToken() {
-        return skipToken;
+    public Metrics getMetrics() {
+        return connectionPool.getMetrics();
     }
 
     private URI getO365Uri(ObjectClass objectClass, String objectId, String filter) {
-        String uri = configuration.O365HOST
+        return getO365Uri(objectClass, objectId, filter, null);
+    }
+
+    private URI getO365Uri(ObjectClass objectClass, String objectId, String filter, Collection<String> select) {
+        return getO365Uri(objectClass, objectId, filter, select, null, null);
+    }
+
+    private URI getO365Uri(ObjectClass objectClass, String objectId, String filter, Collection<String> select,
+            Integer top, String skipToken) {
+        String uri = configuration.getGraphEndpoint()
                 + (objectClass == null
                 ? ""
                 : configuration.getURIComponent(objectClass) + SEPARATOR);
@@ -117,6 +147,17 @@ public class Office365Client {
             }
             sepChar = "&";
         }
+        if (select != null && !select.isEmpty()) {
+            StringBuilder properties = new StringBuilder();
+            for (String property : select) {
+                if (properties.length() > 0) {
+                    properties.append(',');
+                }
+                properties.append(property);
+            }
+            uri += sepChar + "$select=" + properties;
+            sepChar = "&";
+        }
         if (top != null && top > -1) {
             uri += sepChar + "$top=" + top;
             sepChar = "&";
@@ -142,28 +183,83 @@ public class Office365Client {
     }
 
     /**
-     * Test the connection
+     * Test the connection with a single-row, single-property query
      *
      * @throws Exception on failure
      */
     public void testConnection() throws URISyntaxException {
-        httpClient.sendGetRequest(new URI("https://graph.microsoft.com/v1.0/$metadata"));
+        httpClient.sendGetRequest(new URI(configuration.getGraphEndpoint()
+                + configuration.getURIComponent(ObjectClass.ACCOUNT) + "?$top=1&$select=id"));
+    }
+
+    /**
+     * Check that the tenant is reachable, skipping the network round trip if any request
+     * through the shared connection pool succeeded within the configured liveness interval.
+     *
+     * @throws Exception on failure
+     */
+    public void checkAlive() throws URISyntaxException {
+        if (!connectionPool.succeededWithin(configuration.getLivenessCheckInterval() * 1000L)) {
+            testConnection();
+        }
+    }
+
+    /**
+     * Read the $metadata document describing the Graph entity types
+     *
+     * @param reader the decoder of the document
+     * @return the decoded document
+     */
+    <T> T getMetadata(ResponseReader<T> reader) {
+        try {
+            return httpClient.sendGetRequest(new URI(configuration.getGraphEndpoint() + "$metadata"), reader);
+        } catch (Exception e) {
+            logger.error(e, "Failed to retrieve $metadata");
+            throw new ConnectorException("Failed to retrieve $metadata", e);
+        }
     }
 
     /**
-     * Fetch an object of objectClass whose id is objectId
+     * Fetch the directory extension properties registered in the tenant, which $metadata
+     * does not describe
+     *
+     * @return the extensionProperty resources
+     */
+    JsonValue getExtensionProperties() {
+        try {
+            return httpClient.sendPostRequest(new URI(configuration.getGraphEndpoint()
+                    + "directoryObjects" + SEPARATOR + "getAvailableExtensionProperties"), "application/json",
+                    mapper.writeValueAsBytes(Collections.emptyMap()), RequestCost.READ).get("value");
+        } catch (Exception e) {
+            logger.error(e, "Failed to retrieve extension properties");
+            throw new ConnectorException("Failed to retrieve extension properties", e);
+        }
+    }
+
+    /**
+     * Fetch an object of objectClass whose id is objectId, from the object cache if enabled
      *
      * @param objectClass ObjectClass of the object
-     * @param objectId id of the object
+     * @param objectId id of the object, or user principal name of a user
      * @return the object
      */
-    public O365Object getObject(ObjectClass objectClass, String objectId) {
+    public O365Object getObject(final ObjectClass objectClass, final String objectId) {
+        if (objectCache == null) {
+            return readObject(objectClass, objectId);
+        }
+        return objectCache.get(objectClass, objectId, new Callable<O365Object>() {
+            @Override
+            public O365Object call() {
+                return readObject(objectClass, objectId);
+            }
+        });
+    }
+
+    private O365Object readObject(ObjectClass objectClass, String objectId) {
         try {
-            JsonValue json = httpClient.sendGetRequest(getO365Uri(objectClass, objectId));
+            JsonValue json = httpClient.sendGetRequest(getO365Uri(objectClass, encodeSegment(objectId)));
             O365Object object = mapper.readValue(json.toString(),
-                    objectClass.equals(ObjectClass.ACCOUNT)
-                        ? CreateUser.class
-                        : Group.class);
+                    getObjectType(objectClass, null));
             return object;
         } catch (Exception e) {
             logger.error(e, "Failed to retrieve object: {0} {1}", configuration.getEntitySet(objectClass), objectId);
@@ -171,39 +267,226 @@ public class Office365Client {
         }
     }
 
-    public List<O365Object> getObjects(ObjectClass objectClass, String filter) {
+    /**
+     * Look an object of objectClass up by id, reading only the selected properties
+     *
+     * @param objectClass ObjectClass of the object
+     * @param objectId id of the object
+     * @param select the properties to $select, or null for all of them
+     * @return the object, or null if there is no object with this id or the id is not valid
+     */
+    public O365Object findObject(ObjectClass objectClass, String objectId, Collection<String> select) {
         try {
-            List<O365Object> objects = new ArrayList<O365Object>();
-            JsonValue json = httpClient.sendGetRequest(getO365Uri(objectClass, null, filter));
-            for (JsonValue oneObj : json.get("value")) {
-                objects.add(mapper.readValue(oneObj.toString(),
-                        objectClass.equals(ObjectClass.ACCOUNT)
-                                ? CreateUser.class
-                                : Group.class));
+            JsonValue json = httpClient.sendGetRequest(getO365Uri(objectClass, encodeSegment(objectId), null, select));
+            // Graph also resolves users by userPrincipalName at this URL, which is not a Uid match
+            if (!objectId.equalsIgnoreCase(json.get("id").asString())) {
+                return null;
             }
+            return mapper.readValue(json.toString(),
+                    getObjectType(objectClass, select));
+        } catch (Exception e) {
+            if (isNotFound(e.getCause())) {
+                return null;
+            }
+            logger.error(e, "Failed to retrieve object: {0} {1}", configuration.getEntitySet(objectClass), objectId);
+            throw new ConnectorException("Failed to retrieve entity", e);
+        }
+    }
 
-            // Capture the nextSkipToken if there was one
-            if (json.get("@odata.nextSkipToken").isNotNull()) {
-                String url = json.get("@odata.nextSkipToken").asString();
-                if (url != null) {
-                    String[] urlbits = url.split("nextSkipToken=");
-                    if (urlbits.length == 2) {
-                        String[] urlbitsbits = urlbits[1].split("&");
-                        skipToken = urlbitsbits[0];
-                    }
+    /**
+     * Tell whether a request failed because the object it addresses does not exist. Graph
+     * answers 400 rather than 404 for an id that is not a valid object identifier.
+     */
+    private static boolean isNotFound(Throwable cause) {
+        if (!(cause instanceof HttpResponseException)) {
+            return false;
+        }
+        HttpResponseException exception = (HttpResponseException) cause;
+        return exception.getStatus() == 404
+                || (exception.getStatus() == 400 && exception.getErrorMessage() != null
+                && exception.getErrorMessage().startsWith("Invalid object identifier"));
+    }
+
+    /**
+     * Percent-encode a value used as a URI path segment, such as an id read from a Uid
+     */
+    private static String encodeSegment(String segment) {
+        try {
+            // Path segments take %20 for a space, not the + of form encoding
+            return URLEncoder.encode(segment, "utf-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new ConnectorException(e);
+        }
+    }
+
+    /**
+     * Look objects of objectClass up by id, {@link #MAX_IDS_SIZE} ids per request. Ids of
+     * missing objects, or of objects of another class, are skipped.
+     *
+     * @param objectClass ObjectClass of the objects
+     * @param objectIds ids of the objects
+     * @return the objects found, in no particular order
+     */
+    public List<O365Object> getObjectsByIds(ObjectClass objectClass, List<String> objectIds) {
+        List<O365Object> objects = new ArrayList<O365Object>(objectIds.size());
+        String type = objectClass.equals(ObjectClass.ACCOUNT) ? "user" : "group";
+        for (int start = 0; start < objectIds.size(); start += MAX_IDS_SIZE) {
+            List<String> ids = objectIds.subList(start, Math.min(start + MAX_IDS_SIZE, objectIds.size()));
+            try {
+                Map<String, Object> body = new LinkedHashMap<String, Object>();
+                body.put("ids", ids);
+                body.put("types", Collections.singletonList(type));
+                JsonValue json = httpClient.sendPostRequest(new URI(configuration.getGraphEndpoint()
+                        + "directoryObjects" + SEPARATOR + "getByIds"), "application/json",
+                        mapper.writeValueAsBytes(body), RequestCost.READ);
+                for (JsonValue value : json.get("value")) {
+                    objects.add(mapper.readValue(value.toString(),
+                            getObjectType(objectClass, null)));
                 }
+            } catch (Exception e) {
+                logger.error(e, "Failed to retrieve objects by id: {0}", configuration.getEntitySet(objectClass));
+                throw new ConnectorException("Failed to retrieve objects by id", e);
             }
-            return objects;
+        }
+        return objects;
+    }
+
+    public List<O365Object> getObjects(ObjectClass objectClass, String filter) {
+        return getObjects(objectClass, filter, null);
+    }
+
+    /**
+     * Fetch the first page of objects of objectClass, reading only the selected properties
+     *
+     * @param objectClass ObjectClass of the objects
+     * @param filter the $filter expression, or null
+     * @param select the properties to $select, or null for all of them
+     * @return the objects
+     */
+    public List<O365Object> getObjects(ObjectClass objectClass, String filter, Collection<String> select) {
+        return getPage(objectClass, filter, select, null, null).getObjects();
+    }
+
+    /**
+     * Fetch a page of objects of objectClass, reading only the selected properties. The paging
+     * state is carried by the arguments and the returned page only, so concurrent searches can
+     * share a client.
+     *
+     * @param objectClass ObjectClass of the objects
+     * @param filter the $filter expression, or null
+     * @param select the properties to $select, or null for all of them
+     * @param top the $top value, or null for the server's page size
+     * @param skipToken the $skipToken of the page, as returned by {@link Page#getSkipToken()}, or null for the first one
+     * @return the page, whose skip token locates the next one
+     */
+    public Page<O365Object> getPage(ObjectClass objectClass, String filter, Collection<String> select,
+            Integer top, String skipToken) {
+        try {
+            return httpClient.sendGetRequest(getO365Uri(objectClass, null, filter, select, top, skipToken),
+                    new PageReader<O365Object>(mapper, getObjectType(objectClass, select)));
         } catch (Exception e) {
             logger.error(e, "Failed to retrieve objects: {0} {1}", configuration.getEntitySet(objectClass), filter);
             throw new ConnectorException("Failed to retrieve objects", e);
         }
     }
 
+    /**
+     * Stream every object of objectClass, following the result pages until the last one.
+     * The following pages are fetched in the background while the caller handles the current
+     * one; the caller must close the results when done.
+     *
+     * @param objectClass ObjectClass of the objects
+     * @param filter the $filter expression, or null
+     * @param select the properties to $select, or null for all of them
+     * @return the pages of objects
+     */
+    public PagedResults<O365Object> streamObjects(ObjectClass objectClass, String filter, Collection<String> select) {
+        return streamObjects(objectClass, Collections.singletonList(filter), select, 1, false);
+    }
+
+    /**
+     * Stream every page of objects of objectClass matching any of several disjoint filters,
+     * walking up to parallelism of them at the same time.
+     *
+     * @param objectClass ObjectClass of the objects
+     * @param partitions the filters of the partitions, together covering the query
+     * @param select the properties to $select, or null for all of them
+     * @param parallelism maximum number of partitions walked at the same time
+     * @param resume true to resume the partitions from the checkpoints of an earlier walk that
+     *               failed, false to start from their first page
+     * @return the pages of objects, in no particular order
+     */
+    public PagedResults<O365Object> streamObjects(ObjectClass objectClass, List<String> partitions,
+            Collection<String> select, int parallelism, boolean resume) {
+        List<URI> uris = new ArrayList<URI>(partitions.size());
+        for (String filter : partitions) {
+            uris.add(getO365Uri(objectClass, null, filter, select));
+        }
+        return new PagedResults<O365Object>(httpClient,
+                new PageReader<O365Object>(mapper, getObjectType(objectClass, select)),
+                uris, parallelism, PREFETCH_PAGES, checkpointStore, resume);
+    }
+
+    /**
+     * Stream the changes to objects of objectClass, page by page. The last page carries the
+     * delta link to query for the following changes.
+     *
+     * @param objectClass ObjectClass of the objects
+     * @param deltaLink the delta link returned by a previous query, or null to start with
+     *                  every object of the class
+     * @param select the properties to $select, or null for all of them. Ignored with a delta
+     *               link, which keeps the selection of the query that returned it.
+     * @return the pages of changes
+     */
+    public PagedResults<Delta> streamChanges(ObjectClass objectClass, String deltaLink, Collection<String> select) {
+        URI uri;
+        try {
+            uri = deltaLink != null
+                    ? new URI(deltaLink)
+                    : getO365Uri(objectClass, "delta", null, select);
+        } catch (URISyntaxException e) {
+            logger.warn(e, "Bad delta link: {0}", deltaLink);
+            throw new ConnectorException(e);
+        }
+        return new PagedResults<Delta>(httpClient,
+                new DeltaReader(mapper, getObjectType(objectClass, select)),
+                uri,
+                PREFETCH_PAGES);
+    }
+
+    /**
+     * Return a delta link from which to query the changes made from now on, in a single
+     * request that skips the initial enumeration of the objects.
+     *
+     * @param objectClass ObjectClass of the objects
+     * @param select the properties to $select, kept by every delta query following the link
+     * @return the delta link
+     */
+    public String getLatestDeltaLink(ObjectClass objectClass, Collection<String> select) {
+        String uri = getO365Uri(objectClass, "delta", null, select).toString();
+        uri += (uri.indexOf('?') < 0 ? "?" : "&") + "$deltatoken=latest";
+        try {
+            Page<Delta> page = httpClient.sendGetRequest(new URI(uri),
+                    new DeltaReader(mapper, getObjectType(objectClass, select)));
+            if (page.getDeltaLink() == null) {
+                throw new IllegalStateException("No delta link returned");
+            }
+            return page.getDeltaLink();
+        } catch (Exception e) {
+            logger.error(e, "Failed to retrieve latest delta link: {0}", configuration.getEntitySet(objectClass));
+            throw new ConnectorException("Failed to retrieve latest delta link", e);
+        }
+    }
+
     public O365Object createObject(ObjectClass objectClass, O365Object object) {
         try {
-            JsonValue json = httpClient.sendPostRequest(getO365Uri(objectClass), "application/json",
-                    mapper.writeValueAsBytes(object));
+            JsonValue json;
+            if (writeBatcher != null) {
+                json = checkBatchResponse(writeBatcher.submit(this, newCreateRequest(objectClass, object)));
+            } else {
+                json = httpClient.sendPostRequest(getO365Uri(objectClass), "application/json",
+                        mapper.writeValueAsBytes(object));
+            }
             O365Object obj = mapper.readValue(json.toString(),
                     objectClass.equals(ObjectClass.ACCOUNT)
                             ? ReadUser.class
@@ -223,68 +506,384 @@ public class Office365Client {
      */
     public void deleteObject(ObjectClass objectClass, String objectId) {
         try {
-            httpClient.sendDeleteRequest(getO365Uri(objectClass, objectId));
+            if (writeBatcher != null) {
+                checkBatchResponse(writeBatcher.submit(this, newDeleteRequest(objectClass, objectId)));
+            } else {
+                httpClient.sendDeleteRequest(getO365Uri(objectClass, objectId));
+            }
         } catch (Exception e) {
             logger.error(e, "Failed to delete object: {0} {1}", configuration.getEntitySet(objectClass), objectId);
             throw new ConnectorException("Failed to delete object", e);
+        } finally {
+            invalidate(objectClass, objectId);
         }
     }
 
-    public void updateObject(ObjectClass objectClass, String objectId, O365Object object) {
+    /**
+     * Update the given properties of an object, leaving the others untouched
+     *
+     * @param objectClass ObjectClass of the object
+     * @param objectId id of the object
+     * @param changes the properties to set, a null value clears its property
+     */
+    public void updateObject(ObjectClass objectClass, String objectId, Map<String, Object> changes) {
         try {
-            httpClient.sendPatchRequest(getO365Uri(objectClass, objectId), "application/json",
-                    mapper.writeValueAsBytes(object));
+            if (writeBatcher != null) {
+                checkBatchResponse(writeBatcher.submit(this, newUpdateRequest(objectClass, objectId, changes)));
+            } else {
+                httpClient.sendPatchRequest(getO365Uri(objectClass, objectId), "application/json",
+                        mapper.writeValueAsBytes(changes));
+            }
         } catch (Exception e) {
             logger.error(e, "Failed to update object: {0} {1}", configuration.getEntitySet(objectClass), objectId);
             throw new ConnectorException("Failed to update object", e);
+        } finally {
+            invalidate(objectClass, objectId);
         }
     }
 
-    private class OAuth2Signer implements AuthSigner {
-        private final O365Configuration config;
-        private final String tokenRefreshUrl;
+    /**
+     * Stream the ids of the members of a group, page by page. The caller must close the
+     * results when done.
+     *
+     * @param groupId id of the group
+     * @return the pages of ids of the direct members
+     */
+    public PagedResults<String> streamMemberIds(String groupId) {
+        String uri = getO365Uri(ObjectClass.GROUP, groupId + SEPARATOR + "members", null,
+                Collections.singletonList("id")).toString() + "&$top=999";
+        try {
+            return new PagedResults<String>(httpClient, new IdReader(mapper), new URI(uri), PREFETCH_PAGES);
+        } catch (URISyntaxException e) {
+            logger.warn(e, "Bad URI syntax: {0}", uri);
+            throw new ConnectorException(e);
+        }
+    }
 
-        public OAuth2Signer(O365Configuration config, String tokenRefreshUrl) {
-            this.config = config;
-            this.tokenRefreshUrl = tokenRefreshUrl;
+    /**
+     * Add members to a group, binding up to {@link #MAX_BIND_SIZE} members per request. Graph
+     * rejects a whole bind when one of the members already belongs to the group, those members
+     * are then added one reference at a time so that existing members are skipped.
+     *
+     * @param groupId id of the group
+     * @param memberIds ids of the directory objects to add
+     */
+    public void addMembers(String groupId, List<String> memberIds) {
+        for (int start = 0; start < memberIds.size(); start += MAX_BIND_SIZE) {
+            List<String> chunk = memberIds.subList(start, Math.min(start + MAX_BIND_SIZE, memberIds.size()));
+            if (!bindMembers(groupId, chunk)) {
+                addMemberReferences(groupId, chunk);
+            }
         }
+    }
 
-        @Override
-        public void sign(Request request) {
-            if (config.getAccessToken() == null
-                    || config.getTokenExpiration().compareTo(new Date().getTime() / 1000) < 0) {
-                // OAuth2 token is expired, attempt to refresh it
-                try {
-                    HttpPost httprequest = new HttpPost(new URI(tokenRefreshUrl));
-                    httprequest.setHeader("content-type", "application/x-www-form-urlencoded");
-                    List<NameValuePair> nameValuePairs = new ArrayList<NameValuePair>(4);
-                    nameValuePairs.add(new BasicNameValuePair("grant_type", "refresh_token"));
-                    nameValuePairs.add(new BasicNameValuePair("refresh_token", config.getRefreshToken()));
-                    nameValuePairs.add(new BasicNameValuePair("client_secret",
-                            SecurityUtil.decrypt(config.getClientSecret())));
-                    nameValuePairs.add(new BasicNameValuePair("client_id", config.getClientId()));
-                    httprequest.setEntity(new UrlEncodedFormEntity(nameValuePairs));
-
-                    HttpResponse response = HttpClients.createDefault().execute(httprequest);
-                    int statusCode = response.getStatusLine().getStatusCode();
-                    if (statusCode == 200) {
-                        // success, parse response body and set new member values for oConfig
-                        String json = EntityUtils.toString(response.getEntity());
-                        OAuthRefreshResponse oResponse = new ObjectMapper().readValue(json, OAuthRefreshResponse.class);
-                        config.setAccessToken(oResponse.accessToken);
-                        config.setRefreshToken(oResponse.refreshToken);
-                        config.setTokenExpiration(oResponse.expiresOn);
-                        // TODO: Find a way to propagate these new tokens to wherever the config came from
-                    } else {
-                        throw new ConnectorException("Failed : HTTP error code : "
-                                + response.getStatusLine().getStatusCode());
+    /**
+     * Add members to a group in a single request
+     *
+     * @param groupId id of the group
+     * @param memberIds ids of the directory objects to add
+     * @return false if Graph rejected the request as bad, as when a member already belongs to the group
+     */
+    private boolean bindMembers(String groupId, List<String> memberIds) {
+        List<String> references = new ArrayList<String>(memberIds.size());
+        for (String memberId : memberIds) {
+            references.add(getReference(memberId));
+        }
+        Map<String, Object> changes = Collections.<String, Object>singletonMap("members@odata.bind", references);
+        try {
+            if (writeBatcher != null) {
+                checkBatchResponse(writeBatcher.submit(this, new BatchRequest("PATCH", SEPARATOR
+                        + configuration.getURIComponent(ObjectClass.GROUP) + SEPARATOR + groupId, changes,
+                        RequestCost.writes(memberIds.size()))));
+            } else {
+                httpClient.sendPatchRequest(getO365Uri(ObjectClass.GROUP, groupId), "application/json",
+                        mapper.writeValueAsBytes(changes), RequestCost.writes(memberIds.size()));
+            }
+            return true;
+        } catch (Exception e) {
+            if (e.getCause() instanceof HttpResponseException
+                    && ((HttpResponseException) e.getCause()).getStatus() == 400) {
+                logger.info("Binding {0} members to group {1} was rejected, adding them one by one",
+                        memberIds.size(), groupId);
+                return false;
+            }
+            logger.error(e, "Failed to add members to group {0}", groupId);
+            throw new ConnectorException("Failed to add members to group " + groupId, e);
+        } finally {
+            invalidate(ObjectClass.GROUP, groupId);
+        }
+    }
+
+    /**
+     * Add members to a group one reference at a time, sending the additions through $batch.
+     * Members that already belong to the group are skipped.
+     *
+     * @param groupId id of the group
+     * @param memberIds ids of the directory objects to add
+     */
+    private void addMemberReferences(String groupId, List<String> memberIds) {
+        List<BatchRequest> requests = new ArrayList<BatchRequest>(memberIds.size());
+        for (String memberId : memberIds) {
+            requests.add(new BatchRequest("POST", SEPARATOR + configuration.getURIComponent(ObjectClass.GROUP)
+                    + SEPARATOR + groupId + SEPARATOR + "members" + SEPARATOR + "$ref",
+                    Collections.singletonMap("@odata.id", getReference(memberId))));
+        }
+        List<BatchResponse> responses = executeBatch(requests);
+        for (int i = 0; i < responses.size(); i++) {
+            BatchResponse response = responses.get(i);
+            // Adding a member that already belongs to the group is not an error
+            if (!response.isSuccessful() && !(response.getStatus() == 400
+                    && response.getErrorMessage().contains("already exist"))) {
+                logger.error("Failed to add member {0} to group {1}: {2}", memberIds.get(i), groupId,
+                        response.getErrorMessage());
+                throw new ConnectorException("Failed to add member " + memberIds.get(i) + " to group "
+                        + groupId + ": " + response.getErrorMessage());
+            }
+        }
+    }
+
+    private String getReference(String memberId) {
+        return configuration.getGraphEndpoint() + "directoryObjects" + SEPARATOR + memberId;
+    }
+
+    /**
+     * Remove members from a group, sending the removals through $batch
+     *
+     * @param groupId id of the group
+     * @param memberIds ids of the directory objects to remove
+     */
+    public void removeMembers(String groupId, List<String> memberIds) {
+        List<BatchRequest> requests = new ArrayList<BatchRequest>(memberIds.size());
+        for (String memberId : memberIds) {
+            requests.add(new BatchRequest("DELETE", SEPARATOR + configuration.getURIComponent(ObjectClass.GROUP)
+                    + SEPARATOR + groupId + SEPARATOR + "members" + SEPARATOR + memberId + SEPARATOR + "$ref", null));
+        }
+        List<BatchResponse> responses = executeBatch(requests);
+        for (int i = 0; i < responses.size(); i++) {
+            BatchResponse response = responses.get(i);
+            // Removing a member that is already gone is not an error
+            if (!response.isSuccessful() && response.getStatus() != 404) {
+                logger.error("Failed to remove member {0} from group {1}: {2}", memberIds.get(i), groupId,
+                        response.getErrorMessage());
+                throw new ConnectorException("Failed to remove member " + memberIds.get(i) + " from group "
+                        + groupId + ": " + response.getErrorMessage());
+            }
+        }
+    }
+
+    /**
+     * Build a $batch sub-request creating an object
+     *
+     * @param objectClass ObjectClass of the object
+     * @param object the object to create
+     * @return the sub-request
+     */
+    public BatchRequest newCreateRequest(ObjectClass objectClass, O365Object object) {
+        return new BatchRequest("POST", SEPARATOR + configuration.getURIComponent(objectClass), object);
+    }
+
+    /**
+     * Build a $batch sub-request updating an object
+     *
+     * @param objectClass ObjectClass of the object
+     * @param objectId id of the object
+     * @param changes the properties to set, a null value clears its property
+     * @return the sub-request
+     */
+    public BatchRequest newUpdateRequest(ObjectClass objectClass, String objectId, Map<String, Object> changes) {
+        return new BatchRequest("PATCH", SEPARATOR + configuration.getURIComponent(objectClass)
+                + SEPARATOR + objectId, changes);
+    }
+
+    /**
+     * Build a $batch sub-request deleting an object
+     *
+     * @param objectClass ObjectClass of the object
+     * @param objectId id of the object
+     * @return the sub-request
+     */
+    public BatchRequest newDeleteRequest(ObjectClass objectClass, String objectId) {
+        return new BatchRequest("DELETE", SEPARATOR + configuration.getURIComponent(objectClass)
+                + SEPARATOR + objectId, null);
+    }
+
+    /**
+     * Send requests through JSON $batch, packing up to {@link #MAX_BATCH_SIZE} sub-requests per
+     * round trip. A failed sub-request does not fail the others: check each response.
+     *
+     * Sub-requests answered with a retryable status, such as 429 when throttled, are sent
+     * again in a later batch after the longest delay their responses ask for, as allowed by the
+     * tenant's retry policy and budget. Their last response is returned once retries run out.
+     * Every sending of a sub-request takes rate limit permits, and every retried sub-request
+     * spends retry budget.
+     *
+     * @param requests the sub-requests
+     * @return the response of each sub-request, in request order
+     */
+    @Override
+    public List<BatchResponse> executeBatch(List<BatchRequest> requests) {
+        RetryPolicy retryPolicy = connectionPool.getRetryPolicy();
+        RetryBudget retryBudget = connectionPool.getRetryBudget();
+        long deadline = System.currentTimeMillis() + retryPolicy.getMaxRetryDuration();
+        BatchResponse[] responses = new BatchResponse[requests.size()];
+        List<Integer> pending = new ArrayList<Integer>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            pending.add(i);
+        }
+        for (int attempt = 0; ; attempt++) {
+            sendBatch(requests, pending, responses, attempt > 0);
+            List<Integer> retryable = new ArrayList<Integer>();
+            long delay = 0;
+            for (int i : pending) {
+                BatchResponse response = responses[i];
+                if (!response.isSuccessful()
+                        && retryPolicy.isRetryable(requests.get(i).getMethod(), response.getStatus())) {
+                    retryable.add(i);
+                    delay = Math.max(delay, retryPolicy.getDelay(attempt,
+                            response.getHeader("x-ms-retry-after-ms"), response.getHeader("Retry-After")));
+                }
+            }
+            if (retryable.isEmpty() || attempt >= retryPolicy.getMaxRetries()
+                    || System.currentTimeMillis() + delay > deadline) {
+                break;
+            }
+            // Sub-requests the budget does not cover keep their failed response
+            pending = new ArrayList<Integer>(retryable.size());
+            for (int i : retryable) {
+                if (retryBudget.tryWithdraw(requests.get(i).getCost().getOperations())) {
+                    pending.add(i);
+                    connectionPool.getMetrics().recordRetry();
+                }
+            }
+            if (pending.isEmpty()) {
+                break;
+            }
+            logger.info("{0} batch sub-requests returned a retryable status, retrying in {1}ms",
+                    pending.size(), delay);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConnectorException("Interrupted while waiting to retry batch", e);
+            }
+        }
+        return Arrays.asList(responses);
+    }
+
+    /**
+     * Send some of the requests through JSON $batch, storing their responses. Each $batch
+     * request costs the operations of its sub-requests.
+     *
+     * @param requests all the sub-requests
+     * @param indexes the positions of the sub-requests to send
+     * @param responses the responses of all the sub-requests, by position
+     * @param retry whether the sub-requests are retried, their retries being already paid for
+     */
+    private void sendBatch(List<BatchRequest> requests, List<Integer> indexes, BatchResponse[] responses,
+            boolean retry) {
+        for (int start = 0; start < indexes.size(); start += MAX_BATCH_SIZE) {
+            List<Integer> chunk = indexes.subList(start, Math.min(start + MAX_BATCH_SIZE, indexes.size()));
+            List<Map<String, Object>> subRequests = new ArrayList<Map<String, Object>>(chunk.size());
+            RequestCost cost = RequestCost.reads(0);
+            for (int i = 0; i < chunk.size(); i++) {
+                BatchRequest request = requests.get(chunk.get(i));
+                cost = cost.plus(request.getCost());
+                Map<String, Object> subRequest = new LinkedHashMap<String, Object>();
+                // Sub-requests are correlated with their response by their position in the chunk
+                subRequest.put("id", String.valueOf(i));
+                subRequest.put("method", request.getMethod());
+                subRequest.put("url", request.getUrl());
+                if (request.getBody() != null) {
+                    subRequest.put("headers", Collections.singletonMap("Content-Type", "application/json"));
+                    subRequest.put("body", request.getBody());
+                }
+                subRequests.add(subRequest);
+            }
+            try {
+                JsonValue json = httpClient.sendPostRequest(new URI(configuration.getGraphEndpoint() + "$batch"),
+                        "application/json",
+                        mapper.writeValueAsBytes(Collections.singletonMap("requests", subRequests)),
+                        retry ? cost.asRetry() : cost);
+                BatchResponse[] chunkResponses = new BatchResponse[chunk.size()];
+                for (JsonValue response : json.get("responses")) {
+                    int id = Integer.parseInt(response.get("id").asString());
+                    Map<String, String> headers = new LinkedHashMap<String, String>();
+                    if (response.get("headers").isNotNull()) {
+                        for (Map.Entry<String, Object> header : response.get("headers").asMap().entrySet()) {
+                            headers.put(header.getKey(), String.valueOf(header.getValue()));
+                        }
+                    }
+                    chunkResponses[id] = new BatchResponse(response.get("status").asInteger(), headers,
+                            response.get("body"));
+                }
+                for (int i = 0; i < chunkResponses.length; i++) {
+                    if (chunkResponses[i] == null) {
+                        throw new IllegalStateException("No response to batch sub-request " + i);
+                    }
+                    responses[chunk.get(i)] = chunkResponses[i];
+                }
+            } catch (Exception e) {
+                logger.error(e, "Failed to execute batch of {0} requests", chunk.size());
+                throw new ConnectorException("Failed to execute batch", e);
+            }
+        }
+    }
+
+    private JsonValue checkBatchResponse(BatchResponse response) {
+        if (!response.isSuccessful()) {
+            throw new IllegalStateException("Unable to perform request",
+                    new HttpResponseException(response.getStatus(), response.getErrorMessage()));
+        }
+        return response.getBody() == null ? json(object()) : response.getBody();
+    }
+
+    /**
+     * Return the class objects of objectClass are read into. Properties that have no field are
+     * only kept when schema discovery is enabled and the selection may include some.
+     *
+     * @param objectClass ObjectClass of the objects
+     * @param select the properties to $select, or null for all of them
+     * @return the object class
+     */
+    private Class<? extends O365Object> getObjectType(ObjectClass objectClass, Collection<String> select) {
+        boolean additional = false;
+        if (configuration.getSchemaDiscovery()) {
+            additional = select == null;
+            ObjectClassSchema builtIn = ObjectClassSchema.of(objectClass);
+            if (select != null) {
+                for (String property : select) {
+                    if (builtIn.getAttribute(property) == null) {
+                        additional = true;
+                        break;
                     }
-                } catch (Exception e) {
-                    throw new ConnectorException(e);
                 }
             }
+        }
+        if (objectClass.equals(ObjectClass.ACCOUNT)) {
+            return additional ? DiscoveredUser.class : CreateUser.class;
+        }
+        return additional ? DiscoveredGroup.class : Group.class;
+    }
 
-            request.getHeaders().put(new GenericHeader("Authorization", "Bearer " + configuration.getAccessToken()));
+    /**
+     * Drop an object from the object cache after a write, whether it succeeded or not
+     */
+    private void invalidate(ObjectClass objectClass, String objectId) {
+        if (objectCache != null) {
+            objectCache.invalidate(objectClass, objectId);
+        }
+    }
+
+    private static class OAuth2Signer implements AuthSigner {
+        private final TokenManager tokenManager;
+
+        public OAuth2Signer(TokenManager tokenManager) {
+            this.tokenManager = tokenManager;
+        }
+
+        @Override
+        public void sign(Request request) {
+            request.getHeaders().put(new GenericHeader("Authorization", "Bearer " + tokenManager.getAccessToken()));
             request.getHeaders().put(new GenericHeader("Accept", "application/json;odata.metadata=full"));
         }
     }
@@ -0,0 +1,123 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import java.util.List;
+
+/**
+ * One page of a Graph collection query.
+ *
+ * @param <T> the type of the objects in the page
+ */
+public class Page<T> {
+    private final List<T> objects;
+    private final String nextLink;
+    private final String deltaLink;
+    private final String link;
+    private final String query;
+
+    public Page(List<T> objects, String nextLink) {
+        this(objects, nextLink, null, null);
+    }
+
+    public Page(List<T> objects, String nextLink, String deltaLink, String link) {
+        this(objects, nextLink, deltaLink, link, null);
+    }
+
+    private Page(List<T> objects, String nextLink, String deltaLink, String link, String query) {
+        this.objects = objects;
+        this.nextLink = nextLink;
+        this.deltaLink = deltaLink;
+        this.link = link;
+        this.query = query;
+    }
+
+    /**
+     * Return a copy of this page recording the URL it was fetched from
+     *
+     * @param link the URL of this page
+     * @param query the URL of the first page of the query this page belongs to
+     * @return the copy
+     */
+    Page<T> at(String link, String query) {
+        return new Page<T>(objects, nextLink, deltaLink, link, query);
+    }
+
+    /**
+     * Return the objects of this page
+     *
+     * @return the objects, in server order
+     */
+    public List<T> getObjects() {
+        return objects;
+    }
+
+    /**
+     * Return the URL of the next page, or null if this is the last page
+     *
+     * @return the @odata.nextLink of this page
+     */
+    public String getNextLink() {
+        return nextLink;
+    }
+
+    /**
+     * Return the URL to query for later changes, only set on the last page of a delta query
+     *
+     * @return the @odata.deltaLink of this page, or null
+     */
+    public String getDeltaLink() {
+        return deltaLink;
+    }
+
+    /**
+     * Return the URL this page was fetched from, if known. Fetching it again returns the
+     * same page, which makes it a resumption point for delta queries.
+     *
+     * @return the URL of this page, or null
+     */
+    public String getLink() {
+        return link;
+    }
+
+    /**
+     * Return the URL of the first page of the query this page belongs to, if known. It tells
+     * the partitions of a partitioned query apart.
+     *
+     * @return the URL of the first page of the query, or null
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * Return the $skiptoken of the next page, or null if this is the last page
+     *
+     * @return the skip token extracted from the next link
+     */
+    public String getSkipToken() {
+        if (nextLink == null) {
+            return null;
+        }
+        int start = nextLink.toLowerCase().indexOf("$skiptoken=");
+        if (start < 0) {
+            return null;
+        }
+        start += "$skiptoken=".length();
+        int end = nextLink.indexOf('&', start);
+        return end < 0 ? nextLink.substring(start) : nextLink.substring(start, end);
+    }
+}
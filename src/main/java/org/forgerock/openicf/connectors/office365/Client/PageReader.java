@@ -0,0 +1,83 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams a Graph collection response, binding each element of {@code value} to its bean as
+ * it is read instead of building the whole document tree first.
+ *
+ * @param <T> the bean type of the collection elements
+ */
+class PageReader<T> implements ResponseReader<Page<T>> {
+
+    private final ObjectMapper mapper;
+    private final Class<? extends T> type;
+
+    PageReader(ObjectMapper mapper, Class<? extends T> type) {
+        this.mapper = mapper;
+        this.type = type;
+    }
+
+    /**
+     * Bind the collection element starting at the current token
+     *
+     * @param parser parser positioned on the START_OBJECT of the element
+     * @return the bound element
+     */
+    T readElement(JsonParser parser) throws IOException {
+        return mapper.readValue(parser, type);
+    }
+
+    @Override
+    public Page<T> read(InputStream in) throws IOException {
+        JsonParser parser = mapper.getFactory().createParser(in);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object");
+            }
+            List<T> objects = new ArrayList<T>();
+            String nextLink = null;
+            String deltaLink = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("value".equals(field) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        objects.add(readElement(parser));
+                    }
+                } else if ("@odata.nextLink".equals(field)) {
+                    nextLink = parser.getText();
+                } else if ("@odata.deltaLink".equals(field)) {
+                    deltaLink = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return new Page<T>(objects, nextLink, deltaLink, null);
+        } finally {
+            parser.close();
+        }
+    }
+}
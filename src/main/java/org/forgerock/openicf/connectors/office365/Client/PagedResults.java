@@ -0,0 +1,260 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams every page of a Graph collection or delta query by following its @odata.nextLink.
+ *
+ * A background producer fetches the following pages while the caller is still handling the
+ * current one. It runs at most a bounded number of pages ahead and then waits for the caller
+ * to catch up, so a slow consumer never buffers the whole collection. Callers must always
+ * {@link #close()} the results, in particular when they stop before the last page.
+ *
+ * The results may also cover several disjoint queries, the partitions of a collection, walked
+ * concurrently by a bounded number of producers. Their pages are then returned in the order
+ * they are fetched.
+ *
+ * With a {@link CheckpointStore}, each query records the next link of a page once the caller
+ * has handled it, that is when it asks for the following page. A later walk of the same query
+ * that asks to resume starts from there, or from the first page if Graph rejects the recorded
+ * link as invalid or expired. Other walks start from the first page and replace the checkpoint.
+ *
+ * @param <T> the type of the objects in the pages
+ */
+public class PagedResults<T> {
+    private static final Log logger = Log.getLog(PagedResults.class);
+
+    /** Checkpoint of a partition walked to its last page while others were still pending */
+    private static final String COMPLETE = "";
+
+    private final BlockingQueue<Item<T>> queue;
+    private final List<Future<?>> producers;
+    private final List<URI> queries;
+    private final CheckpointStore checkpoints;
+    private volatile boolean closed = false;
+    private boolean exhausted = false;
+
+    /* Last page returned to the caller, recorded as handled when the next one is requested */
+    private Page<T> current;
+
+    /**
+     * Start fetching the pages of a query
+     *
+     * @param httpClient client sending the page requests
+     * @param reader decoder of each page
+     * @param first URI of the first page
+     * @param prefetchPages maximum number of pages fetched ahead of the caller
+     */
+    PagedResults(final HttpClient httpClient, final ResponseReader<Page<T>> reader, final URI first,
+            int prefetchPages) {
+        this(httpClient, reader, Collections.singletonList(first), 1, prefetchPages, null, false);
+    }
+
+    /**
+     * Start fetching the pages of several queries
+     *
+     * @param httpClient client sending the page requests
+     * @param reader decoder of each page
+     * @param partitions URIs of the first page of each query
+     * @param parallelism maximum number of queries walked at the same time
+     * @param prefetchPages maximum number of pages fetched ahead of the caller, per query walked
+     * @param checkpoints store of the progress of each query, or null to not record it
+     * @param resume true to resume each query from its checkpoint, false to start from the first page
+     */
+    PagedResults(final HttpClient httpClient, final ResponseReader<Page<T>> reader, List<URI> partitions,
+            int parallelism, int prefetchPages, final CheckpointStore checkpoints, final boolean resume) {
+        this.queries = partitions;
+        this.checkpoints = checkpoints;
+        if (!resume) {
+            // The progress of an earlier walk must not be mixed with this one
+            discardCheckpoints();
+        }
+        final Queue<URI> pending = new ConcurrentLinkedQueue<URI>(partitions);
+        int producerCount = Math.max(1, Math.min(parallelism, partitions.size()));
+        final AtomicInteger running = new AtomicInteger(producerCount);
+        this.queue = new ArrayBlockingQueue<Item<T>>(prefetchPages * producerCount);
+        this.producers = new ArrayList<Future<?>>(producerCount);
+        for (int i = 0; i < producerCount; i++) {
+            producers.add(BackgroundExecutors.prefetcher().submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        URI query;
+                        while ((query = pending.poll()) != null && !closed) {
+                            String checkpoint = checkpoints == null || !resume
+                                    ? null
+                                    : checkpoints.get(query.toString());
+                            if (COMPLETE.equals(checkpoint)) {
+                                continue;
+                            }
+                            URI uri = checkpoint == null ? query : new URI(checkpoint);
+                            while (uri != null && !closed) {
+                                Page<T> page;
+                                try {
+                                    page = httpClient.sendGetRequest(uri, reader).at(uri.toString(),
+                                            query.toString());
+                                } catch (RuntimeException e) {
+                                    if (checkpoint == null || !isExpired(e)) {
+                                        // The checkpoint is kept, a later walk can resume from it
+                                        throw e;
+                                    }
+                                    // The skip token of the checkpoint is no longer honored, start over
+                                    logger.warn(e, "Unable to resume {0}, restarting it", query);
+                                    checkpoints.remove(query.toString());
+                                    checkpoint = null;
+                                    uri = query;
+                                    continue;
+                                }
+                                checkpoint = null;
+                                queue.put(new Item<T>(page, null));
+                                uri = page.getNextLink() == null ? null : new URI(page.getNextLink());
+                            }
+                        }
+                        // The last producer to finish marks the end of the results
+                        if (running.decrementAndGet() == 0) {
+                            queue.put(new Item<T>(null, null));
+                        }
+                    } catch (InterruptedException e) {
+                        // Closed by the consumer
+                    } catch (Exception e) {
+                        if (!closed) {
+                            try {
+                                queue.put(new Item<T>(null, e));
+                            } catch (InterruptedException ie) {
+                                // Closed by the consumer
+                            }
+                        }
+                    }
+                }
+            }));
+        }
+    }
+
+    /**
+     * Return the next page, waiting for it to be fetched if needed
+     *
+     * @return the next page, or null once every page has been returned
+     */
+    public Page<T> nextPage() {
+        if (exhausted) {
+            return null;
+        }
+        if (current != null) {
+            commit(current);
+            current = null;
+        }
+        Item<T> item;
+        try {
+            item = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorException("Interrupted while waiting for the next page", e);
+        }
+        if (item.error != null) {
+            exhausted = true;
+            throw new ConnectorException("Failed to retrieve objects", item.error);
+        }
+        if (item.page == null) {
+            exhausted = true;
+            discardCheckpoints();
+        }
+        current = item.page;
+        return item.page;
+    }
+
+    /**
+     * Tell whether a request failed because Graph no longer honors its link, as when its skip
+     * token is invalid or has expired
+     */
+    private static boolean isExpired(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpResponseException) {
+                int status = ((HttpResponseException) cause).getStatus();
+                return status == 400 || status == 410;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forget the checkpoints of the queries, so that the next walk starts from their first
+     * page. Call it when the caller stops on purpose before the last page.
+     */
+    public void discardCheckpoints() {
+        if (checkpoints != null) {
+            for (URI query : queries) {
+                checkpoints.remove(query.toString());
+            }
+        }
+    }
+
+    /**
+     * Record that a page has been handled: its query resumes from the next page. Once the last
+     * page of a partition is handled, the partition is skipped until every other one is complete.
+     */
+    private void commit(Page<T> page) {
+        if (checkpoints == null || page.getQuery() == null) {
+            return;
+        }
+        if (page.getNextLink() != null) {
+            checkpoints.put(page.getQuery(), page.getNextLink());
+        } else if (queries.size() > 1) {
+            checkpoints.put(page.getQuery(), COMPLETE);
+        } else {
+            checkpoints.remove(page.getQuery());
+        }
+    }
+
+    /**
+     * Stop fetching pages and discard those already fetched. The page last returned is not
+     * recorded as handled.
+     */
+    public void close() {
+        closed = true;
+        exhausted = true;
+        for (Future<?> producer : producers) {
+            producer.cancel(true);
+        }
+        queue.clear();
+    }
+
+    /**
+     * A fetched page, the end of the results when both fields are null
+     */
+    private static final class Item<T> {
+        final Page<T> page;
+        final Exception error;
+
+        Item(Page<T> page, Exception error) {
+            this.page = page;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket pacing the requests sent to a tenant.
+ *
+ * Permits accumulate at the configured rate up to one second's worth, so short bursts are
+ * allowed while the sustained rate stays under the limit. Callers that find the bucket empty
+ * reserve the next free permit and sleep outside of the lock until it is due.
+ */
+public class RateLimiter {
+
+    private final double maxPermits;
+    private final long intervalNanos;
+
+    private double storedPermits;
+    private long nextFreeNanos = System.nanoTime();
+
+    /**
+     * Create a rate limiter
+     *
+     * @param permitsPerSecond the sustained number of requests per second
+     */
+    public RateLimiter(int permitsPerSecond) {
+        this.maxPermits = permitsPerSecond;
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+        this.storedPermits = maxPermits;
+    }
+
+    /**
+     * Block until a permit is available.
+     */
+    public void acquire() {
+        acquire(1);
+    }
+
+    /**
+     * Block until a number of permits are available. More permits than a second's worth can
+     * be acquired at once, later callers then wait until they are paid back.
+     *
+     * @param permits the number of permits
+     */
+    public void acquire(int permits) {
+        long wait = reserve(permits);
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConnectorException("Interrupted while waiting for a request permit", e);
+            }
+        }
+    }
+
+    /**
+     * Reserve the next permits
+     *
+     * @param permits the number of permits
+     * @return nanoseconds to wait before the permits may be used
+     */
+    private synchronized long reserve(int permits) {
+        long now = System.nanoTime();
+        if (now > nextFreeNanos) {
+            storedPermits = Math.min(maxPermits, storedPermits + (double) (now - nextFreeNanos) / intervalNanos);
+            nextFreeNanos = now;
+        }
+        long wait = nextFreeNanos - now;
+        double fromStored = Math.min(permits, storedPermits);
+        storedPermits -= fromStored;
+        nextFreeNanos += (long) ((permits - fromStored) * intervalNanos);
+        return wait;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+/**
+ * The Graph operations a request stands for.
+ *
+ * A request takes one rate limit permit and earns retry budget per operation, so a $batch of
+ * 20 writes is paced like 20 single writes. Operations are reads or writes by what they do
+ * rather than by HTTP method: a POST to directoryObjects/getByIds is a read.
+ */
+public final class RequestCost {
+
+    /** A single read */
+    public static final RequestCost READ = new RequestCost(1, 0, false);
+
+    /** A single write */
+    public static final RequestCost WRITE = new RequestCost(0, 1, false);
+
+    private final int reads;
+    private final int writes;
+    private final boolean retry;
+
+    private RequestCost(int reads, int writes, boolean retry) {
+        this.reads = reads;
+        this.writes = writes;
+        this.retry = retry;
+    }
+
+    /**
+     * Return the cost of a single operation sent with an HTTP method, a read for GET and a
+     * write otherwise
+     *
+     * @param method the HTTP method
+     * @return the cost
+     */
+    public static RequestCost of(String method) {
+        return "GET".equals(method) ? READ : WRITE;
+    }
+
+    /**
+     * Return the cost of a number of reads
+     *
+     * @param count the number of reads
+     * @return the cost
+     */
+    public static RequestCost reads(int count) {
+        return new RequestCost(count, 0, false);
+    }
+
+    /**
+     * Return the cost of a number of writes
+     *
+     * @param count the number of writes
+     * @return the cost
+     */
+    public static RequestCost writes(int count) {
+        return new RequestCost(0, count, false);
+    }
+
+    /**
+     * Return the cost of this and other operations sent together
+     *
+     * @param other the other operations
+     * @return the combined cost
+     */
+    public RequestCost plus(RequestCost other) {
+        return new RequestCost(reads + other.reads, writes + other.writes, retry && other.retry);
+    }
+
+    /**
+     * Return the cost of sending these operations again once their retry has been paid for:
+     * they take permits again but earn no retry budget.
+     *
+     * @return the cost of the retry
+     */
+    public RequestCost asRetry() {
+        return new RequestCost(reads, writes, true);
+    }
+
+    public int getReads() {
+        return reads;
+    }
+
+    public int getWrites() {
+        return writes;
+    }
+
+    /**
+     * Return the number of operations
+     *
+     * @return reads and writes
+     */
+    public int getOperations() {
+        return reads + writes;
+    }
+
+    public boolean isRetry() {
+        return retry;
+    }
+}
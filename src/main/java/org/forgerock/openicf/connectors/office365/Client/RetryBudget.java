@@ -0,0 +1,80 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+/**
+ * Limits retries across all the requests of a tenant.
+ *
+ * Every request earns a fraction of a retry and every retry spends a whole one, so that when
+ * Graph keeps failing the connector retries at most that fraction of its traffic instead of
+ * multiplying the load. A reserve lets occasional failures be retried right away.
+ */
+public class RetryBudget {
+
+    /** Number of retries that can be banked, also the initial balance */
+    private static final double RESERVE = 100;
+
+    private final double ratio;
+    private double balance = RESERVE;
+
+    /**
+     * Create a retry budget
+     *
+     * @param ratio retries earned by each request
+     */
+    public RetryBudget(double ratio) {
+        this.ratio = ratio;
+    }
+
+    /**
+     * Record that a new request is being sent.
+     */
+    public void deposit() {
+        deposit(1);
+    }
+
+    /**
+     * Record that new requests are being sent, such as the sub-requests of a $batch.
+     *
+     * @param requests the number of requests
+     */
+    public synchronized void deposit(int requests) {
+        balance = Math.min(RESERVE, balance + requests * ratio);
+    }
+
+    /**
+     * Spend one retry, if the budget allows it
+     *
+     * @return true if the retry may proceed
+     */
+    public boolean tryWithdraw() {
+        return tryWithdraw(1);
+    }
+
+    /**
+     * Spend a number of retries at once, if the budget allows all of them
+     *
+     * @param retries the number of retries, such as the sub-requests of a retried $batch
+     * @return true if the retries may proceed
+     */
+    public synchronized boolean tryWithdraw(int retries) {
+        if (balance < retries) {
+            return false;
+        }
+        balance -= retries;
+        return true;
+    }
+}
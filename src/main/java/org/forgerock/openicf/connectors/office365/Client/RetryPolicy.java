@@ -0,0 +1,157 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import org.forgerock.http.protocol.Header;
+import org.forgerock.http.protocol.Response;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Decides whether a failed Graph request may be retried and how long to wait before doing so.
+ *
+ * Throttling (429) and unavailability (503) responses are retried for every method, since Graph
+ * did not process the request. Gateway failures (502, 504) are only retried for idempotent
+ * methods. Server hints from the {@code x-ms-retry-after-ms} and {@code Retry-After} headers
+ * are honored, otherwise the delay grows exponentially with full jitter.
+ */
+public class RetryPolicy {
+
+    /** Policy that never retries */
+    public static final RetryPolicy NONE = new RetryPolicy(0, 0, 0, 0);
+
+    private final Random random = new Random();
+
+    private final int maxRetries;
+    private final long baseDelay;
+    private final long maxDelay;
+    private final long maxRetryDuration;
+
+    /**
+     * Create a retry policy
+     *
+     * @param maxRetries maximum number of retries per request
+     * @param baseDelay initial backoff in milliseconds
+     * @param maxDelay maximum backoff in milliseconds
+     * @param maxRetryDuration maximum total time in milliseconds spent retrying a single request
+     */
+    public RetryPolicy(int maxRetries, long baseDelay, long maxDelay, long maxRetryDuration) {
+        this.maxRetries = maxRetries;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.maxRetryDuration = maxRetryDuration;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getMaxRetryDuration() {
+        return maxRetryDuration;
+    }
+
+    /**
+     * Return whether a response with the given status may be retried for the given method
+     *
+     * @param method the HTTP method of the request
+     * @param status the HTTP status code of the response
+     * @return true if the request may be sent again
+     */
+    public boolean isRetryable(String method, int status) {
+        if (status == 429 || status == 503) {
+            return true;
+        }
+        if (status == 502 || status == 504) {
+            return !"POST".equals(method);
+        }
+        return false;
+    }
+
+    /**
+     * Return whether the response is a throttling response
+     *
+     * @param status the HTTP status code of the response
+     * @return true for 429 responses
+     */
+    public boolean isThrottled(int status) {
+        return status == 429;
+    }
+
+    /**
+     * Return the delay in milliseconds before the given retry attempt
+     *
+     * @param attempt the retry attempt, starting at 0
+     * @param response the failed response
+     * @return the delay in milliseconds
+     */
+    public long getDelay(int attempt, Response response) {
+        return getDelay(attempt, getHeader(response, "x-ms-retry-after-ms"), getHeader(response, "Retry-After"));
+    }
+
+    /**
+     * Return the delay in milliseconds before the given retry attempt of a request whose
+     * response carried the given hints, such as a $batch sub-response
+     *
+     * @param attempt the retry attempt, starting at 0
+     * @param retryAfterMs the x-ms-retry-after-ms header of the failed response, or null
+     * @param retryAfter the Retry-After header of the failed response, or null
+     * @return the delay in milliseconds
+     */
+    public long getDelay(int attempt, String retryAfterMs, String retryAfter) {
+        long hint = getRetryAfter(retryAfterMs, retryAfter);
+        if (hint >= 0) {
+            // Spread clients woken by the same hint by up to 10%
+            return hint + (long) (random.nextDouble() * hint / 10);
+        }
+        long ceiling = Math.min(maxDelay, baseDelay << Math.min(attempt, 30));
+        return (long) (random.nextDouble() * ceiling);
+    }
+
+    /**
+     * Return the server requested delay in milliseconds, or -1 if there is none
+     */
+    static long getRetryAfter(String retryAfterMs, String retryAfter) {
+        if (retryAfterMs != null) {
+            try {
+                return Long.parseLong(retryAfterMs.trim());
+            } catch (NumberFormatException e) {
+                // fall through to Retry-After
+            }
+        }
+        if (retryAfter != null) {
+            String value = retryAfter.trim();
+            try {
+                return Long.parseLong(value) * 1000;
+            } catch (NumberFormatException e) {
+                try {
+                    SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+                    return Math.max(0, format.parse(value).getTime() - System.currentTimeMillis());
+                } catch (ParseException pe) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static String getHeader(Response response, String name) {
+        Header header = response.getHeaders().get(name);
+        return header == null ? null : header.getFirstValue();
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.forgerock.json.JsonValue;
+import org.forgerock.openicf.connectors.office365.O365Configuration;
+import org.forgerock.openicf.connectors.office365.client.objects.ObjectClassSchema;
+import org.forgerock.openicf.connectors.office365.client.objects.SchemaAttribute;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Discovers the schema of users and groups from the Graph $metadata document and the
+ * directory extensions registered in the tenant.
+ *
+ * Properties the connector does not already describe are added to its built-in schema as
+ * readable attributes that are not returned by default, and that are only createable and
+ * updateable if the metadata does not mark them read-only. Discovery is expensive, so its result
+ * is kept in memory for the JVM and in a file keyed by tenant and Graph version, which is
+ * trusted for {@link #MAX_AGE} milliseconds. After a failed discovery the built-in schema is
+ * used, and discovery is tried again after {@link #RETRY_DELAY} milliseconds.
+ *
+ * Unless configured otherwise, the cache files are kept in {@link #DEFAULT_CACHE_DIRECTORY},
+ * which is only accessible to the user running the connector.
+ */
+public final class SchemaDiscovery {
+    private static final Log logger = Log.getLog(SchemaDiscovery.class);
+
+    /** How long a cached schema file is trusted, in milliseconds */
+    public static final long MAX_AGE = 24L * 60 * 60 * 1000;
+
+    /** How long the built-in schema is used after a failed discovery before trying again, in milliseconds */
+    public static final long RETRY_DELAY = 5L * 60 * 1000;
+
+    /** Directory of the cache files when the configuration does not name one */
+    public static final File DEFAULT_CACHE_DIRECTORY =
+            new File(System.getProperty("user.home"), ".openicf-office365" + File.separator + "schema");
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /* Prototype values of the attributes, by EDM type. Other types, such as complex types, are skipped */
+    private static final Map<String, Object> PROTOTYPES = new HashMap<String, Object>();
+    static {
+        for (String type : new String[] {"Edm.String", "Edm.Guid", "Edm.Date", "Edm.DateTimeOffset",
+                "Edm.TimeOfDay", "Edm.Duration"}) {
+            PROTOTYPES.put(type, "");
+        }
+        PROTOTYPES.put("Edm.Boolean", Boolean.FALSE);
+        PROTOTYPES.put("Edm.Int32", 0);
+        PROTOTYPES.put("Edm.Int64", 0L);
+        PROTOTYPES.put("Edm.Double", 0.0d);
+    }
+
+    /* EDM types of the extension property data types */
+    private static final Map<String, String> EXTENSION_TYPES = new HashMap<String, String>();
+    static {
+        EXTENSION_TYPES.put("String", "Edm.String");
+        EXTENSION_TYPES.put("Boolean", "Edm.Boolean");
+        EXTENSION_TYPES.put("Integer", "Edm.Int32");
+        EXTENSION_TYPES.put("LargeInteger", "Edm.Int64");
+        EXTENSION_TYPES.put("DateTime", "Edm.DateTimeOffset");
+        EXTENSION_TYPES.put("Binary", "Edm.Binary");
+    }
+
+    /* Discovered schemas, by tenant and Graph version */
+    private static final ConcurrentMap<String, Map<ObjectClass, ObjectClassSchema>> schemas =
+            new ConcurrentHashMap<String, Map<ObjectClass, ObjectClassSchema>>();
+
+    /* Locks serializing the discoveries of each tenant and Graph version */
+    private static final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+    /* Times of the last failed discoveries, by tenant and Graph version */
+    private static final ConcurrentMap<String, Long> failures = new ConcurrentHashMap<String, Long>();
+
+    /* The built-in schemas, used when discovery fails */
+    private static final Map<ObjectClass, ObjectClassSchema> BUILT_IN;
+    static {
+        Map<ObjectClass, ObjectClassSchema> builtIn = new HashMap<ObjectClass, ObjectClassSchema>();
+        builtIn.put(ObjectClass.ACCOUNT, ObjectClassSchema.ACCOUNT);
+        builtIn.put(ObjectClass.GROUP, ObjectClassSchema.GROUP);
+        BUILT_IN = Collections.unmodifiableMap(builtIn);
+    }
+
+    private SchemaDiscovery() {}
+
+    /**
+     * Return the discovered schema of the users and groups of a tenant, discovering it on
+     * first use
+     *
+     * @param configuration the configuration naming the tenant
+     * @param client client used if the schema is neither in memory nor in a fresh cache file
+     * @return the schemas by object class
+     */
+    public static Map<ObjectClass, ObjectClassSchema> getSchemas(O365Configuration configuration,
+            Office365Client client) {
+        String key = configuration.getTenant() + "-" + getVersion(configuration);
+        Map<ObjectClass, ObjectClassSchema> discovered = schemas.get(key);
+        if (discovered != null) {
+            return discovered;
+        }
+        // Only the callers of the same tenant and version wait for the download of $metadata
+        Object lock = locks.get(key);
+        if (lock == null) {
+            Object created = new Object();
+            lock = locks.putIfAbsent(key, created);
+            if (lock == null) {
+                lock = created;
+            }
+        }
+        synchronized (lock) {
+            discovered = schemas.get(key);
+            if (discovered != null) {
+                return discovered;
+            }
+            Long failed = failures.get(key);
+            if (failed != null && System.currentTimeMillis() - failed < RETRY_DELAY) {
+                return BUILT_IN;
+            }
+            File file = getCacheFile(configuration, key);
+            Map<String, List<Map<String, Object>>> properties = readCache(file);
+            if (properties == null) {
+                try {
+                    properties = discover(client);
+                    writeCache(file, properties);
+                } catch (RuntimeException e) {
+                    // Use the built-in schema, and try again once the retry delay has passed
+                    logger.warn(e, "Schema discovery failed for {0}, using the built-in schema", key);
+                    failures.put(key, System.currentTimeMillis());
+                    return BUILT_IN;
+                }
+            }
+            failures.remove(key);
+            discovered = new HashMap<ObjectClass, ObjectClassSchema>();
+            discovered.put(ObjectClass.ACCOUNT, merge(ObjectClass.ACCOUNT, ObjectClassSchema.ACCOUNT,
+                    properties.get("user")));
+            discovered.put(ObjectClass.GROUP, merge(ObjectClass.GROUP, ObjectClassSchema.GROUP,
+                    properties.get("group")));
+            discovered = Collections.unmodifiableMap(discovered);
+            schemas.put(key, discovered);
+            return discovered;
+        }
+    }
+
+    /**
+     * Return the Graph version of the service root, such as v1.0
+     */
+    private static String getVersion(O365Configuration configuration) {
+        String path = URI.create(configuration.getGraphEndpoint()).getPath();
+        String[] segments = path.split("/");
+        return segments.length == 0 ? "" : segments[segments.length - 1];
+    }
+
+    private static File getCacheFile(O365Configuration configuration, String key) {
+        File directory = configuration.getSchemaCacheDirectory() != null
+                ? new File(configuration.getSchemaCacheDirectory())
+                : DEFAULT_CACHE_DIRECTORY;
+        return new File(directory, "o365-schema-" + key.replaceAll("[^A-Za-z0-9.-]", "_") + ".json");
+    }
+
+    /**
+     * Read the discovered properties from $metadata and the tenant's extension properties
+     *
+     * @return the descriptions of the properties, by entity type
+     */
+    private static Map<String, List<Map<String, Object>>> discover(Office365Client client) {
+        long start = System.currentTimeMillis();
+        Map<String, List<MetadataReader.Property>> metadata = client.getMetadata(new MetadataReader());
+        Map<String, List<Map<String, Object>>> properties = new HashMap<String, List<Map<String, Object>>>();
+        properties.put("user", describe(metadata.get("user")));
+        properties.put("group", describe(metadata.get("group")));
+        for (JsonValue extension : client.getExtensionProperties()) {
+            String type = EXTENSION_TYPES.get(extension.get("dataType").asString());
+            boolean multivalued = extension.get("isMultiValued").isNotNull()
+                    && extension.get("isMultiValued").asBoolean();
+            // Extensions synchronized from on-premises directories are written there, not in Graph
+            boolean writable = extension.get("isSyncedFromOnPremises").isNull()
+                    || !extension.get("isSyncedFromOnPremises").asBoolean();
+            for (JsonValue target : extension.get("targetObjects")) {
+                List<Map<String, Object>> described = properties.get(target.asString().toLowerCase());
+                if (described != null && type != null) {
+                    described.add(describe(extension.get("name").asString(), type, multivalued, writable, writable));
+                }
+            }
+        }
+        logger.info("Discovered the schema in {0}ms", System.currentTimeMillis() - start);
+        return properties;
+    }
+
+    private static List<Map<String, Object>> describe(List<MetadataReader.Property> entityType) {
+        List<Map<String, Object>> described = new ArrayList<Map<String, Object>>();
+        if (entityType != null) {
+            for (MetadataReader.Property property : entityType) {
+                described.add(describe(property.name, property.type, property.collection,
+                        property.createable, property.updateable));
+            }
+        }
+        return described;
+    }
+
+    private static Map<String, Object> describe(String name, String type, boolean multivalued,
+            boolean createable, boolean updateable) {
+        Map<String, Object> described = new LinkedHashMap<String, Object>();
+        described.put("name", name);
+        described.put("type", type);
+        described.put("multivalued", multivalued);
+        described.put("createable", createable);
+        described.put("updateable", updateable);
+        return described;
+    }
+
+    /**
+     * Add the discovered properties the built-in schema does not describe
+     *
+     * @param objectClass the object class
+     * @param builtIn the built-in schema
+     * @param discovered the discovered properties, or null
+     * @return the merged schema
+     */
+    private static ObjectClassSchema merge(ObjectClass objectClass, ObjectClassSchema builtIn,
+            List<Map<String, Object>> discovered) {
+        if (discovered == null || discovered.isEmpty()) {
+            return builtIn;
+        }
+        List<SchemaAttribute> attributes = new ArrayList<SchemaAttribute>(builtIn.getAttributes());
+        Set<String> additional = new HashSet<String>();
+        for (Map<String, Object> property : discovered) {
+            String name = (String) property.get("name");
+            Object prototype = PROTOTYPES.get(property.get("type"));
+            if (prototype == null || builtIn.getAttribute(name) != null || !additional.add(name)) {
+                continue;
+            }
+            // Cache files written before the flags were recorded describe writable properties
+            attributes.add(new SchemaAttribute(name, prototype)
+                    .withCreatable(!Boolean.FALSE.equals(property.get("createable")))
+                    .withUpdateable(!Boolean.FALSE.equals(property.get("updateable")))
+                    .withReadable(true)
+                    .withMultivalued(Boolean.TRUE.equals(property.get("multivalued"))));
+        }
+        return new ObjectClassSchema(objectClass, attributes, additional);
+    }
+
+    private static Map<String, List<Map<String, Object>>> readCache(File file) {
+        if (!file.isFile() || System.currentTimeMillis() - file.lastModified() > MAX_AGE) {
+            return null;
+        }
+        try {
+            return mapper.readValue(file, new TypeReference<Map<String, List<Map<String, Object>>>>() {});
+        } catch (IOException e) {
+            logger.warn(e, "Ignoring unreadable schema cache {0}", file);
+            return null;
+        }
+    }
+
+    private static void writeCache(File file, Map<String, List<Map<String, Object>>> properties) {
+        try {
+            JsonFiles.write(file, properties);
+        } catch (IOException e) {
+            // The cache only saves time, the schema is still usable
+            logger.warn(e, "Unable to write schema cache {0}", file);
+        }
+    }
+}
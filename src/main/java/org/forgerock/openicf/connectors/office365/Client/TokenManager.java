@@ -0,0 +1,254 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.forgerock.json.JsonValue;
+import org.forgerock.openicf.connectors.office365.O365Configuration;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.security.SecurityUtil;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the OAuth2 tokens of one tenant and client.
+ *
+ * Only one refresh is ever in flight: concurrent callers finding an expired token wait for
+ * the refresh started by the first one, and share its outcome, its failure included. Once a
+ * token is obtained, its renewal is scheduled in the background ahead of expiry so that
+ * request threads normally never wait on the token endpoint. Token requests go through the
+ * tenant's shared {@link ConnectionPool}, but do not count against its Graph rate limits.
+ *
+ * The configuration only seeds the tokens: refreshed ones are kept here and never written back
+ * to it, so that the credentials configured for a connector keep identifying its manager.
+ */
+public final class TokenManager {
+    private static final Log logger = Log.getLog(TokenManager.class);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /** Seconds before expiry at which a token is no longer handed out */
+    private static final long EXPIRY_MARGIN = 60;
+
+    private final O365Configuration configuration;
+    private final HttpClient httpClient;
+    private final URI tokenUri;
+    private final Metrics metrics;
+
+    private final Object refreshLock = new Object();
+    private volatile Token token;
+    /** Failure of the last refresh and when it happened, guarded by refreshLock */
+    private ConnectorException failure;
+    private long failedAt;
+    private ScheduledFuture<?> renewal;
+    private volatile boolean closed = false;
+
+    TokenManager(O365Configuration configuration, ConnectionPool pool) {
+        this.configuration = configuration;
+        this.httpClient = new HttpClient(pool, new PassthroughSigner(), false);
+        this.tokenUri = URI.create(configuration.getTokenEndpoint());
+        this.metrics = pool.getMetrics();
+        this.token = new Token(configuration.getAccessToken(), configuration.getRefreshToken(),
+                configuration.getTokenExpiration());
+        scheduleRenewal(token);
+    }
+
+    /**
+     * Return a valid access token, refreshing it first if it has expired.
+     *
+     * @return the access token
+     */
+    public String getAccessToken() {
+        Token current = token;
+        if (current.isValid()) {
+            return current.accessToken;
+        }
+        return refresh(current, false).accessToken;
+    }
+
+    /**
+     * Refresh the token unless another thread already replaced the stale one.
+     *
+     * @param stale the token seen by the caller
+     * @param force refresh even if the stale token is still valid
+     * @return a valid token
+     */
+    private Token refresh(Token stale, boolean force) {
+        long requested = System.nanoTime();
+        synchronized (refreshLock) {
+            Token current = token;
+            if (current.isValid() && (current != stale || !force)) {
+                // Another caller refreshed while we were waiting
+                return current;
+            }
+            if (failure != null && failedAt - requested >= 0) {
+                // The refresh we were waiting for failed, it is not repeated for every waiter
+                throw failure;
+            }
+            Token fresh;
+            try {
+                fresh = requestToken(current.refreshToken);
+            } catch (ConnectorException e) {
+                failure = e;
+                failedAt = System.nanoTime();
+                throw e;
+            }
+            failure = null;
+            token = fresh;
+            scheduleRenewal(fresh);
+            return fresh;
+        }
+    }
+
+    private Token requestToken(String refreshToken) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            String body = "grant_type=refresh_token"
+                    + "&refresh_token=" + encode(refreshToken)
+                    + "&client_secret=" + encode(SecurityUtil.decrypt(configuration.getClientSecret()))
+                    + "&client_id=" + encode(configuration.getClientId());
+            JsonValue json = httpClient.sendPostRequest(tokenUri, "application/x-www-form-urlencoded", body);
+            OAuthRefreshResponse response = mapper.readValue(json.toString(), OAuthRefreshResponse.class);
+            Long expiration = response.expiresOn != null
+                    ? response.expiresOn
+                    : System.currentTimeMillis() / 1000 + response.expiresIn;
+            failed = false;
+            return new Token(response.accessToken,
+                    response.refreshToken != null ? response.refreshToken : refreshToken,
+                    expiration);
+        } catch (Exception e) {
+            logger.error(e, "Failed to refresh OAuth2 token for client {0}", configuration.getClientId());
+            throw new ConnectorException("Failed to refresh OAuth2 token", e);
+        } finally {
+            metrics.recordTokenRefresh(start, failed);
+        }
+    }
+
+    /**
+     * Return the key of the manager of a configuration's credentials. Configurations share a
+     * manager only if they authenticate the same way, so rotating the client secret or the
+     * refresh token in the configuration yields a new manager. Secrets only enter the key
+     * through a digest.
+     *
+     * @param configuration the connector configuration
+     * @return the key
+     */
+    static String getKey(O365Configuration configuration) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String value : new String[] {
+                    configuration.getTokenEndpoint(),
+                    configuration.getClientSecret() == null
+                            ? null
+                            : SecurityUtil.decrypt(configuration.getClientSecret()),
+                    configuration.getRefreshToken() }) {
+                digest.update(String.valueOf(value).getBytes("UTF-8"));
+                digest.update((byte) 0);
+            }
+            StringBuilder key = new StringBuilder(configuration.getClientId()).append('|');
+            for (byte b : digest.digest()) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (GeneralSecurityException e) {
+            throw new ConnectorException("Unable to digest the OAuth2 credentials", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new ConnectorException("Unable to digest the OAuth2 credentials", e);
+        }
+    }
+
+    private static String encode(String value) throws UnsupportedEncodingException {
+        return URLEncoder.encode(value == null ? "" : value, "UTF-8");
+    }
+
+    private void scheduleRenewal(final Token scheduled) {
+        if (scheduled.expiration == null) {
+            return;
+        }
+        long delay = scheduled.expiration - configuration.getTokenRenewalSkew()
+                - System.currentTimeMillis() / 1000;
+        synchronized (refreshLock) {
+            if (closed) {
+                return;
+            }
+            if (renewal != null) {
+                renewal.cancel(false);
+            }
+            final Runnable renew = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (!closed) {
+                            refresh(scheduled, true);
+                        }
+                    } catch (Exception e) {
+                        // Request threads fall back to refreshing on expiry
+                        logger.warn(e, "Background OAuth2 token renewal failed for client {0}",
+                                configuration.getClientId());
+                    }
+                }
+            };
+            renewal = BackgroundExecutors.scheduler().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    // The token request may be retried, keep it off the scheduler's threads
+                    BackgroundExecutors.renewer().execute(renew);
+                }
+            }, Math.max(0, delay), TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stop background renewal.
+     */
+    void close() {
+        synchronized (refreshLock) {
+            closed = true;
+            if (renewal != null) {
+                renewal.cancel(false);
+                renewal = null;
+            }
+        }
+    }
+
+    /**
+     * Immutable snapshot of the current tokens
+     */
+    private static final class Token {
+        final String accessToken;
+        final String refreshToken;
+        final Long expiration;
+
+        Token(String accessToken, String refreshToken, Long expiration) {
+            this.accessToken = accessToken;
+            this.refreshToken = refreshToken;
+            this.expiration = expiration;
+        }
+
+        boolean isValid() {
+            return accessToken != null && expiration != null
+                    && expiration - EXPIRY_MARGIN > System.currentTimeMillis() / 1000;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces single write requests issued concurrently by the connector instances of a tenant
+ * into JSON $batch requests.
+ *
+ * A submitted request waits up to the linger time for others to join it. Whichever caller
+ * fills a batch, or first reaches the end of its linger time, sends the queued requests
+ * through its own client and hands each caller its own sub-response. The batcher holds no
+ * client, so a batch never goes through the client of a connector that has been disposed.
+ */
+public class WriteBatcher {
+
+    private final long linger;
+
+    private List<Pending> queue = new ArrayList<Pending>();
+    private boolean closed = false;
+
+    WriteBatcher(long linger) {
+        this.linger = linger;
+    }
+
+    /**
+     * Send a request as part of the next batch and wait for its outcome
+     *
+     * @param client the client of the caller, sending the batch if the caller flushes it
+     * @param request the sub-request
+     * @return its response
+     */
+    BatchResponse submit(BatchSender client, BatchRequest request) {
+        Pending pending = new Pending(request);
+        List<Pending> batch = null;
+        synchronized (this) {
+            if (closed) {
+                throw new ConnectorException("Write batcher is closed");
+            }
+            queue.add(pending);
+            if (queue.size() >= Office365Client.MAX_BATCH_SIZE) {
+                batch = drain();
+            }
+        }
+        try {
+            if (batch == null && !pending.done.await(linger, TimeUnit.MILLISECONDS)) {
+                synchronized (this) {
+                    if (queue.contains(pending)) {
+                        batch = drain();
+                    }
+                }
+            }
+            if (batch != null) {
+                send(client, batch);
+            }
+            pending.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorException("Interrupted while waiting for batch", e);
+        }
+        if (pending.error != null) {
+            throw new ConnectorException("Batch request failed", pending.error);
+        }
+        return pending.response;
+    }
+
+    private List<Pending> drain() {
+        List<Pending> batch = queue;
+        queue = new ArrayList<Pending>();
+        return batch;
+    }
+
+    /**
+     * Stop accepting requests and fail those still queued
+     */
+    void close() {
+        List<Pending> batch;
+        synchronized (this) {
+            closed = true;
+            batch = drain();
+        }
+        for (Pending pending : batch) {
+            pending.error = new ConnectorException("Write batcher is closed");
+            pending.done.countDown();
+        }
+    }
+
+    private void send(BatchSender client, List<Pending> batch) {
+        List<BatchRequest> requests = new ArrayList<BatchRequest>(batch.size());
+        for (Pending pending : batch) {
+            requests.add(pending.request);
+        }
+        List<BatchResponse> responses = Collections.emptyList();
+        RuntimeException error = null;
+        try {
+            responses = client.executeBatch(requests);
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Pending pending = batch.get(i);
+            if (error != null) {
+                pending.error = error;
+            } else {
+                pending.response = responses.get(i);
+            }
+            pending.done.countDown();
+        }
+    }
+
+    /**
+     * A request waiting for its batch to complete
+     */
+    private static final class Pending {
+        final BatchRequest request;
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile BatchResponse response;
+        volatile RuntimeException error;
+
+        Pending(BatchRequest request) {
+            this.request = request;
+        }
+    }
+}
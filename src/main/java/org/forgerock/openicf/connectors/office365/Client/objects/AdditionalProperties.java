@@ -0,0 +1,80 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client.objects;
+
+import org.identityconnectors.framework.common.objects.Attribute;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Properties of an object that have no field in its class, such as directory extensions found
+ * by schema discovery. Only the discovery types carry them.
+ */
+final class AdditionalProperties {
+
+    private Map<String, Object> properties;
+
+    AdditionalProperties() {}
+
+    AdditionalProperties(Map<String, Object> properties) {
+        this.properties = new LinkedHashMap<String, Object>(properties);
+    }
+
+    /**
+     * Set a property. OData annotations and other names containing '@' or '.' are not
+     * properties and are dropped.
+     *
+     * @param name the property name
+     * @param value the property value, a List for multi-valued properties
+     */
+    void set(String name, Object value) {
+        if (name.indexOf('@') >= 0 || name.indexOf('.') >= 0) {
+            return;
+        }
+        if (properties == null) {
+            properties = new LinkedHashMap<String, Object>();
+        }
+        properties.put(name, value);
+    }
+
+    Map<String, Object> get() {
+        return properties == null
+                ? Collections.<String, Object>emptyMap()
+                : properties;
+    }
+
+    /**
+     * Add the properties to a Set of Attributes. Having no schema of their own, they are only
+     * added when requested by name.
+     *
+     * @param attrs the Set to add to
+     * @param attributesToGet names of the requested Attributes, or null for the default ones
+     */
+    void addAttributes(Set<Attribute> attrs, Set<String> attributesToGet) {
+        if (properties == null || attributesToGet == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            Object value = property.getValue();
+            if (value != null && attributesToGet.contains(property.getKey())) {
+                O365Object.addAttribute(attrs, attributesToGet, property.getKey(), value);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client.objects;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.identityconnectors.framework.common.exceptions.InvalidAttributeValueException;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Binds the Attributes of an object class to the fields of its Graph bean.
+ *
+ * The table is built once per class from the bean's {@code @JsonProperty} fields of simple or
+ * list type, each bound to the Attribute of the same name. Reading and writing Attributes is
+ * then a map lookup per Attribute instead of a chain of name comparisons.
+ */
+final class AttributeBinding {
+
+    /* Fields written to Attributes, in declaration order */
+    private final Map<String, Field> fields = new LinkedHashMap<String, Field>();
+
+    /* Fields read from Attributes, including the aliases such as __UID__ and __NAME__ */
+    private final Map<String, Field> inbound = new HashMap<String, Field>();
+
+    /**
+     * Build the binding table of a bean class
+     *
+     * @param type the bean class
+     * @param aliases pairs of additional Attribute name and field name read from Attributes,
+     *                such as {@code Uid.NAME, "id"}
+     */
+    AttributeBinding(Class<?> type, String... aliases) {
+        for (Field field : type.getFields()) {
+            Class<?> fieldType = field.getType();
+            if (field.isAnnotationPresent(JsonProperty.class)
+                    && (fieldType == String.class || fieldType == Boolean.class || fieldType == List.class)) {
+                fields.put(field.getName(), field);
+            }
+        }
+        inbound.putAll(fields);
+        for (int i = 0; i + 1 < aliases.length; i += 2) {
+            inbound.put(aliases[i], fields.get(aliases[i + 1]));
+        }
+    }
+
+    /**
+     * Set the fields of a bean from the Attributes bound to them, ignoring the others
+     *
+     * @param target the bean
+     * @param attrs the Attributes
+     */
+    void read(Object target, Set<Attribute> attrs) {
+        for (Attribute attr : attrs) {
+            Field field = inbound.get(attr.getName());
+            if (field == null) {
+                continue;
+            }
+            List<Object> values = attr.getValue();
+            Object value;
+            if (field.getType() == List.class) {
+                value = values == null ? new ArrayList<Object>() : new ArrayList<Object>(values);
+            } else {
+                value = values == null || values.isEmpty() ? null : values.get(0);
+            }
+            try {
+                field.set(target, value);
+            } catch (IllegalArgumentException e) {
+                throw new InvalidAttributeValueException("Invalid value for attribute " + attr.getName(), e);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Build the Attributes of the fields of a bean. Fields without a value are left out unless
+     * explicitly requested.
+     *
+     * @param source the bean
+     * @param attributesToGet names of the Attributes to build, or null for all of them
+     * @param extra number of Attributes the caller adds to the returned Set
+     * @return the Attributes, in a Set sized for them
+     */
+    Set<Attribute> write(Object source, Set<String> attributesToGet, int extra) {
+        int expected = (attributesToGet == null ? fields.size() : Math.min(attributesToGet.size(), fields.size()))
+                + extra;
+        Set<Attribute> attrs = new HashSet<Attribute>(expected * 4 / 3 + 1);
+        if (attributesToGet == null) {
+            for (Map.Entry<String, Field> entry : fields.entrySet()) {
+                Object value = get(entry.getValue(), source);
+                if (value != null) {
+                    attrs.add(build(entry.getKey(), value));
+                }
+            }
+        } else {
+            for (String name : attributesToGet) {
+                Field field = fields.get(name);
+                if (field != null) {
+                    attrs.add(build(name, get(field, source)));
+                }
+            }
+        }
+        return attrs;
+    }
+
+    private static Object get(Field field, Object source) {
+        try {
+            return field.get(source);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Attribute build(String name, Object value) {
+        return value instanceof Collection
+                ? AttributeBuilder.build(name, (Collection<?>) value)
+                : AttributeBuilder.build(name, value);
+    }
+}
@@ -19,12 +19,11 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.identityconnectors.framework.common.objects.Attribute;
-import org.identityconnectors.framework.common.objects.AttributeBuilder;
 import org.identityconnectors.framework.common.objects.Name;
 import org.identityconnectors.framework.common.objects.Uid;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -83,6 +82,9 @@ import java.util.Set;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class CreateUser extends O365Object {
 
+    private static final AttributeBinding BINDING = new AttributeBinding(CreateUser.class,
+            Uid.NAME, "id", Name.NAME, "userPrincipalName");
+
     @JsonProperty
     public Boolean accountEnabled;
 
@@ -131,7 +133,7 @@ public class CreateUser extends O365Object {
     @JsonProperty
     public String mailNickname;
 
-    @JsonProperty("mobile")
+    @JsonProperty
     public String mobilePhone;
 
     @JsonProperty
@@ -192,156 +194,66 @@ public class CreateUser extends O365Object {
      */
     public CreateUser(Set<Attribute> attrs) {
         super(attrs);
-        for (Attribute attr : attrs) {
-            if (attr.getName().equals("accountEnabled")) {
-                accountEnabled = (Boolean) attr.getValue().get(0);
-            } else if (attr.getName().equals("city")) {
-                city = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("companyName")) {
-                companyName = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("country")) {
-                country = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("creationType")) {
-                creationType = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("department")) {
-                department = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("dirSyncEnabled")) {
-                dirSyncEnabled = (Boolean) attr.getValue().get(0);
-            } else if (attr.getName().equals("displayName")) {
-                displayName = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("facsimileTelephoneNumber")) {
-                facsimileTelephoneNumber = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("givenName")) {
-                givenName = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals(Uid.NAME)) {
-                id = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("isCompromised")) {
-                isCompromised = (Boolean) attr.getValue().get(0);
-            } else if (attr.getName().equals("jobTitle")) {
-                jobTitle = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("lastDirSyncTime")) {
-                lastDirSyncTime = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("mail")) {
-                mail = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("mailNickname")) {
-                mailNickname = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("mobilePhone")) {
-                mobilePhone = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("onPremisesSecurityIdentifier")) {
-                onPremisesSecurityIdentifier = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("passwordPolicies")) {
-                passwordPolicies = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("physicalDeliveryOfficeName")) {
-                physicalDeliveryOfficeName = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("postalCode")) {
-                postalCode = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("preferredLanguage")) {
-                preferredLanguage = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("refreshTokensValidFromDateTime")) {
-                refreshTokensValidFromDateTime = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("sipProxyAddress")) {
-                sipProxyAddress = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("state")) {
-                state = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("streetAddress")) {
-                streetAddress = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("surname")) {
-                surname = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("telephoneNumber")) {
-                telephoneNumber = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("thumbnailPhoto")) {
-                thumbnailPhoto = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("usageLocation")) {
-                usageLocation = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals(Name.NAME)) {
-                userPrincipalName = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("userType")) {
-                userType = (String) attr.getValue().get(0);
-            }
-        }
+        BINDING.read(this, attrs);
         passwordProfile = new PasswordProfile(attrs);
     }
 
-    @JsonIgnore
-    @Override
-    public List<SchemaAttribute> getSchemaAttributes() {
+    /** Properties of users, shared by every instance */
+    static final List<SchemaAttribute> SCHEMA;
+    static {
         final Boolean BOOL = true;
         final String STRING = "";
 
-        return new ArrayList<SchemaAttribute>() {{
-            add(new SchemaAttribute("accountEnabled", BOOL).setRequired(true));
-            add(new SchemaAttribute("city", STRING));
-            add(new SchemaAttribute("companyName", STRING));
-            add(new SchemaAttribute("country", STRING));
-            add(new SchemaAttribute("creationType", STRING));
-            add(new SchemaAttribute("department", STRING));
-            add(new SchemaAttribute("dirSyncEnabled", BOOL));
-            add(new SchemaAttribute("displayName", STRING).setRequired(true).setReturned(true).setReadable(true));
-            add(new SchemaAttribute("facsimileTelephoneNumber", STRING));
-            add(new SchemaAttribute("givenName", STRING).setReturned(true).setReadable(true));
-            add(new SchemaAttribute("id", STRING).setReturned(true).setReadable(true));
-            add(new SchemaAttribute("isCompromised", BOOL));
-            add(new SchemaAttribute("jobTitle", STRING).setReturned(true).setReadable(true));
-            add(new SchemaAttribute("lastDirSyncTime", STRING));
-            add(new SchemaAttribute("mail", STRING).setReturned(true).setReadable(true));
-            add(new SchemaAttribute("mailNickname", STRING));
-            add(new SchemaAttribute("mobilePhone", STRING).setReturned(true).setReadable(true));
-            add(new SchemaAttribute("onPremisesSecurityIdentifier", STRING));
-            add(new SchemaAttribute("passwordPolicies", STRING));
-            addAll(passwordProfile.getSchemaAttributes());
-            add(new SchemaAttribute("physicalDeliveryOfficeName", STRING));
-            add(new SchemaAttribute("postalCode", STRING));
-            add(new SchemaAttribute("preferredLanguage", STRING).setReturned(true).setReadable(true));
-            add(new SchemaAttribute("refreshTokensValidFromDateTime", STRING));
-            add(new SchemaAttribute("sipProxyAddress", STRING));
-            add(new SchemaAttribute("state", STRING));
-            add(new SchemaAttribute("streetAddress", STRING));
-            add(new SchemaAttribute("surname", STRING).setReturned(true).setReadable(true));
-            add(new SchemaAttribute("telephoneNumber", STRING));
-            add(new SchemaAttribute("thumbnailPhoto", STRING));
-            add(new SchemaAttribute("usageLocation", STRING));
-            add(new SchemaAttribute("userPrincipalName", STRING)
-                    .setRequired(true).setReturned(true).setReadable(true));
-            add(new SchemaAttribute("userType", STRING));
-        }};
+        List<SchemaAttribute> attrs = new ArrayList<SchemaAttribute>();
+        attrs.add(new SchemaAttribute("accountEnabled", BOOL).withRequired(true));
+        attrs.add(new SchemaAttribute("city", STRING));
+        attrs.add(new SchemaAttribute("companyName", STRING));
+        attrs.add(new SchemaAttribute("country", STRING));
+        attrs.add(new SchemaAttribute("creationType", STRING));
+        attrs.add(new SchemaAttribute("department", STRING));
+        attrs.add(new SchemaAttribute("dirSyncEnabled", BOOL).withUpdateable(false).withSelectable(false));
+        attrs.add(new SchemaAttribute("displayName", STRING).withRequired(true).withReturned(true).withReadable(true));
+        attrs.add(new SchemaAttribute("facsimileTelephoneNumber", STRING).withSelectable(false));
+        attrs.add(new SchemaAttribute("givenName", STRING).withReturned(true).withReadable(true));
+        attrs.add(new SchemaAttribute("id", STRING).withReturned(true).withReadable(true).withUpdateable(false));
+        attrs.add(new SchemaAttribute("isCompromised", BOOL).withSelectable(false));
+        attrs.add(new SchemaAttribute("jobTitle", STRING).withReturned(true).withReadable(true));
+        attrs.add(new SchemaAttribute("lastDirSyncTime", STRING).withUpdateable(false).withSelectable(false));
+        attrs.add(new SchemaAttribute("mail", STRING).withReturned(true).withReadable(true));
+        attrs.add(new SchemaAttribute("mailNickname", STRING));
+        attrs.add(new SchemaAttribute("mobilePhone", STRING).withReturned(true).withReadable(true));
+        attrs.add(new SchemaAttribute("onPremisesSecurityIdentifier", STRING));
+        attrs.add(new SchemaAttribute("passwordPolicies", STRING));
+        attrs.addAll(PasswordProfile.SCHEMA);
+        attrs.add(new SchemaAttribute("physicalDeliveryOfficeName", STRING).withSelectable(false));
+        attrs.add(new SchemaAttribute("postalCode", STRING));
+        attrs.add(new SchemaAttribute("preferredLanguage", STRING).withReturned(true).withReadable(true));
+        attrs.add(new SchemaAttribute("refreshTokensValidFromDateTime", STRING).withSelectable(false));
+        attrs.add(new SchemaAttribute("sipProxyAddress", STRING).withSelectable(false));
+        attrs.add(new SchemaAttribute("state", STRING));
+        attrs.add(new SchemaAttribute("streetAddress", STRING));
+        attrs.add(new SchemaAttribute("surname", STRING).withReturned(true).withReadable(true));
+        attrs.add(new SchemaAttribute("telephoneNumber", STRING).withSelectable(false));
+        attrs.add(new SchemaAttribute("thumbnailPhoto", STRING).withSelectable(false));
+        attrs.add(new SchemaAttribute("usageLocation", STRING));
+        attrs.add(new SchemaAttribute("userPrincipalName", STRING)
+                .withRequired(true).withReturned(true).withReadable(true));
+        attrs.add(new SchemaAttribute("userType", STRING));
+        SCHEMA = Collections.unmodifiableList(attrs);
+    }
+
+    @JsonIgnore
+    @Override
+    public List<SchemaAttribute> getSchemaAttributes() {
+        return SCHEMA;
     }
 
     @Override
-    public Set<Attribute> toAttributes() {
-        Set<Attribute> attrs = new HashSet<Attribute>();
-        attrs.add(AttributeBuilder.build("accountEnabled", accountEnabled));
-        attrs.add(AttributeBuilder.build("city", city));
-        attrs.add(AttributeBuilder.build("companyName", companyName));
-        attrs.add(AttributeBuilder.build("country", country));
-        attrs.add(AttributeBuilder.build("creationType", creationType));
-        attrs.add(AttributeBuilder.build("department", department));
-        attrs.add(AttributeBuilder.build("dirSyncEnabled", dirSyncEnabled));
-        attrs.add(AttributeBuilder.build("displayName", displayName));
-        attrs.add(AttributeBuilder.build("facsimileTelephoneNumber", facsimileTelephoneNumber));
-        attrs.add(AttributeBuilder.build("givenName", givenName));
-        attrs.add(AttributeBuilder.build("id", id));
-        attrs.add(AttributeBuilder.build("isCompromised", isCompromised));
-        attrs.add(AttributeBuilder.build("jobTitle", jobTitle));
-        attrs.add(AttributeBuilder.build("lastDirSyncTime", lastDirSyncTime));
-        attrs.add(AttributeBuilder.build("mail", mail));
-        attrs.add(AttributeBuilder.build("mailNickname", mailNickname));
-        attrs.add(AttributeBuilder.build("mobilePhone", mobilePhone));
-        attrs.add(AttributeBuilder.build("onPremisesSecurityIdentifier", onPremisesSecurityIdentifier));
-        attrs.add(AttributeBuilder.build("passwordPolicies", passwordPolicies));
-        attrs.addAll(passwordProfile.toAttributes());
-        attrs.add(AttributeBuilder.build("physicalDeliveryOfficeName", physicalDeliveryOfficeName));
-        attrs.add(AttributeBuilder.build("postalCode", postalCode));
-        attrs.add(AttributeBuilder.build("preferredLanguage", preferredLanguage));
-        attrs.add(AttributeBuilder.build("refreshTokensValidFromDateTime", refreshTokensValidFromDateTime));
-        attrs.add(AttributeBuilder.build("sipProxyAddress", sipProxyAddress));
-        attrs.add(AttributeBuilder.build("state", state));
-        attrs.add(AttributeBuilder.build("streetAddress", streetAddress));
-        attrs.add(AttributeBuilder.build("surname", surname));
-        attrs.add(AttributeBuilder.build("telephoneNumber", telephoneNumber));
-        attrs.add(AttributeBuilder.build("thumbnailPhoto", thumbnailPhoto));
-        attrs.add(AttributeBuilder.build("usageLocation", usageLocation));
-        attrs.add(AttributeBuilder.build("userPrincipalName", userPrincipalName));
-        attrs.add(AttributeBuilder.build("userType", userType));
+    public Set<Attribute> toAttributes(Set<String> attributesToGet) {
+        Set<Attribute> attrs = BINDING.write(this, attributesToGet, 1);
+        if (passwordProfile != null) {
+            attrs.addAll(passwordProfile.toAttributes(attributesToGet));
+        }
         return attrs;
     }
 }
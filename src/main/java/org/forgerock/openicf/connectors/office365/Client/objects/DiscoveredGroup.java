@@ -0,0 +1,64 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client.objects;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import org.identityconnectors.framework.common.objects.Attribute;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A group read or written with schema discovery, which also keeps the properties that have no
+ * field, such as directory extensions.
+ */
+public class DiscoveredGroup extends Group {
+
+    private final AdditionalProperties additionalProperties;
+
+    DiscoveredGroup() {
+        additionalProperties = new AdditionalProperties();
+    }
+
+    /**
+     * Return a new Group built from a Set of Attributes and the properties that have no field.
+     *
+     * @param attrs the Attributes from which to build the new object
+     * @param properties the properties without a field, by name
+     */
+    public DiscoveredGroup(Set<Attribute> attrs, Map<String, Object> properties) {
+        super(attrs);
+        additionalProperties = new AdditionalProperties(properties);
+    }
+
+    @JsonAnySetter
+    public void setAdditionalProperty(String name, Object value) {
+        additionalProperties.set(name, value);
+    }
+
+    @JsonAnyGetter
+    public Map<String, Object> getAdditionalProperties() {
+        return additionalProperties.get();
+    }
+
+    @Override
+    public Set<Attribute> toAttributes(Set<String> attributesToGet) {
+        Set<Attribute> attrs = super.toAttributes(attributesToGet);
+        additionalProperties.addAttributes(attrs, attributesToGet);
+        return attrs;
+    }
+}
@@ -19,12 +19,11 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.identityconnectors.framework.common.objects.Attribute;
-import org.identityconnectors.framework.common.objects.AttributeBuilder;
 import org.identityconnectors.framework.common.objects.Name;
 import org.identityconnectors.framework.common.objects.Uid;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -44,12 +43,16 @@ import java.util.Set;
  <Property Name="provisioningErrors" Type="Collection(Microsoft.DirectoryServices.ProvisioningError)" Nullable="false"/>
  <Property Name="proxyAddresses" Type="Collection(Edm.String)" Nullable="false"/>
  <Property Name="securityEnabled" Type="Edm.Boolean"/>
+ <NavigationProperty Name="members" Relationship="Microsoft.DirectoryServices.Group_members" ToRole="members" FromRole="Group"/>
  <NavigationProperty Name="appRoleAssignments" Relationship="Microsoft.DirectoryServices.Group_appRoleAssignments" ToRole="appRoleAssignments" FromRole="Group"/>
  </EntityType>
  */
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Group extends O365Object {
 
+    private static final AttributeBinding BINDING = new AttributeBinding(Group.class,
+            Uid.NAME, "id", Name.NAME, "displayName");
+
     @JsonProperty
     public String description;
 
@@ -92,68 +95,44 @@ public class Group extends O365Object {
      * @return the new object
      */
     public Group(Set<Attribute> attrs) {
-        for (Attribute attr : attrs) {
-            if (attr.getName().equals("description")) {
-                description = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("dirSyncEnabled")) {
-                dirSyncEnabled = (Boolean) attr.getValue().get(0);
-            } else if (attr.getName().equals(Name.NAME)) {
-                displayName = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals(Uid.NAME)) {
-                id = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("lastDirSyncTime")) {
-                lastDirSyncTime = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("mail")) {
-                mail = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("mailNickname")) {
-                mailNickname = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("mailEnabled")) {
-                mailEnabled = (Boolean) attr.getValue().get(0);
-            } else if (attr.getName().equals("onPremisesSecurityIdentifier")) {
-                onPremisesSecurityIdentifier = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("proxyAddresses")) {
-                proxyAddresses = (List<String>) attr.getValue().get(0);
-            } else if (attr.getName().equals("securityEnabled")) {
-                securityEnabled = (Boolean) attr.getValue().get(0);
-            }
-        }
+        BINDING.read(this, attrs);
     }
 
     @Override
-    public Set<Attribute> toAttributes() {
-        Set<Attribute> attrs = new HashSet<Attribute>();
-        attrs.add(AttributeBuilder.build("description", description));
-        attrs.add(AttributeBuilder.build("dirSyncEnabled", dirSyncEnabled));
-        attrs.add(AttributeBuilder.build("displayName", displayName));
-        attrs.add(AttributeBuilder.build("id", id));
-        attrs.add(AttributeBuilder.build("lastDirSyncTime", lastDirSyncTime));
-        attrs.add(AttributeBuilder.build("mail", mail));
-        attrs.add(AttributeBuilder.build("mailNickname", mailNickname));
-        attrs.add(AttributeBuilder.build("mailEnabled", mailEnabled));
-        attrs.add(AttributeBuilder.build("onPremisesSecurityIdentifier", onPremisesSecurityIdentifier));
-        attrs.add(AttributeBuilder.build("proxyAddresses", proxyAddresses));
-        attrs.add(AttributeBuilder.build("securityEnabled", securityEnabled));
-        return attrs;
+    public Set<Attribute> toAttributes(Set<String> attributesToGet) {
+        return BINDING.write(this, attributesToGet, 0);
     }
 
-    @JsonIgnore
-    @Override
-    public List<SchemaAttribute> getSchemaAttributes() {
+    /** Properties of groups, shared by every instance */
+    static final List<SchemaAttribute> SCHEMA;
+    static {
         final Boolean BOOL = true;
         final String STRING = "";
 
-        return new ArrayList<SchemaAttribute>() {{
-            add(new SchemaAttribute("id", STRING).setReturned(true).setReadable(true));
-            add(new SchemaAttribute("description", STRING).setReturned(true).setReadable(true));
-            add(new SchemaAttribute("dirSyncEnabled", STRING).setReturned(true).setReadable(true));
-            add(new SchemaAttribute("displayName", STRING).setReturned(true).setReadable(true).setRequired(true));
-            add(new SchemaAttribute("lastDirSyncTime", STRING).setReturned(true).setReadable(true));
-            add(new SchemaAttribute("mail", STRING).setReturned(true).setReadable(true));
-            add(new SchemaAttribute("mailNickname", STRING).setReturned(true).setReadable(true).setRequired(true));
-            add(new SchemaAttribute("mailEnabled", BOOL).setReturned(true).setReadable(true).setRequired(true));
-            add(new SchemaAttribute("onPremisesSecurityIdentifier", STRING).setReturned(true).setReadable(true));
-            add(new SchemaAttribute("proxyAddresses", STRING).setReturned(true).setReadable(true));
-            add(new SchemaAttribute("securityEnabled", BOOL).setReturned(true).setReadable(true).setRequired(true));
-        }};
+        List<SchemaAttribute> attrs = new ArrayList<SchemaAttribute>();
+        attrs.add(new SchemaAttribute("id", STRING).withReturned(true).withReadable(true)
+                .withUpdateable(false));
+        attrs.add(new SchemaAttribute("description", STRING).withReturned(true).withReadable(true));
+        attrs.add(new SchemaAttribute("dirSyncEnabled", STRING).withReturned(true).withReadable(true)
+                .withUpdateable(false).withSelectable(false));
+        attrs.add(new SchemaAttribute("displayName", STRING).withReturned(true).withReadable(true).withRequired(true));
+        attrs.add(new SchemaAttribute("lastDirSyncTime", STRING).withReturned(true).withReadable(true)
+                .withUpdateable(false).withSelectable(false));
+        attrs.add(new SchemaAttribute("mail", STRING).withReturned(true).withReadable(true));
+        attrs.add(new SchemaAttribute("mailNickname", STRING).withReturned(true).withReadable(true).withRequired(true));
+        attrs.add(new SchemaAttribute("mailEnabled", BOOL).withReturned(true).withReadable(true).withRequired(true));
+        attrs.add(new SchemaAttribute("onPremisesSecurityIdentifier", STRING).withReturned(true).withReadable(true));
+        attrs.add(new SchemaAttribute("proxyAddresses", STRING).withReturned(true).withReadable(true)
+                .withMultivalued(true));
+        attrs.add(new SchemaAttribute("securityEnabled", BOOL).withReturned(true).withReadable(true).withRequired(true));
+        attrs.add(new SchemaAttribute("members", STRING).withReadable(true)
+                .withCreatable(false).withUpdateable(false).withMultivalued(true).withSelectable(false));
+        SCHEMA = Collections.unmodifiableList(attrs);
+    }
+
+    @JsonIgnore
+    @Override
+    public List<SchemaAttribute> getSchemaAttributes() {
+        return SCHEMA;
     }
 }
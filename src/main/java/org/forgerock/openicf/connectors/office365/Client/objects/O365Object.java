@@ -16,9 +16,9 @@
 package org.forgerock.openicf.connectors.office365.client.objects;
 
 import org.identityconnectors.framework.common.objects.Attribute;
-import org.identityconnectors.framework.common.objects.AttributeInfoBuilder;
-import org.identityconnectors.framework.common.objects.ObjectClassInfoBuilder;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -36,33 +36,38 @@ public abstract class O365Object {
      *
      * @return Set of Attributes representing this object's properties
      */
-    public abstract Set<Attribute> toAttributes();
+    public Set<Attribute> toAttributes() {
+        return toAttributes(null);
+    }
 
     /**
-     * Return this object's properties as a List of SchemaAttributes.
+     * Return the requested properties of this object as a Set of Attributes.
      *
-     * @return List of SchemaAttributes representing this object's properties
+     * @param attributesToGet names of the Attributes to build, or null for all of them
+     * @return Set of Attributes representing the requested properties
      */
-    public abstract List<SchemaAttribute> getSchemaAttributes();
+    public abstract Set<Attribute> toAttributes(Set<String> attributesToGet);
 
     /**
-     * Add to a schema helper that describes this object's properties.
+     * Add an Attribute to a Set if it was requested.
      *
-     * @param infoBuilder the ObjectClassInfoBuilder to populate.
-     * @return ObjectClassInfoBuilder schema helper.
+     * @param attrs the Set to add to
+     * @param attributesToGet names of the requested Attributes, or null for all of them
+     * @param name the Attribute name
+     * @param value the Attribute value, a Collection for multi-valued Attributes
      */
-    public ObjectClassInfoBuilder addSchema(ObjectClassInfoBuilder infoBuilder) {
-        for (SchemaAttribute attr : getSchemaAttributes()) {
-            infoBuilder.addAttributeInfo(AttributeInfoBuilder.define(attr.property)
-                    .setCreateable(attr.createable)
-                    .setReadable(attr.readable)
-                    .setRequired(attr.required)
-                    .setMultiValued(attr.multivalued)
-                    .setReturnedByDefault(attr.returned)
-                    .setType(attr.object.getClass())
-                    .build()
-            );
+    static void addAttribute(Set<Attribute> attrs, Set<String> attributesToGet, String name, Object value) {
+        if (attributesToGet == null || attributesToGet.contains(name)) {
+            attrs.add(value instanceof Collection
+                    ? AttributeBuilder.build(name, (Collection<?>) value)
+                    : AttributeBuilder.build(name, value));
         }
-        return infoBuilder;
     }
+
+    /**
+     * Return this object's properties as a List of SchemaAttributes.
+     *
+     * @return List of SchemaAttributes representing this object's properties
+     */
+    public abstract List<SchemaAttribute> getSchemaAttributes();
 }
@@ -0,0 +1,232 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client.objects;
+
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.common.security.SecurityUtil;
+import org.identityconnectors.framework.common.exceptions.InvalidAttributeValueException;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.AttributeInfoBuilder;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.ObjectClassInfo;
+import org.identityconnectors.framework.common.objects.ObjectClassInfoBuilder;
+import org.identityconnectors.framework.common.objects.OperationalAttributes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable schema of an object class: the description of its properties and what is derived
+ * from it once, the ICF ObjectClassInfo and the properties Graph can $select and $filter on.
+ * Instances are shared by every connector of the JVM.
+ */
+public final class ObjectClassSchema {
+
+    /** Schema of users */
+    public static final ObjectClassSchema ACCOUNT = new ObjectClassSchema(ObjectClass.ACCOUNT, CreateUser.SCHEMA);
+
+    /** Schema of groups */
+    public static final ObjectClassSchema GROUP = new ObjectClassSchema(ObjectClass.GROUP, Group.SCHEMA);
+
+    private final List<SchemaAttribute> attributes;
+    private final Map<String, SchemaAttribute> byProperty;
+    private final List<String> selectable;
+    private final List<String> filterable;
+    private final Set<String> additional;
+    private final ObjectClassInfo objectClassInfo;
+
+    /**
+     * Create the schema of an object class
+     *
+     * @param objectClass the object class
+     * @param attributes the description of its properties
+     */
+    public ObjectClassSchema(ObjectClass objectClass, List<SchemaAttribute> attributes) {
+        this(objectClass, attributes, Collections.<String>emptySet());
+    }
+
+    /**
+     * Create the schema of an object class, some of whose properties have no field in its
+     * Graph bean and are held as additional properties
+     *
+     * @param objectClass the object class
+     * @param attributes the description of its properties
+     * @param additional the properties without a field, such as discovered directory extensions
+     */
+    public ObjectClassSchema(ObjectClass objectClass, List<SchemaAttribute> attributes, Set<String> additional) {
+        this.additional = Collections.unmodifiableSet(new HashSet<String>(additional));
+        this.attributes = Collections.unmodifiableList(new ArrayList<SchemaAttribute>(attributes));
+        Map<String, SchemaAttribute> byProperty = new HashMap<String, SchemaAttribute>();
+        List<String> selectable = new ArrayList<String>();
+        List<String> filterable = new ArrayList<String>();
+        ObjectClassInfoBuilder infoBuilder = new ObjectClassInfoBuilder();
+        infoBuilder.setType(objectClass.getObjectClassValue());
+        infoBuilder.addAttributeInfo(Name.INFO);
+        for (SchemaAttribute attr : attributes) {
+            byProperty.put(attr.property, attr);
+            if (attr.selectable) {
+                selectable.add(attr.property);
+                if (!attr.multivalued) {
+                    filterable.add(attr.property);
+                }
+            }
+            infoBuilder.addAttributeInfo(AttributeInfoBuilder.define(attr.property)
+                    .setCreateable(attr.createable)
+                    .setUpdateable(attr.updateable)
+                    .setReadable(attr.readable)
+                    .setRequired(attr.required)
+                    .setMultiValued(attr.multivalued)
+                    .setReturnedByDefault(attr.returned)
+                    .setType(attr.object.getClass())
+                    .build()
+            );
+        }
+        this.byProperty = Collections.unmodifiableMap(byProperty);
+        this.selectable = Collections.unmodifiableList(selectable);
+        this.filterable = Collections.unmodifiableList(filterable);
+        this.objectClassInfo = infoBuilder.build();
+    }
+
+    /**
+     * Return the schema of an object class
+     *
+     * @param objectClass the object class
+     * @return the schema, or null if the object class is not supported
+     */
+    public static ObjectClassSchema of(ObjectClass objectClass) {
+        if (ObjectClass.ACCOUNT.equals(objectClass)) {
+            return ACCOUNT;
+        } else if (ObjectClass.GROUP.equals(objectClass)) {
+            return GROUP;
+        }
+        return null;
+    }
+
+    /**
+     * Return the description of the properties
+     *
+     * @return the properties, in schema order
+     */
+    public List<SchemaAttribute> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Return the description of a property
+     *
+     * @param property the property name
+     * @return the description, or null if the property is not part of this class
+     */
+    public SchemaAttribute getAttribute(String property) {
+        return byProperty.get(property);
+    }
+
+    /**
+     * Tell whether a property has no field in the Graph bean of this class
+     *
+     * @param property the property name
+     * @return true if the property is held as an additional property
+     */
+    public boolean isAdditional(String property) {
+        return additional.contains(property);
+    }
+
+    /**
+     * Return the ICF description of the object class
+     *
+     * @return the ObjectClassInfo
+     */
+    public ObjectClassInfo getObjectClassInfo() {
+        return objectClassInfo;
+    }
+
+    /**
+     * Return every property Graph can $select
+     *
+     * @return the selectable properties
+     */
+    public List<String> getSelectableProperties() {
+        return selectable;
+    }
+
+    /**
+     * Return the Graph properties to $select in order to read the requested Attributes.
+     * Attributes that are not properties of this class, or that Graph cannot project,
+     * are left out.
+     *
+     * @param attributesToGet names of the requested Attributes
+     * @return the properties to select
+     */
+    public List<String> getSelectProperties(Collection<String> attributesToGet) {
+        List<String> properties = new ArrayList<String>();
+        for (String property : selectable) {
+            if (attributesToGet.contains(property)) {
+                properties.add(property);
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Return the Graph properties that can be used in a $filter.
+     *
+     * @return the filterable properties
+     */
+    public List<String> getFilterableProperties() {
+        return filterable;
+    }
+
+    /**
+     * Return the Graph PATCH body setting the supplied Attributes, and only them. An Attribute
+     * without values clears its property with an explicit null.
+     *
+     * @param attrs the Attributes to set
+     * @param nameProperty the property the Name Attribute maps to
+     * @return the properties to set, in Attribute order
+     * @throws InvalidAttributeValueException if an Attribute is not an updateable property of this class
+     */
+    public Map<String, Object> getChanges(Set<Attribute> attrs, String nameProperty) {
+        Map<String, Object> changes = new LinkedHashMap<String, Object>();
+        for (Attribute attr : attrs) {
+            List<Object> values = attr.getValue();
+            Object value = values == null || values.isEmpty() ? null : values.get(0);
+            SchemaAttribute schema = byProperty.get(attr.getName());
+            if (attr.getName().equals(Name.NAME)) {
+                changes.put(nameProperty, value);
+            } else if (attr.getName().equals(OperationalAttributes.PASSWORD_NAME) && byProperty.containsKey("password")) {
+                // The password is only set through the password profile
+                changes.put("passwordProfile", Collections.singletonMap("password", value == null
+                        ? null
+                        : SecurityUtil.decrypt((GuardedString) value)));
+            } else if (schema != null && schema.updateable) {
+                changes.put(attr.getName(), schema.multivalued
+                        ? (values == null ? Collections.emptyList() : values)
+                        : value);
+            } else {
+                throw new InvalidAttributeValueException("Attribute " + attr.getName() + " cannot be updated");
+            }
+        }
+        return changes;
+    }
+}
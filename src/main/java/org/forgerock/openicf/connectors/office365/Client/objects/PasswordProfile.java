@@ -21,10 +21,10 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.common.security.SecurityUtil;
 import org.identityconnectors.framework.common.objects.Attribute;
-import org.identityconnectors.framework.common.objects.AttributeBuilder;
 import org.identityconnectors.framework.common.objects.OperationalAttributes;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -56,21 +56,31 @@ public class PasswordProfile extends O365Object {
     }
 
     @Override
-    public Set<Attribute> toAttributes() {
-        Set<Attribute> attrs = new HashSet<Attribute>();
-        attrs.add(AttributeBuilder.build("password", password == null
-                ? null
-                : new GuardedString(password.toCharArray())));
+    public Set<Attribute> toAttributes(Set<String> attributesToGet) {
+        Set<Attribute> attrs = new HashSet<Attribute>(2);
+        if (password != null || attributesToGet != null) {
+            addAttribute(attrs, attributesToGet, "password", password == null
+                    ? null
+                    : new GuardedString(password.toCharArray()));
+        }
         return attrs;
     }
 
+    /** Properties of password profiles, shared by every instance */
+    static final List<SchemaAttribute> SCHEMA;
+    static {
+        final GuardedString GS = new GuardedString();
+
+        List<SchemaAttribute> attrs = new ArrayList<SchemaAttribute>();
+        // Written through __PASSWORD__ only, Graph never returns it
+        attrs.add(new SchemaAttribute("password", GS).withCreatable(false).withUpdateable(false)
+                .withSelectable(false));
+        SCHEMA = Collections.unmodifiableList(attrs);
+    }
+
     @JsonIgnore
     @Override
     public List<SchemaAttribute> getSchemaAttributes() {
-        final GuardedString GS = new GuardedString();
-
-        return new ArrayList<SchemaAttribute>() {{
-            add(new SchemaAttribute("password", GS));
-        }};
+        return SCHEMA;
     }
 }
@@ -19,10 +19,9 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.identityconnectors.framework.common.objects.Attribute;
-import org.identityconnectors.framework.common.objects.AttributeBuilder;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -32,6 +31,8 @@ import java.util.Set;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class ReadUser extends O365Object {
 
+    private static final AttributeBinding BINDING = new AttributeBinding(ReadUser.class);
+
     @JsonProperty
     public String displayName;
 
@@ -69,59 +70,35 @@ public class ReadUser extends O365Object {
      */
     public ReadUser(Set<Attribute> attrs) {
         super(attrs);
-        for (Attribute attr : attrs) {
-            if (attr.getName().equals("displayName")) {
-                displayName = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("givenName")) {
-                givenName = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("id")) {
-                id = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("jobTitle")) {
-                jobTitle = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("mail")) {
-                mail = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("mobilePhone")) {
-                mobilePhone = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("preferredLanguage")) {
-                preferredLanguage = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("surname")) {
-                surname = (String) attr.getValue().get(0);
-            } else if (attr.getName().equals("userPrincipalName")) {
-                userPrincipalName = (String) attr.getValue().get(0);
-            }
-        }
+        BINDING.read(this, attrs);
     }
 
     @Override
-    public Set<Attribute> toAttributes() {
-        Set<Attribute> attrs = new HashSet<Attribute>();
-        attrs.add(AttributeBuilder.build("displayName", displayName));
-        attrs.add(AttributeBuilder.build("givenName", givenName));
-        attrs.add(AttributeBuilder.build("id", id));
-        attrs.add(AttributeBuilder.build("jobTitle", jobTitle));
-        attrs.add(AttributeBuilder.build("mail", mail));
-        attrs.add(AttributeBuilder.build("mobilePhone", mobilePhone));
-        attrs.add(AttributeBuilder.build("preferredLanguage", preferredLanguage));
-        attrs.add(AttributeBuilder.build("surname", surname));
-        attrs.add(AttributeBuilder.build("userPrincipalName", userPrincipalName));
-        return attrs;
+    public Set<Attribute> toAttributes(Set<String> attributesToGet) {
+        return BINDING.write(this, attributesToGet, 0);
+    }
+
+    /** Properties of users as returned on creation, shared by every instance */
+    static final List<SchemaAttribute> SCHEMA;
+    static {
+        final String STRING = "";
+
+        List<SchemaAttribute> attrs = new ArrayList<SchemaAttribute>();
+        attrs.add(new SchemaAttribute("displayName", STRING).withRequired(true));
+        attrs.add(new SchemaAttribute("givenName", STRING));
+        attrs.add(new SchemaAttribute("id", STRING));
+        attrs.add(new SchemaAttribute("jobTitle", STRING));
+        attrs.add(new SchemaAttribute("mail", STRING));
+        attrs.add(new SchemaAttribute("mobilePhone", STRING));
+        attrs.add(new SchemaAttribute("preferredLanguage", STRING));
+        attrs.add(new SchemaAttribute("surname", STRING));
+        attrs.add(new SchemaAttribute("userPrincipalName", STRING).withRequired(true));
+        SCHEMA = Collections.unmodifiableList(attrs);
     }
 
     @JsonIgnore
     @Override
     public List<SchemaAttribute> getSchemaAttributes() {
-        final String STRING = "";
-
-        return new ArrayList<SchemaAttribute>() {{
-            add(new SchemaAttribute("displayName", STRING).setRequired(true));
-            add(new SchemaAttribute("givenName", STRING));
-            add(new SchemaAttribute("id", STRING));
-            add(new SchemaAttribute("jobTitle", STRING));
-            add(new SchemaAttribute("mail", STRING));
-            add(new SchemaAttribute("mobilePhone", STRING));
-            add(new SchemaAttribute("preferredLanguage", STRING));
-            add(new SchemaAttribute("surname", STRING));
-            add(new SchemaAttribute("userPrincipalName", STRING).setRequired(true));
-        }};
+        return SCHEMA;
     }
 }
@@ -15,42 +15,63 @@
  */
 package org.forgerock.openicf.connectors.office365.client.objects;
 
-public class SchemaAttribute {
-    public String property;
-    public Object object;
-    public boolean createable = true;
-    public boolean readable = false;
-    public boolean required = false;
-    public boolean multivalued = false;
-    public boolean returned = false;
+/**
+ * Immutable description of an object property. The with methods return a modified copy, so that
+ * descriptions can be declared fluently and shared.
+ */
+public final class SchemaAttribute {
+    public final String property;
+    public final Object object;
+    public final boolean createable;
+    public final boolean updateable;
+    public final boolean readable;
+    public final boolean required;
+    public final boolean multivalued;
+    public final boolean returned;
+    public final boolean selectable;
 
     public SchemaAttribute(String property, Object object) {
+        this(property, object, true, true, false, false, false, false, true);
+    }
+
+    private SchemaAttribute(String property, Object object, boolean createable, boolean updateable,
+            boolean readable, boolean required, boolean multivalued, boolean returned, boolean selectable) {
         this.property = property;
         this.object = object;
+        this.createable = createable;
+        this.updateable = updateable;
+        this.readable = readable;
+        this.required = required;
+        this.multivalued = multivalued;
+        this.returned = returned;
+        this.selectable = selectable;
+    }
+
+    public SchemaAttribute withCreatable(boolean state) {
+        return new SchemaAttribute(property, object, state, updateable, readable, required, multivalued, returned, selectable);
+    }
+
+    public SchemaAttribute withUpdateable(boolean state) {
+        return new SchemaAttribute(property, object, createable, state, readable, required, multivalued, returned, selectable);
     }
 
-    public SchemaAttribute setCreatable(boolean state) {
-        this.createable = state;
-        return this;
+    public SchemaAttribute withReadable(boolean state) {
+        return new SchemaAttribute(property, object, createable, updateable, state, required, multivalued, returned, selectable);
     }
 
-    public SchemaAttribute setReadable(boolean state) {
-        this.readable = state;
-        return this;
+    public SchemaAttribute withRequired(boolean state) {
+        return new SchemaAttribute(property, object, createable, updateable, readable, state, multivalued, returned, selectable);
     }
 
-    public SchemaAttribute setRequired(boolean state) {
-        this.required = state;
-        return this;
+    public SchemaAttribute withMultivalued(boolean state) {
+        return new SchemaAttribute(property, object, createable, updateable, readable, required, state, returned, selectable);
     }
 
-    public SchemaAttribute setMultivalued(boolean state) {
-        this.multivalued = state;
-        return this;
+    public SchemaAttribute withReturned(boolean state) {
+        return new SchemaAttribute(property, object, createable, updateable, readable, required, multivalued, state, selectable);
     }
 
-    public SchemaAttribute setReturned(boolean state) {
-        this.returned = state;
-        return this;
+    public SchemaAttribute withSelectable(boolean state) {
+        return new SchemaAttribute(property, object, createable, updateable, readable, required, multivalued, returned, state);
     }
 }
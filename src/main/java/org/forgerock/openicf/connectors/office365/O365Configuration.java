@@ -33,7 +33,7 @@ import java.util.Map;
  */
 public class O365Configuration extends AbstractConfiguration {
 
-    /** The Office365 host and token refresh uri */
+    /** The default Office365 host and token refresh uri */
     public final static String O365HOST = "https://graph.microsoft.com/v1.0/";
     public final static String O365TOKEN_REFRESH_URI = "https://login.windows.net/common/oauth2/token";
 
@@ -49,6 +49,9 @@ public class O365Configuration extends AbstractConfiguration {
     /** NAME field for GROUP object type */
     public final static String FIELD_GROUP_NAME = "displayName";
 
+    /** Members field for GROUP object type */
+    public final static String FIELD_GROUP_MEMBERS = "members";
+
     /** The Azure tenant name */
     private String tenant;
 
@@ -67,6 +70,72 @@ public class O365Configuration extends AbstractConfiguration {
     /** OAuth2 refresh token */
     private String refreshToken = null;
 
+    /** Maximum number of pooled HTTP connections per route */
+    private int maxConnectionsPerRoute = 20;
+
+    /** Seconds an unused connection pool is kept open before it is closed */
+    private long connectionIdleTimeout = 300;
+
+    /** Seconds during which a successful request makes checkAlive() skip its probe */
+    private long livenessCheckInterval = 30;
+
+    /** Seconds before expiry at which the access token is renewed in the background */
+    private long tokenRenewalSkew = 300;
+
+    /** Maximum number of retries of a throttled or failed request */
+    private int maxRetries = 5;
+
+    /** Milliseconds of the initial retry backoff when Graph gives no Retry-After hint */
+    private long retryBaseDelay = 500;
+
+    /** Maximum seconds spent retrying a single request */
+    private long maxRetryDuration = 300;
+
+    /** Percentage of the requests of a tenant that may be retried */
+    private int retryBudgetPercent = 20;
+
+    /** Maximum read operations per second sent to the tenant, 0 for no limit */
+    private int readRequestsPerSecond = 0;
+
+    /** Maximum write operations per second sent to the tenant, 0 for no limit */
+    private int writeRequestsPerSecond = 0;
+
+    /** Whether create, update and delete operations are coalesced into $batch requests */
+    private boolean batchWrites = false;
+
+    /** Milliseconds a write waits for others to join its $batch request */
+    private long batchLinger = 10;
+
+    /** Whether to discover the schema, including directory extensions, from the tenant */
+    private boolean schemaDiscovery = false;
+
+    /** Directory of the discovered schema cache, .openicf-office365/schema in the user's home if not set */
+    private String schemaCacheDirectory = null;
+
+    /** Maximum number of objects cached for lookups by id or name, 0 to disable the cache */
+    private int objectCacheSize = 0;
+
+    /** Seconds a cached object is served before it is read again */
+    private long objectCacheTtl = 60;
+
+    /** Root of the Graph API, ending with the API version */
+    private String graphEndpoint = O365HOST;
+
+    /** The OAuth2 token endpoint */
+    private String tokenEndpoint = O365TOKEN_REFRESH_URI;
+
+    /** Number of name ranges a full enumeration is split into, 0 or 1 to walk it sequentially */
+    private int enumerationPartitions = 0;
+
+    /** Maximum number of name ranges of a full enumeration walked at the same time */
+    private int enumerationThreads = 4;
+
+    /** Directory where the progress of full enumerations is recorded, disabled if not set */
+    private String checkpointDirectory = null;
+
+    /** Seconds a recorded enumeration checkpoint can be resumed from */
+    private long checkpointMaxAge = 3600;
+
     /** Map of ObjectClasses to O365 EntitySet Strings */
     private Map<ObjectClass, String> objectClassEntitySet = new HashMap<ObjectClass, String>();
     {
@@ -154,6 +223,17 @@ public class O365Configuration extends AbstractConfiguration {
         this.refreshToken = refreshToken;
     }
 
+    @ConfigurationProperty(order = 13, displayMessageKey = "tokenRenewalSkew.display",
+            groupMessageKey = "basic.group", helpMessageKey = "tokenRenewalSkew.help",
+            confidential = false)
+    public long getTokenRenewalSkew() {
+        return tokenRenewalSkew;
+    }
+
+    public void setTokenRenewalSkew(long tokenRenewalSkew) {
+        this.tokenRenewalSkew = tokenRenewalSkew;
+    }
+
     @ConfigurationProperty(order = 7, displayMessageKey = "accountEntitySet.display",
             groupMessageKey = "o365.group", helpMessageKey = "accountEntitySet.help",
             required = true, confidential = false)
@@ -234,6 +314,244 @@ public class O365Configuration extends AbstractConfiguration {
         return null;
     }
 
+    @ConfigurationProperty(order = 10, displayMessageKey = "maxConnectionsPerRoute.display",
+            groupMessageKey = "http.group", helpMessageKey = "maxConnectionsPerRoute.help",
+            confidential = false)
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    @ConfigurationProperty(order = 11, displayMessageKey = "connectionIdleTimeout.display",
+            groupMessageKey = "http.group", helpMessageKey = "connectionIdleTimeout.help",
+            confidential = false)
+    public long getConnectionIdleTimeout() {
+        return connectionIdleTimeout;
+    }
+
+    public void setConnectionIdleTimeout(long connectionIdleTimeout) {
+        this.connectionIdleTimeout = connectionIdleTimeout;
+    }
+
+    @ConfigurationProperty(order = 12, displayMessageKey = "livenessCheckInterval.display",
+            groupMessageKey = "http.group", helpMessageKey = "livenessCheckInterval.help",
+            confidential = false)
+    public long getLivenessCheckInterval() {
+        return livenessCheckInterval;
+    }
+
+    public void setLivenessCheckInterval(long livenessCheckInterval) {
+        this.livenessCheckInterval = livenessCheckInterval;
+    }
+
+    @ConfigurationProperty(order = 14, displayMessageKey = "maxRetries.display",
+            groupMessageKey = "http.group", helpMessageKey = "maxRetries.help",
+            confidential = false)
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    @ConfigurationProperty(order = 15, displayMessageKey = "retryBaseDelay.display",
+            groupMessageKey = "http.group", helpMessageKey = "retryBaseDelay.help",
+            confidential = false)
+    public long getRetryBaseDelay() {
+        return retryBaseDelay;
+    }
+
+    public void setRetryBaseDelay(long retryBaseDelay) {
+        this.retryBaseDelay = retryBaseDelay;
+    }
+
+    @ConfigurationProperty(order = 16, displayMessageKey = "maxRetryDuration.display",
+            groupMessageKey = "http.group", helpMessageKey = "maxRetryDuration.help",
+            confidential = false)
+    public long getMaxRetryDuration() {
+        return maxRetryDuration;
+    }
+
+    public void setMaxRetryDuration(long maxRetryDuration) {
+        this.maxRetryDuration = maxRetryDuration;
+    }
+
+    @ConfigurationProperty(order = 17, displayMessageKey = "retryBudgetPercent.display",
+            groupMessageKey = "http.group", helpMessageKey = "retryBudgetPercent.help",
+            confidential = false)
+    public int getRetryBudgetPercent() {
+        return retryBudgetPercent;
+    }
+
+    public void setRetryBudgetPercent(int retryBudgetPercent) {
+        this.retryBudgetPercent = retryBudgetPercent;
+    }
+
+    @ConfigurationProperty(order = 18, displayMessageKey = "readRequestsPerSecond.display",
+            groupMessageKey = "http.group", helpMessageKey = "readRequestsPerSecond.help",
+            confidential = false)
+    public int getReadRequestsPerSecond() {
+        return readRequestsPerSecond;
+    }
+
+    public void setReadRequestsPerSecond(int readRequestsPerSecond) {
+        this.readRequestsPerSecond = readRequestsPerSecond;
+    }
+
+    @ConfigurationProperty(order = 19, displayMessageKey = "writeRequestsPerSecond.display",
+            groupMessageKey = "http.group", helpMessageKey = "writeRequestsPerSecond.help",
+            confidential = false)
+    public int getWriteRequestsPerSecond() {
+        return writeRequestsPerSecond;
+    }
+
+    public void setWriteRequestsPerSecond(int writeRequestsPerSecond) {
+        this.writeRequestsPerSecond = writeRequestsPerSecond;
+    }
+
+    @ConfigurationProperty(order = 20, displayMessageKey = "batchWrites.display",
+            groupMessageKey = "o365.group", helpMessageKey = "batchWrites.help",
+            confidential = false)
+    public boolean getBatchWrites() {
+        return batchWrites;
+    }
+
+    public void setBatchWrites(boolean batchWrites) {
+        this.batchWrites = batchWrites;
+    }
+
+    @ConfigurationProperty(order = 21, displayMessageKey = "batchLinger.display",
+            groupMessageKey = "o365.group", helpMessageKey = "batchLinger.help",
+            confidential = false)
+    public long getBatchLinger() {
+        return batchLinger;
+    }
+
+    public void setBatchLinger(long batchLinger) {
+        this.batchLinger = batchLinger;
+    }
+
+    @ConfigurationProperty(order = 22, displayMessageKey = "schemaDiscovery.display",
+            groupMessageKey = "o365.group", helpMessageKey = "schemaDiscovery.help",
+            confidential = false)
+    public boolean getSchemaDiscovery() {
+        return schemaDiscovery;
+    }
+
+    public void setSchemaDiscovery(boolean schemaDiscovery) {
+        this.schemaDiscovery = schemaDiscovery;
+    }
+
+    @ConfigurationProperty(order = 23, displayMessageKey = "schemaCacheDirectory.display",
+            groupMessageKey = "o365.group", helpMessageKey = "schemaCacheDirectory.help",
+            confidential = false)
+    public String getSchemaCacheDirectory() {
+        return schemaCacheDirectory;
+    }
+
+    public void setSchemaCacheDirectory(String schemaCacheDirectory) {
+        this.schemaCacheDirectory = schemaCacheDirectory;
+    }
+
+    @ConfigurationProperty(order = 24, displayMessageKey = "objectCacheSize.display",
+            groupMessageKey = "o365.group", helpMessageKey = "objectCacheSize.help",
+            confidential = false)
+    public int getObjectCacheSize() {
+        return objectCacheSize;
+    }
+
+    public void setObjectCacheSize(int objectCacheSize) {
+        this.objectCacheSize = objectCacheSize;
+    }
+
+    @ConfigurationProperty(order = 25, displayMessageKey = "objectCacheTtl.display",
+            groupMessageKey = "o365.group", helpMessageKey = "objectCacheTtl.help",
+            confidential = false)
+    public long getObjectCacheTtl() {
+        return objectCacheTtl;
+    }
+
+    public void setObjectCacheTtl(long objectCacheTtl) {
+        this.objectCacheTtl = objectCacheTtl;
+    }
+
+    @ConfigurationProperty(order = 26, displayMessageKey = "graphEndpoint.display",
+            groupMessageKey = "o365.group", helpMessageKey = "graphEndpoint.help",
+            confidential = false)
+    public String getGraphEndpoint() {
+        return graphEndpoint;
+    }
+
+    /**
+     * Set the root of the Graph API, adding the trailing slash the request URIs are built on
+     *
+     * @param graphEndpoint the root of the Graph API, such as https://graph.microsoft.com/v1.0/
+     */
+    public void setGraphEndpoint(String graphEndpoint) {
+        this.graphEndpoint = graphEndpoint == null || graphEndpoint.endsWith("/")
+                ? graphEndpoint
+                : graphEndpoint + "/";
+    }
+
+    @ConfigurationProperty(order = 27, displayMessageKey = "tokenEndpoint.display",
+            groupMessageKey = "o365.group", helpMessageKey = "tokenEndpoint.help",
+            confidential = false)
+    public String getTokenEndpoint() {
+        return tokenEndpoint;
+    }
+
+    public void setTokenEndpoint(String tokenEndpoint) {
+        this.tokenEndpoint = tokenEndpoint;
+    }
+
+    @ConfigurationProperty(order = 28, displayMessageKey = "enumerationPartitions.display",
+            groupMessageKey = "o365.group", helpMessageKey = "enumerationPartitions.help",
+            confidential = false)
+    public int getEnumerationPartitions() {
+        return enumerationPartitions;
+    }
+
+    public void setEnumerationPartitions(int enumerationPartitions) {
+        this.enumerationPartitions = enumerationPartitions;
+    }
+
+    @ConfigurationProperty(order = 29, displayMessageKey = "enumerationThreads.display",
+            groupMessageKey = "o365.group", helpMessageKey = "enumerationThreads.help",
+            confidential = false)
+    public int getEnumerationThreads() {
+        return enumerationThreads;
+    }
+
+    public void setEnumerationThreads(int enumerationThreads) {
+        this.enumerationThreads = enumerationThreads;
+    }
+
+    @ConfigurationProperty(order = 30, displayMessageKey = "checkpointDirectory.display",
+            groupMessageKey = "o365.group", helpMessageKey = "checkpointDirectory.help",
+            confidential = false)
+    public String getCheckpointDirectory() {
+        return checkpointDirectory;
+    }
+
+    public void setCheckpointDirectory(String checkpointDirectory) {
+        this.checkpointDirectory = checkpointDirectory;
+    }
+
+    @ConfigurationProperty(order = 31, displayMessageKey = "checkpointMaxAge.display",
+            groupMessageKey = "o365.group", helpMessageKey = "checkpointMaxAge.help",
+            confidential = false)
+    public long getCheckpointMaxAge() {
+        return checkpointMaxAge;
+    }
+
+    public void setCheckpointMaxAge(long checkpointMaxAge) {
+        this.checkpointMaxAge = checkpointMaxAge;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -249,5 +567,65 @@ public class O365Configuration extends AbstractConfiguration {
         if (null == clientSecret) {
             throw new IllegalArgumentException("Client Secret cannot be null or empty.");
         }
+
+        if (maxConnectionsPerRoute < 1) {
+            throw new IllegalArgumentException("Max Connections Per Route must be at least 1.");
+        }
+
+        if (connectionIdleTimeout < 0) {
+            throw new IllegalArgumentException("Connection Idle Timeout cannot be negative.");
+        }
+
+        if (livenessCheckInterval < 0) {
+            throw new IllegalArgumentException("Liveness Check Interval cannot be negative.");
+        }
+
+        if (tokenRenewalSkew < 0) {
+            throw new IllegalArgumentException("Token Renewal Skew cannot be negative.");
+        }
+
+        if (maxRetries < 0 || retryBaseDelay < 0 || maxRetryDuration < 0) {
+            throw new IllegalArgumentException("Retry settings cannot be negative.");
+        }
+
+        if (retryBudgetPercent < 0 || retryBudgetPercent > 100) {
+            throw new IllegalArgumentException("Retry Budget Percent must be between 0 and 100.");
+        }
+
+        if (readRequestsPerSecond < 0 || writeRequestsPerSecond < 0) {
+            throw new IllegalArgumentException("Request rate limits cannot be negative.");
+        }
+
+        if (batchLinger < 0) {
+            throw new IllegalArgumentException("Batch Linger cannot be negative.");
+        }
+
+        if (objectCacheSize < 0) {
+            throw new IllegalArgumentException("Object Cache Size cannot be negative.");
+        }
+
+        if (objectCacheTtl < 0) {
+            throw new IllegalArgumentException("Object Cache TTL cannot be negative.");
+        }
+
+        if (StringUtil.isBlank(graphEndpoint)) {
+            throw new IllegalArgumentException("Graph Endpoint cannot be null or empty.");
+        }
+
+        if (StringUtil.isBlank(tokenEndpoint)) {
+            throw new IllegalArgumentException("Token Endpoint cannot be null or empty.");
+        }
+
+        if (enumerationPartitions < 0) {
+            throw new IllegalArgumentException("Enumeration Partitions cannot be negative.");
+        }
+
+        if (enumerationThreads < 1) {
+            throw new IllegalArgumentException("Enumeration Threads must be at least 1.");
+        }
+
+        if (checkpointMaxAge < 0) {
+            throw new IllegalArgumentException("Checkpoint Max Age cannot be negative.");
+        }
     }
 }
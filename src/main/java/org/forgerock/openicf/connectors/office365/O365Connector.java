@@ -16,9 +16,17 @@
 
 package org.forgerock.openicf.connectors.office365;
 
+import org.forgerock.openicf.connectors.office365.client.Delta;
+import org.forgerock.openicf.connectors.office365.client.Metrics;
 import org.forgerock.openicf.connectors.office365.client.Office365Client;
+import org.forgerock.openicf.connectors.office365.client.Page;
+import org.forgerock.openicf.connectors.office365.client.PagedResults;
+import org.forgerock.openicf.connectors.office365.client.SchemaDiscovery;
+import org.forgerock.openicf.connectors.office365.client.objects.DiscoveredGroup;
+import org.forgerock.openicf.connectors.office365.client.objects.DiscoveredUser;
 import org.forgerock.openicf.connectors.office365.client.objects.Group;
 import org.forgerock.openicf.connectors.office365.client.objects.O365Object;
+import org.forgerock.openicf.connectors.office365.client.objects.ObjectClassSchema;
 import org.forgerock.openicf.connectors.office365.client.objects.CreateUser;
 import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.common.logging.Log;
@@ -32,6 +40,7 @@ import org.identityconnectors.framework.spi.Configuration;
 import org.identityconnectors.framework.spi.ConnectorClass;
 import org.identityconnectors.framework.spi.PoolableConnector;
 import org.identityconnectors.framework.spi.SearchResultsHandler;
+import org.identityconnectors.framework.spi.SyncTokenResultsHandler;
 import org.identityconnectors.framework.spi.operations.*;
 
 import java.util.*;
@@ -44,20 +53,25 @@ import java.util.*;
         displayNameKey = "O365.connector.display",
         configurationClass = O365Configuration.class)
 public class O365Connector implements PoolableConnector, CreateOp, DeleteOp, ResolveUsernameOp,
-        SchemaOp, SearchOp<Filter>, TestOp, UpdateOp {
+        SchemaOp, SearchOp<Filter>, SyncOp, TestOp, UpdateAttributeValuesOp {
 
     /**
      * Setup logging for the {@link O365Connector}.
      */
     private static final Log logger = Log.getLog(O365Connector.class);
 
+    /**
+     * Search option resuming an enumeration without paging from the checkpoints recorded by an
+     * earlier one that failed. Without it an enumeration starts from the first page.
+     */
+    public static final String OP_RESUME = "resume";
+
     /**
      * Place holder for the {@link Configuration} passed into the init() method
      * {@link O365Connector#init(org.identityconnectors.framework.spi.Configuration)}.
      */
     private O365Configuration configuration;
 
-    private Schema schema = null;
     Office365Client client = null;
 
     private static final String CONTENT_TYPE = "UTF-8";
@@ -92,6 +106,10 @@ public class O365Connector implements PoolableConnector, CreateOp, DeleteOp, Res
      * @see org.identityconnectors.framework.spi.Connector#dispose()
      */
     public void dispose() {
+        if (client != null) {
+            client.close();
+            client = null;
+        }
         configuration = null;
     }
 
@@ -100,13 +118,39 @@ public class O365Connector implements PoolableConnector, CreateOp, DeleteOp, Res
     */
     public void checkAlive() {
         try {
-            client.testConnection();
+            client.checkAlive();
         } catch (Exception e) {
             logger.warn(e, "checkAlive failed");
             throw new ConnectorException("checkAlive() failed", e);
         }
     }
 
+    /**
+     * An operation whose duration and failures are recorded in the tenant's metrics
+     */
+    private abstract static class Operation<T> {
+        abstract T run();
+    }
+
+    /**
+     * Run an operation, recording its duration and whether it failed
+     *
+     * @param name the operation name in the metrics
+     * @param operation the operation
+     * @return the result of the operation
+     */
+    private <T> T time(String name, Operation<T> operation) {
+        Metrics.Timer timer = client.getMetrics().startOperation(name);
+        try {
+            return operation.run();
+        } catch (RuntimeException e) {
+            timer.failed();
+            throw e;
+        } finally {
+            timer.stop();
+        }
+    }
+
 
     /******************
      * SPI Operations
@@ -120,9 +164,19 @@ public class O365Connector implements PoolableConnector, CreateOp, DeleteOp, Res
      */
     public Uid resolveUsername(final ObjectClass objectClass, final String userName,
             final OperationOptions options) {
+        return time("resolveUsername", new Operation<Uid>() {
+            Uid run() {
+                return doResolveUsername(objectClass, userName, options);
+            }
+        });
+    }
+
+    private Uid doResolveUsername(final ObjectClass objectClass, final String userName,
+            final OperationOptions options) {
         if (ObjectClass.ACCOUNT.equals(objectClass)) {
             O365Object object = client.getObject(ObjectClass.ACCOUNT, userName);
-            Attribute attr = AttributeUtil.find(O365Configuration.FIELD_ACCOUNT_UID, object.toAttributes());
+            Attribute attr = AttributeUtil.find(O365Configuration.FIELD_ACCOUNT_UID,
+                    object.toAttributes(Collections.singleton(O365Configuration.FIELD_ACCOUNT_UID)));
             return attr == null ? null : new Uid(attr.getValue().get(0).toString());
         } else {
             logger.warn("ResolveUsername of type {0} is not supported", objectClass.getObjectClassValue());
@@ -136,13 +190,20 @@ public class O365Connector implements PoolableConnector, CreateOp, DeleteOp, Res
      */
     public Uid create(final ObjectClass objectClass, final Set<Attribute> createAttributes,
             final OperationOptions options) {
+        return time("create", new Operation<Uid>() {
+            Uid run() {
+                return doCreate(objectClass, createAttributes, options);
+            }
+        });
+    }
+
+    private Uid doCreate(final ObjectClass objectClass, final Set<Attribute> createAttributes,
+            final OperationOptions options) {
         if (ObjectClass.ACCOUNT.equals(objectClass) || ObjectClass.GROUP.equals(objectClass)) {
             Name name = AttributeUtil.getNameFromAttributes(createAttributes);
             if (name != null) {
                 try {
-                    O365Object object = objectClass.equals(ObjectClass.ACCOUNT)
-                            ? new CreateUser(createAttributes)
-                            : new Group(createAttributes);
+                    O365Object object = newObject(objectClass, createAttributes);
                     O365Object created = client.createObject(objectClass, object);
                     String field = objectClass.equals(ObjectClass.ACCOUNT)
                             ? O365Configuration.FIELD_ACCOUNT_NAME
@@ -167,6 +228,15 @@ public class O365Connector implements PoolableConnector, CreateOp, DeleteOp, Res
      * {@inheritDoc}
      */
     public void delete(final ObjectClass objectClass, final Uid uid, final OperationOptions options) {
+        time("delete", new Operation<Void>() {
+            Void run() {
+                doDelete(objectClass, uid, options);
+                return null;
+            }
+        });
+    }
+
+    private void doDelete(final ObjectClass objectClass, final Uid uid, final OperationOptions options) {
         if (ObjectClass.ACCOUNT.equals(objectClass) || ObjectClass.GROUP.equals(objectClass)) {
             try {
                 client.deleteObject(objectClass, uid.getUidValue());
@@ -196,69 +266,218 @@ public class O365Connector implements PoolableConnector, CreateOp, DeleteOp, Res
     /**
      * {@inheritDoc}
      */
-    public void executeQuery(ObjectClass objectClass, Filter query, ResultsHandler handler,
+    public void executeQuery(final ObjectClass objectClass, final Filter query, final ResultsHandler handler,
+            final OperationOptions options) {
+        time("search", new Operation<Void>() {
+            Void run() {
+                doExecuteQuery(objectClass, query, handler, options);
+                return null;
+            }
+        });
+    }
+
+    private void doExecuteQuery(ObjectClass objectClass, Filter query, ResultsHandler handler,
             OperationOptions options) {
         int limit = options == null || options.getPageSize() == null ? -1 : options.getPageSize();
         // O365 does not support offset ($skip) despite the documentation
         //int offset = options == null || options.getPagedResultsOffset() == null ? -1 : options.getPagedResultsOffset();
         String cookie = options == null ? null : options.getPagedResultsCookie();
 
-        FilterTranslator<String> filter = new O365FilterVisitor(configuration, objectClass);
-        String o365query = query == null ? null : filter.translate(query).get(0);
-        Office365Client pagedClient = client.withPaging(limit, cookie);
-        for (O365Object object : pagedClient.getObjects(objectClass, o365query)) {
-            Set<Attribute> attributes = object.toAttributes();
-            if (objectClass.equals(ObjectClass.ACCOUNT)) {
-                Attribute uidAttr = AttributeUtil.find(O365Configuration.FIELD_ACCOUNT_UID, attributes);
-                Attribute nameAttr = AttributeUtil.find(O365Configuration.FIELD_ACCOUNT_NAME, attributes);
-                if (uidAttr != null) {
-                    attributes.add(uidAttr);
+        ObjectClassSchema schema = getObjectClassSchema(objectClass);
+
+        List<String> uids = cookie == null ? O365FilterSplitter.getUids(query) : null;
+        if (uids != null) {
+            // Read the objects by id, a single one directly and several ones in batches
+            O365Projection projection = new O365Projection(client, objectClass, schema,
+                    options == null ? null : options.getAttributesToGet(), null, Collections.<String>emptySet());
+            List<O365Object> objects;
+            if (uids.size() == 1) {
+                O365Object object = client.findObject(objectClass, uids.get(0), projection.getSelect());
+                objects = object == null
+                        ? Collections.<O365Object>emptyList()
+                        : Collections.singletonList(object);
+            } else {
+                objects = client.getObjectsByIds(objectClass, uids);
+            }
+            for (O365Object object : objects) {
+                ConnectorObject obj = projection.apply(object);
+                if (obj != null && !handler.handle(obj)) {
+                    // Stop iterating because the handler stopped processing
+                    break;
                 }
-                if (nameAttr != null) {
-                    attributes.add(nameAttr);
+            }
+            return;
+        }
+
+        // Let Graph evaluate what it can of the filter and evaluate the rest on the results
+        O365FilterSplitter splitter = new O365FilterSplitter(query, schema.getFilterableProperties());
+        FilterTranslator<String> filter = new O365FilterVisitor(configuration, objectClass);
+        String o365query = splitter.getPushed() == null ? null : filter.translate(splitter.getPushed()).get(0);
+
+        // Only $select the requested attributes
+        O365Projection projection = new O365Projection(client, objectClass, schema,
+                options == null ? null : options.getAttributesToGet(),
+                splitter.getResidual(), splitter.getResidualAttributes());
+
+        if (limit < 0 && cookie == null) {
+            // No paging requested: stream every page, prefetching the next one meanwhile
+            boolean resume = options != null && options.getOptions() != null
+                    && Boolean.TRUE.equals(options.getOptions().get(OP_RESUME));
+            O365Partitions partitions = null;
+            PagedResults<O365Object> results;
+            if (configuration.getEnumerationPartitions() > 1) {
+                // Walk ranges of names concurrently, their pages arrive in no particular order
+                partitions = new O365Partitions(splitter.getPushed(), configuration.getEnumerationPartitions());
+                List<String> o365queries = new ArrayList<String>();
+                for (Filter partition : partitions.getFilters()) {
+                    o365queries.add(filter.translate(partition).get(0));
                 }
-            } else if (objectClass.equals(ObjectClass.GROUP)) {
-                Attribute uidAttr = AttributeUtil.find(O365Configuration.FIELD_GROUP_ID, attributes);
-                if (uidAttr != null) {
-                    attributes.add(uidAttr);
-                    attributes.add(AttributeBuilder.build(Name.NAME, uidAttr.getValue().get(0)));
+                results = client.streamObjects(objectClass, o365queries, projection.getSelect(),
+                        configuration.getEnumerationThreads(), resume);
+            } else {
+                results = client.streamObjects(objectClass, Collections.singletonList(o365query),
+                        projection.getSelect(), 1, resume);
+            }
+            try {
+                Page<O365Object> page;
+                pages:
+                while ((page = results.nextPage()) != null) {
+                    for (O365Object object : page.getObjects()) {
+                        ConnectorObject obj = projection.apply(object);
+                        if (obj != null && partitions != null && partitions.isDuplicate(obj)) {
+                            continue;
+                        }
+                        if (obj != null && !handler.handle(obj)) {
+                            // Stop iterating because the handler stopped processing, the
+                            // next search starts over rather than resuming from here
+                            results.discardCheckpoints();
+                            break pages;
+                        }
+                    }
                 }
+            } finally {
+                results.close();
             }
+            return;
+        }
 
-            ConnectorObject obj = new ConnectorObject(objectClass, attributes);
-            if (!handler.handle(obj)) {
+        // The residual filter may leave fewer objects than the page size in a page
+        Page<O365Object> page = client.getPage(objectClass, o365query, projection.getSelect(), limit, cookie);
+        for (O365Object object : page.getObjects()) {
+            ConnectorObject obj = projection.apply(object);
+            if (obj != null && !handler.handle(obj)) {
                 // Stop iterating because the handler stopped processing
                 break;
             }
         }
 
         // Pass back the paging cookie, if any
-        if (pagedClient.getSkipToken() != null && handler instanceof SearchResultsHandler) {
-            ((SearchResultsHandler) handler).handleResult(new SearchResult(pagedClient.getSkipToken(), 0));
+        if (page.getSkipToken() != null && handler instanceof SearchResultsHandler) {
+            ((SearchResultsHandler) handler).handleResult(new SearchResult(page.getSkipToken(), 0));
         }
     }
 
     /**
      * {@inheritDoc}
      */
-    public void sync(ObjectClass objectClass, SyncToken token, SyncResultsHandler handler,
+    public void sync(final ObjectClass objectClass, final SyncToken token, final SyncResultsHandler handler,
+            final OperationOptions options) {
+        time("sync", new Operation<Void>() {
+            Void run() {
+                doSync(objectClass, token, handler, options);
+                return null;
+            }
+        });
+    }
+
+    private void doSync(ObjectClass objectClass, SyncToken token, SyncResultsHandler handler,
             final OperationOptions options) {
-        logger.warn("Sync is not supported");
-        throw new UnsupportedOperationException("Sync is not supported");
+        if (!ObjectClass.ACCOUNT.equals(objectClass) && !ObjectClass.GROUP.equals(objectClass)) {
+            logger.warn("Sync of type {0} is not supported", objectClass.getObjectClassValue());
+            throw new UnsupportedOperationException("Sync of type "
+                    + objectClass.getObjectClassValue() + " is not supported");
+        }
+        ObjectClassSchema schema = getObjectClassSchema(objectClass);
+        O365Projection projection = new O365Projection(client, objectClass, schema,
+                options == null ? null : options.getAttributesToGet(), null, Collections.<String>emptySet());
+
+        // The delta link keeps the selection of the first query, which always holds the Name
+        // property so that every change can be returned as it is read
+        List<String> select = projection.getSelect() != null
+                ? projection.getSelect()
+                : schema.getSelectableProperties();
+        String deltaLink = null;
+        PagedResults<Delta> results = client.streamChanges(objectClass,
+                token == null ? null : (String) token.getValue(), select);
+        try {
+            Page<Delta> page;
+            while ((page = results.nextPage()) != null) {
+                // Resuming from a page replays it, only the last page's changes are past the delta link
+                deltaLink = page.getDeltaLink();
+                SyncToken pageToken = new SyncToken(deltaLink != null ? deltaLink : page.getLink());
+                for (Delta delta : page.getObjects()) {
+                    SyncDeltaBuilder builder = new SyncDeltaBuilder()
+                            .setToken(pageToken)
+                            .setObjectClass(objectClass);
+                    if (delta.isRemoved()) {
+                        builder.setDeltaType(SyncDeltaType.DELETE)
+                                .setUid(new Uid(delta.getId()));
+                    } else {
+                        // Only the properties present in the change are returned
+                        builder.setDeltaType(SyncDeltaType.CREATE_OR_UPDATE)
+                                .setObject(projection.apply(delta.getObject(), delta.getProperties()));
+                    }
+                    if (!handler.handle(builder.build())) {
+                        // Stop iterating because the handler stopped processing
+                        return;
+                    }
+                }
+            }
+        } finally {
+            results.close();
+        }
+
+        // Pass back the delta link even if there were no changes
+        if (deltaLink != null && handler instanceof SyncTokenResultsHandler) {
+            ((SyncTokenResultsHandler) handler).handleResult(new SyncToken(deltaLink));
+        }
     }
 
     /**
      * {@inheritDoc}
      */
-    public SyncToken getLatestSyncToken(ObjectClass objectClass) {
-        logger.warn("Sync is not supported");
-        throw new UnsupportedOperationException("Sync is not supported");
+    public SyncToken getLatestSyncToken(final ObjectClass objectClass) {
+        return time("getLatestSyncToken", new Operation<SyncToken>() {
+            SyncToken run() {
+                return doGetLatestSyncToken(objectClass);
+            }
+        });
+    }
+
+    private SyncToken doGetLatestSyncToken(ObjectClass objectClass) {
+        if (!ObjectClass.ACCOUNT.equals(objectClass) && !ObjectClass.GROUP.equals(objectClass)) {
+            logger.warn("Sync of type {0} is not supported", objectClass.getObjectClassValue());
+            throw new UnsupportedOperationException("Sync of type "
+                    + objectClass.getObjectClassValue() + " is not supported");
+        }
+        ObjectClassSchema schema = getObjectClassSchema(objectClass);
+        // Delta queries keep the selection of the query that returned their link: select every property
+        return new SyncToken(client.getLatestDeltaLink(objectClass, schema.getSelectableProperties()));
     }
 
     /**
      * {@inheritDoc}
      */
     public void test() {
+        time("test", new Operation<Void>() {
+            Void run() {
+                doTest();
+                return null;
+            }
+        });
+    }
+
+    private void doTest() {
         try {
             client.testConnection();
         } catch (Exception e) {
@@ -271,52 +490,102 @@ public class O365Connector implements PoolableConnector, CreateOp, DeleteOp, Res
      * {@inheritDoc}
      */
     public Schema schema() {
-        if (null == schema) {
-            final SchemaBuilder builder = new SchemaBuilder(O365Connector.class);
-
-            ObjectClassInfoBuilder infoBuilder = new ObjectClassInfoBuilder();
-            infoBuilder.setType(ObjectClass.ACCOUNT.getObjectClassValue());
-            infoBuilder.addAttributeInfo(Name.INFO);
-            // TODO: For want of Java8 the addSchema() method is non-static
-            new CreateUser(new HashSet<Attribute>()).addSchema(infoBuilder);
-            builder.defineObjectClass(infoBuilder.build());
-
-            infoBuilder = new ObjectClassInfoBuilder();
-            infoBuilder.setType(ObjectClass.GROUP.getObjectClassValue());
-            infoBuilder.addAttributeInfo(Name.INFO);
-            // TODO: For want of Java8 the addSchema() method is non-static
-            new Group(new HashSet<Attribute>()).addSchema(infoBuilder);
-            builder.defineObjectClass(infoBuilder.build());
-
-            // Operation Options
-            builder.defineOperationOption(OperationOptionInfoBuilder.buildPageSize(), SearchOp.class);
-            builder.defineOperationOption(OperationOptionInfoBuilder.buildPagedResultsCookie(), SearchOp.class);
-
-            schema = builder.build();
+        if (configuration.getSchemaDiscovery()) {
+            return buildSchema(getObjectClassSchema(ObjectClass.ACCOUNT), getObjectClassSchema(ObjectClass.GROUP));
         }
-        return schema;
+        return SchemaHolder.SCHEMA;
+    }
+
+    /**
+     * Return the schema of an object class, discovered from the tenant if schema discovery
+     * is enabled
+     *
+     * @param objectClass the object class
+     * @return the schema, or null if the object class is not supported
+     */
+    private ObjectClassSchema getObjectClassSchema(ObjectClass objectClass) {
+        if (configuration.getSchemaDiscovery()) {
+            return SchemaDiscovery.getSchemas(configuration, client).get(objectClass);
+        }
+        return ObjectClassSchema.of(objectClass);
+    }
+
+    /**
+     * Build the object to create. Attributes found by schema discovery have no field, they
+     * are only carried by the discovery types.
+     *
+     * @param objectClass the object class
+     * @param attrs the Attributes of the object
+     * @return the object
+     */
+    private O365Object newObject(ObjectClass objectClass, Set<Attribute> attrs) {
+        Map<String, Object> additional = new LinkedHashMap<String, Object>();
+        if (configuration.getSchemaDiscovery()) {
+            ObjectClassSchema schema = getObjectClassSchema(objectClass);
+            for (Attribute attr : attrs) {
+                if (schema.isAdditional(attr.getName())) {
+                    additional.put(attr.getName(), schema.getAttribute(attr.getName()).multivalued
+                            ? attr.getValue()
+                            : AttributeUtil.getSingleValue(attr));
+                }
+            }
+        }
+        if (objectClass.equals(ObjectClass.ACCOUNT)) {
+            return additional.isEmpty() ? new CreateUser(attrs) : new DiscoveredUser(attrs, additional);
+        }
+        return additional.isEmpty() ? new Group(attrs) : new DiscoveredGroup(attrs, additional);
+    }
+
+    private static Schema buildSchema(ObjectClassSchema account, ObjectClassSchema group) {
+        final SchemaBuilder builder = new SchemaBuilder(O365Connector.class);
+        builder.defineObjectClass(account.getObjectClassInfo());
+        builder.defineObjectClass(group.getObjectClassInfo());
+
+        // Operation Options
+        builder.defineOperationOption(OperationOptionInfoBuilder.buildPageSize(), SearchOp.class);
+        builder.defineOperationOption(OperationOptionInfoBuilder.buildPagedResultsCookie(), SearchOp.class);
+        builder.defineOperationOption(OperationOptionInfoBuilder.build(OP_RESUME, Boolean.class), SearchOp.class);
+
+        return builder.build();
+    }
+
+    /**
+     * Holds the built-in Schema, built once per JVM on first use and shared by every connector instance.
+     */
+    private static final class SchemaHolder {
+        static final Schema SCHEMA = buildSchema(ObjectClassSchema.ACCOUNT, ObjectClassSchema.GROUP);
     }
 
     /**
      * {@inheritDoc}
      */
-    public Uid update(ObjectClass objectClass, Uid uid, Set<Attribute> replaceAttributes,
+    public Uid update(final ObjectClass objectClass, final Uid uid, final Set<Attribute> replaceAttributes,
+            final OperationOptions options) {
+        return time("update", new Operation<Uid>() {
+            Uid run() {
+                return doUpdate(objectClass, uid, replaceAttributes, options);
+            }
+        });
+    }
+
+    private Uid doUpdate(ObjectClass objectClass, Uid uid, Set<Attribute> replaceAttributes,
             OperationOptions options) {
         if (ObjectClass.ACCOUNT.equals(objectClass) || ObjectClass.GROUP.equals(objectClass)) {
-            Name name = AttributeUtil.getNameFromAttributes(replaceAttributes);
-            if (name != null) {
-                try {
-                    O365Object object = objectClass.equals(ObjectClass.ACCOUNT)
-                            ? new CreateUser(replaceAttributes)
-                            : new Group(replaceAttributes);
-                    client.updateObject(objectClass, uid.getUidValue(), object);
-                    return uid;
-                } catch (Exception e) {
-                    logger.error(e, "Failed to update {0} object: {1}", objectClass.toString(), name);
-                    throw new ConnectorException("Failed to update " + objectClass.toString() + " object: " + name, e);
+            ObjectClassSchema schema = getObjectClassSchema(objectClass);
+            // Only send the supplied attributes, Graph leaves the other properties untouched
+            Map<String, Object> changes = schema.getChanges(replaceAttributes,
+                    objectClass.equals(ObjectClass.ACCOUNT)
+                            ? O365Configuration.FIELD_ACCOUNT_NAME
+                            : O365Configuration.FIELD_GROUP_NAME);
+            try {
+                if (!changes.isEmpty()) {
+                    client.updateObject(objectClass, uid.getUidValue(), changes);
                 }
-            } else {
-                throw new InvalidAttributeValueException("Name attribute is required");
+                return uid;
+            } catch (Exception e) {
+                logger.error(e, "Failed to update {0} object: {1}", objectClass.toString(), uid.getUidValue());
+                throw new ConnectorException("Failed to update " + objectClass.toString() + " object: "
+                        + uid.getUidValue(), e);
             }
         } else {
             logger.warn("Update of type {0} is not supported", objectClass.getObjectClassValue());
@@ -324,4 +593,65 @@ public class O365Connector implements PoolableConnector, CreateOp, DeleteOp, Res
                     + objectClass.getObjectClassValue() + " is not supported");
         }
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Uid addAttributeValues(final ObjectClass objectClass, final Uid uid,
+            final Set<Attribute> valuesToAdd, final OperationOptions options) {
+        return time("addAttributeValues", new Operation<Uid>() {
+            Uid run() {
+                return doAddAttributeValues(objectClass, uid, valuesToAdd, options);
+            }
+        });
+    }
+
+    private Uid doAddAttributeValues(ObjectClass objectClass, Uid uid, Set<Attribute> valuesToAdd,
+            OperationOptions options) {
+        client.addMembers(uid.getUidValue(), getMemberIds(objectClass, valuesToAdd));
+        return uid;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Uid removeAttributeValues(final ObjectClass objectClass, final Uid uid,
+            final Set<Attribute> valuesToRemove, final OperationOptions options) {
+        return time("removeAttributeValues", new Operation<Uid>() {
+            Uid run() {
+                return doRemoveAttributeValues(objectClass, uid, valuesToRemove, options);
+            }
+        });
+    }
+
+    private Uid doRemoveAttributeValues(ObjectClass objectClass, Uid uid, Set<Attribute> valuesToRemove,
+            OperationOptions options) {
+        client.removeMembers(uid.getUidValue(), getMemberIds(objectClass, valuesToRemove));
+        return uid;
+    }
+
+    /**
+     * Return the member ids held by the attributes of an attribute value update, the only
+     * values that can be added or removed.
+     */
+    private List<String> getMemberIds(ObjectClass objectClass, Set<Attribute> attributes) {
+        if (!ObjectClass.GROUP.equals(objectClass)) {
+            logger.warn("Updating attribute values of type {0} is not supported", objectClass.getObjectClassValue());
+            throw new UnsupportedOperationException("Updating attribute values of type "
+                    + objectClass.getObjectClassValue() + " is not supported");
+        }
+        List<String> memberIds = new ArrayList<String>();
+        for (Attribute attr : attributes) {
+            if (!attr.getName().equals(O365Configuration.FIELD_GROUP_MEMBERS)) {
+                throw new InvalidAttributeValueException("Values of " + attr.getName()
+                        + " cannot be added or removed, only " + O365Configuration.FIELD_GROUP_MEMBERS);
+            }
+            if (attr.getValue() != null) {
+                for (Object value : attr.getValue()) {
+                    memberIds.add(String.valueOf(value));
+                }
+            }
+        }
+        return memberIds;
+    }
 }
@@ -0,0 +1,196 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365;
+
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.AndFilter;
+import org.identityconnectors.framework.common.objects.filter.AttributeFilter;
+import org.identityconnectors.framework.common.objects.filter.CompositeFilter;
+import org.identityconnectors.framework.common.objects.filter.EqualsFilter;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanFilter;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.NotFilter;
+import org.identityconnectors.framework.common.objects.filter.OrFilter;
+import org.identityconnectors.framework.common.objects.filter.StartsWithFilter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits an ICF filter into the largest part Graph can evaluate in a $filter and a residual
+ * that has to be evaluated on the returned objects.
+ *
+ * Both parts are ANDed together: an object matches the original filter when Graph returns it
+ * for the pushed part and it is accepted by the residual. OR and NOT branches are only pushed
+ * down when they can be pushed down as a whole, otherwise they are evaluated locally.
+ */
+public class O365FilterSplitter {
+
+    private final Set<String> filterable;
+
+    private Filter pushed;
+    private Filter residual;
+    private final Set<String> residualAttributes = new HashSet<String>();
+
+    /**
+     * Split a filter
+     *
+     * @param filter the filter to split
+     * @param filterable the properties Graph can filter on, in addition to __UID__ and __NAME__
+     */
+    public O365FilterSplitter(Filter filter, Collection<String> filterable) {
+        this.filterable = new HashSet<String>(filterable);
+        this.filterable.add(Uid.NAME);
+        this.filterable.add(Name.NAME);
+        if (filter != null) {
+            split(filter);
+        }
+    }
+
+    /**
+     * Return the part of the filter to send to Graph
+     *
+     * @return the pushed down filter, or null to query every object
+     */
+    public Filter getPushed() {
+        return pushed;
+    }
+
+    /**
+     * Return the part of the filter to evaluate on the returned objects
+     *
+     * @return the residual filter, or null if Graph evaluates the whole filter
+     */
+    public Filter getResidual() {
+        return residual;
+    }
+
+    /**
+     * Return the attributes the residual filter reads, which must be read along with the
+     * requested attributes
+     *
+     * @return the names of the attributes in the residual filter
+     */
+    public Set<String> getResidualAttributes() {
+        return residualAttributes;
+    }
+
+    /**
+     * Return the ids a filter looks objects up by, when it is a Uid equality or a disjunction
+     * of them. Such filters are better served by reading the objects by id than by a query.
+     *
+     * @param filter the filter
+     * @return the distinct ids, or null if the filter has another shape
+     */
+    public static List<String> getUids(Filter filter) {
+        Set<String> uids = new LinkedHashSet<String>();
+        return filter != null && collectUids(filter, uids) ? new ArrayList<String>(uids) : null;
+    }
+
+    private static boolean collectUids(Filter filter, Set<String> uids) {
+        if (filter instanceof OrFilter) {
+            return collectUids(((OrFilter) filter).getLeft(), uids)
+                    && collectUids(((OrFilter) filter).getRight(), uids);
+        }
+        if (filter instanceof EqualsFilter && ((EqualsFilter) filter).getAttribute().is(Uid.NAME)) {
+            List<Object> values = ((EqualsFilter) filter).getAttribute().getValue();
+            if (values != null && values.size() == 1 && values.get(0) instanceof String) {
+                uids.add((String) values.get(0));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void split(Filter filter) {
+        if (filter instanceof AndFilter) {
+            split(((AndFilter) filter).getLeft());
+            split(((AndFilter) filter).getRight());
+        } else if (filter instanceof GreaterThanFilter && isPushableOperand((AttributeFilter) filter, false)) {
+            // Graph compares with ge and le only: push the inclusive bound, drop the bound itself locally
+            push(new GreaterThanOrEqualFilter(((GreaterThanFilter) filter).getAttribute()));
+            keep(filter);
+        } else if (filter instanceof LessThanFilter && isPushableOperand((AttributeFilter) filter, false)) {
+            push(new LessThanOrEqualFilter(((LessThanFilter) filter).getAttribute()));
+            keep(filter);
+        } else if (isPushable(filter)) {
+            push(filter);
+        } else {
+            keep(filter);
+        }
+    }
+
+    private void push(Filter filter) {
+        pushed = pushed == null ? filter : new AndFilter(pushed, filter);
+    }
+
+    private void keep(Filter filter) {
+        residual = residual == null ? filter : new AndFilter(residual, filter);
+        collectAttributes(filter);
+    }
+
+    private boolean isPushable(Filter filter) {
+        if (filter instanceof AndFilter || filter instanceof OrFilter) {
+            // Below an OR, gt and lt cannot be rewritten and nothing can be left to the residual
+            CompositeFilter composite = (CompositeFilter) filter;
+            return isPushable(composite.getLeft()) && isPushable(composite.getRight());
+        }
+        if (!(filter instanceof EqualsFilter
+                || filter instanceof StartsWithFilter
+                || filter instanceof GreaterThanOrEqualFilter
+                || filter instanceof LessThanOrEqualFilter)) {
+            // NOT, gt, lt, contains, endsWith and containsAllValues need Graph advanced queries
+            return false;
+        }
+        return isPushableOperand((AttributeFilter) filter, filter instanceof EqualsFilter);
+    }
+
+    private boolean isPushableOperand(AttributeFilter filter, boolean equality) {
+        Attribute attribute = filter.getAttribute();
+        if (!filterable.contains(attribute.getName())
+                || (attribute.getName().equals(Uid.NAME) && !equality)) {
+            // Graph only looks objects up by id with eq
+            return false;
+        }
+        List<Object> values = attribute.getValue();
+        if (values == null || values.size() != 1 || values.get(0) == null) {
+            return false;
+        }
+        Object value = values.get(0);
+        // Booleans can only be compared for equality
+        return value instanceof String || (value instanceof Boolean && equality);
+    }
+
+    private void collectAttributes(Filter filter) {
+        if (filter instanceof CompositeFilter) {
+            collectAttributes(((CompositeFilter) filter).getLeft());
+            collectAttributes(((CompositeFilter) filter).getRight());
+        } else if (filter instanceof NotFilter) {
+            collectAttributes(((NotFilter) filter).getFilter());
+        } else if (filter instanceof AttributeFilter) {
+            residualAttributes.add(((AttributeFilter) filter).getAttribute().getName());
+        }
+    }
+}
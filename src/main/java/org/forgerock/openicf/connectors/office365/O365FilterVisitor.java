@@ -67,6 +67,17 @@ public class O365FilterVisitor extends AbstractFilterTranslator<String> {
         return name;
     }
 
+    /**
+     * Format a filter value as an OData literal, quoting and escaping strings
+     */
+    private String getValue(Attribute attr) {
+        Object value = attr.getValue().get(0);
+        if (value instanceof Boolean || value instanceof Number) {
+            return value.toString();
+        }
+        return "'" + String.valueOf(value).replace("'", "''") + "'";
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -105,8 +116,8 @@ public class O365FilterVisitor extends AbstractFilterTranslator<String> {
      */
     @Override
     protected String createEqualsExpression(final EqualsFilter filter, boolean not) {
-        String fltr = " " + getAttributeName(filter.getAttribute()) + " eq '" + filter.getAttribute().getValue().get(0) + "'";
-        return not ? "not (" + filter + ") " : fltr + " ";
+        String fltr = " " + getAttributeName(filter.getAttribute()) + " eq " + getValue(filter.getAttribute());
+        return not ? "not (" + fltr.trim() + ") " : fltr + " ";
     }
 
     /**
@@ -118,7 +129,7 @@ public class O365FilterVisitor extends AbstractFilterTranslator<String> {
         String fltr = createAndExpression(createGreaterThanOrEqualExpression(
                 new GreaterThanOrEqualFilter(filter.getAttribute()), false),
                 createEqualsExpression(new EqualsFilter(filter.getAttribute()), true));
-        return not ? "not (" + filter + ") " : fltr + " ";
+        return not ? "not (" + fltr.trim() + ") " : fltr + " ";
     }
 
     /**
@@ -127,8 +138,8 @@ public class O365FilterVisitor extends AbstractFilterTranslator<String> {
     @Override
     protected String createGreaterThanOrEqualExpression(final GreaterThanOrEqualFilter filter,
             boolean not) {
-        String fltr = " " + getAttributeName(filter.getAttribute()) + " ge '" + filter.getAttribute().getValue().get(0) + "'";
-        return not ? "not (" + filter + ") " : fltr + " ";
+        String fltr = " " + getAttributeName(filter.getAttribute()) + " ge " + getValue(filter.getAttribute());
+        return not ? "not (" + fltr.trim() + ") " : fltr + " ";
     }
 
     /**
@@ -140,7 +151,7 @@ public class O365FilterVisitor extends AbstractFilterTranslator<String> {
         String fltr = createAndExpression(createLessThanOrEqualExpression(
                 new LessThanOrEqualFilter(filter.getAttribute()), false),
                 createEqualsExpression(new EqualsFilter(filter.getAttribute()), true));
-        return not ? "not (" + filter + ") " : fltr + " ";
+        return not ? "not (" + fltr.trim() + ") " : fltr + " ";
     }
 
     /**
@@ -148,8 +159,8 @@ public class O365FilterVisitor extends AbstractFilterTranslator<String> {
      */
     @Override
     protected String createLessThanOrEqualExpression(final LessThanOrEqualFilter filter, boolean not) {
-        String fltr = " " + getAttributeName(filter.getAttribute()) + " le '" + filter.getAttribute().getValue().get(0) + "'";
-        return not ? "not (" + filter + ") " : fltr + " ";
+        String fltr = " " + getAttributeName(filter.getAttribute()) + " le " + getValue(filter.getAttribute());
+        return not ? "not (" + fltr.trim() + ") " : fltr + " ";
     }
 
     /**
@@ -165,8 +176,8 @@ public class O365FilterVisitor extends AbstractFilterTranslator<String> {
      */
     @Override
     protected String createStartsWithExpression(final StartsWithFilter filter, boolean not) {
-        String fltr = "startsWith(" + getAttributeName(filter.getAttribute()) + ", '"
-                + filter.getAttribute().getValue().get(0) + "') ";
-        return not ? "not (" + filter + ") " : fltr + " ";
+        String fltr = "startsWith(" + getAttributeName(filter.getAttribute()) + ", "
+                + getValue(filter.getAttribute()) + ") ";
+        return not ? "not (" + fltr.trim() + ") " : fltr + " ";
     }
 }
@@ -0,0 +1,94 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365;
+
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits a full enumeration into ranges of names that can be walked concurrently.
+ *
+ * The ranges are bounded by single characters with ge and le, which Graph evaluates on user
+ * principal names and group display names. The first and last ranges are open-ended, so the
+ * ranges cover every name whatever the server's collation. Adjacent ranges share their bound,
+ * so an object named exactly like a bound is returned twice: {@link #isDuplicate} drops the
+ * second copy.
+ */
+class O365Partitions {
+
+    /** Characters names are split on, in the order of the ranges */
+    private static final String BOUNDS = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+    private final List<Filter> filters = new ArrayList<Filter>();
+    private final Set<String> bounds = new HashSet<String>();
+    private final Set<String> seen = new HashSet<String>();
+
+    /**
+     * Split a query into name ranges
+     *
+     * @param query the filter Graph evaluates, null to enumerate every object
+     * @param count the number of ranges, at most one per bounding character
+     */
+    O365Partitions(Filter query, int count) {
+        count = Math.max(1, Math.min(count, BOUNDS.length()));
+        String lower = null;
+        for (int i = 1; i <= count; i++) {
+            String upper = i < count ? String.valueOf(BOUNDS.charAt(i * BOUNDS.length() / count)) : null;
+            Filter range = null;
+            if (lower != null) {
+                range = FilterBuilder.greaterThanOrEqualTo(AttributeBuilder.build(Name.NAME, lower));
+            }
+            if (upper != null) {
+                Filter below = FilterBuilder.lessThanOrEqualTo(AttributeBuilder.build(Name.NAME, upper));
+                range = range == null ? below : FilterBuilder.and(range, below);
+                bounds.add(upper);
+            }
+            if (query != null) {
+                range = range == null ? query : FilterBuilder.and(query, range);
+            }
+            filters.add(range);
+            lower = upper;
+        }
+    }
+
+    /**
+     * Return the filters of the ranges, a single null filter when the query is not split
+     */
+    List<Filter> getFilters() {
+        return filters;
+    }
+
+    /**
+     * Tell whether an object was already returned by the range below its own. Only objects
+     * named like a bound can be, so only those are remembered.
+     *
+     * @param object an object returned by one of the ranges
+     * @return true if the object was already returned
+     */
+    boolean isDuplicate(ConnectorObject object) {
+        String name = object.getName().getNameValue();
+        return name != null && bounds.contains(name.toLowerCase())
+                && !seen.add(object.getUid().getUidValue());
+    }
+}
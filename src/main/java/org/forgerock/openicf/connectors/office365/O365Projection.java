@@ -0,0 +1,191 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365;
+
+import org.forgerock.openicf.connectors.office365.client.Office365Client;
+import org.forgerock.openicf.connectors.office365.client.Page;
+import org.forgerock.openicf.connectors.office365.client.PagedResults;
+import org.forgerock.openicf.connectors.office365.client.objects.O365Object;
+import org.forgerock.openicf.connectors.office365.client.objects.ObjectClassSchema;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.AttributeUtil;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Turns the objects read from Graph into the ConnectorObjects returned by a query: decides which
+ * properties to $select, evaluates the residual part of the query filter and keeps only the
+ * requested attributes.
+ */
+class O365Projection {
+
+    private final ObjectClass objectClass;
+    private final String uidField;
+    private final String nameField;
+
+    /* Requested properties, null for all of them */
+    private final Set<String> requested;
+
+    /* Properties to read, null for all of them */
+    private final Set<String> properties;
+
+    private final List<String> select;
+
+    private final Filter residual;
+
+    /* Client reading the members of groups, when requested */
+    private final Office365Client client;
+
+    /**
+     * Create the projection of a query
+     *
+     * @param client client reading the members of groups
+     * @param objectClass ObjectClass of the queried objects
+     * @param schema schema of the queried class
+     * @param attributesToGet the requested attributes, or null for the default ones
+     * @param residual filter to evaluate on the objects, or null
+     * @param residualAttributes the attributes read by the residual filter
+     */
+    O365Projection(Office365Client client, ObjectClass objectClass, ObjectClassSchema schema, String[] attributesToGet,
+            Filter residual, Collection<String> residualAttributes) {
+        this.client = client;
+        this.objectClass = objectClass;
+        this.residual = residual;
+        this.uidField = objectClass.equals(ObjectClass.ACCOUNT)
+                ? O365Configuration.FIELD_ACCOUNT_UID
+                : O365Configuration.FIELD_GROUP_ID;
+        // The Name of a group is its id, as it has always been: display names are not unique
+        this.nameField = objectClass.equals(ObjectClass.ACCOUNT)
+                ? O365Configuration.FIELD_ACCOUNT_NAME
+                : O365Configuration.FIELD_GROUP_ID;
+        if (attributesToGet != null) {
+            // __UID__ and __NAME__ map to properties that are always read
+            requested = new HashSet<String>(Arrays.asList(attributesToGet));
+            requested.remove(Uid.NAME);
+            requested.remove(Name.NAME);
+            properties = new HashSet<String>(requested);
+            properties.add(uidField);
+            properties.add(nameField);
+            properties.addAll(residualAttributes);
+            select = schema.getSelectProperties(properties);
+        } else {
+            requested = null;
+            properties = null;
+            select = null;
+        }
+    }
+
+    /**
+     * Return the properties to $select
+     *
+     * @return the properties, or null for all of them
+     */
+    List<String> getSelect() {
+        return select;
+    }
+
+    /**
+     * Build the ConnectorObject of an object read from Graph
+     *
+     * @param object the object
+     * @return the ConnectorObject, or null if the residual filter rejects it
+     */
+    ConnectorObject apply(O365Object object) {
+        return apply(object, null);
+    }
+
+    /**
+     * Build the ConnectorObject of a partial object read from Graph, such as an update
+     * returned by a delta query
+     *
+     * @param object the object
+     * @param present the properties that were read for the object, or null for all of them
+     * @return the ConnectorObject, or null if the residual filter rejects it
+     */
+    ConnectorObject apply(O365Object object, Set<String> present) {
+        Set<String> read = properties;
+        if (present != null) {
+            read = new HashSet<String>(present);
+            if (properties != null) {
+                read.retainAll(properties);
+            }
+        }
+        Set<Attribute> attributes = object.toAttributes(read);
+        Attribute uidAttr = AttributeUtil.find(uidField, attributes);
+        Attribute nameAttr = AttributeUtil.find(nameField, attributes);
+        String uid = uidAttr == null ? null : AttributeUtil.getStringValue(uidAttr);
+        String name = nameAttr == null ? null : AttributeUtil.getStringValue(nameAttr);
+        if (name == null) {
+            name = uid;
+        }
+        if (objectClass.equals(ObjectClass.GROUP) && uid != null
+                && read != null && read.contains(O365Configuration.FIELD_GROUP_MEMBERS)) {
+            // Members are not a property of the group, they are only read when requested
+            attributes.add(readMembers(uid));
+        }
+
+        if (residual != null && !residual.accept(build(uid, name, attributes))) {
+            return null;
+        }
+        if (requested != null) {
+            // The Uid, Name and residual filter properties are always read, but only returned if asked for
+            for (Iterator<Attribute> it = attributes.iterator(); it.hasNext(); ) {
+                if (!requested.contains(it.next().getName())) {
+                    it.remove();
+                }
+            }
+        }
+        return build(uid, name, attributes);
+    }
+
+    /**
+     * Read the members of a group page by page into its members Attribute
+     */
+    private Attribute readMembers(String groupId) {
+        AttributeBuilder members = new AttributeBuilder().setName(O365Configuration.FIELD_GROUP_MEMBERS);
+        PagedResults<String> results = client.streamMemberIds(groupId);
+        try {
+            Page<String> page;
+            while ((page = results.nextPage()) != null) {
+                members.addValue(page.getObjects());
+            }
+        } finally {
+            results.close();
+        }
+        return members.build();
+    }
+
+    private ConnectorObject build(String uid, String name, Set<Attribute> attributes) {
+        return new ConnectorObjectBuilder()
+                .setObjectClass(objectClass)
+                .setUid(uid)
+                .setName(name)
+                .addAttribute(attributes)
+                .build();
+    }
+}
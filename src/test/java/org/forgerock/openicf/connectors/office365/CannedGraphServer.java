@@ -0,0 +1,173 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.identityconnectors.common.security.GuardedString;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process stand-in for the Graph API answering each request with a reply registered for
+ * its method, path and query, and recording the requests it receives.
+ *
+ * Unlike the {@link MockGraphServer} it holds no directory: tests describe the exact pages
+ * and errors Graph returns.
+ */
+final class CannedGraphServer {
+
+    private static final String VERSION_PATH = "/v1.0/";
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final HttpServer server;
+    private final List<Reply> replies = new CopyOnWriteArrayList<Reply>();
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+    CannedGraphServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                CannedGraphServer.this.handle(exchange);
+            }
+        });
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Return the root of the Graph API served, to use as graphEndpoint
+     */
+    String getGraphEndpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + VERSION_PATH;
+    }
+
+    /**
+     * Return a configuration of a connector to this server, holding an access token that does
+     * not expire during the tests
+     *
+     * @param tenant the tenant, unique to the test so that no pool is shared with other tests
+     */
+    O365Configuration newConfiguration(String tenant) {
+        O365Configuration config = new O365Configuration();
+        config.setTenant(tenant + "-" + System.nanoTime());
+        config.setClientId("clientid");
+        config.setClientSecret(new GuardedString("clientsecret".toCharArray()));
+        config.setAccessToken("accesstoken");
+        config.setTokenExpiration(System.currentTimeMillis() / 1000 + 3600);
+        config.setRefreshToken("refreshtoken");
+        config.setGraphEndpoint(getGraphEndpoint());
+        config.setRetryBaseDelay(10);
+        config.validate();
+        return config;
+    }
+
+    /**
+     * Answer the requests of a method and path with a JSON body. The reply registered last
+     * wins among those matching a request.
+     *
+     * @param method the request method
+     * @param path the path below the version root without a trailing slash, as sent, so still
+     *             URL-encoded
+     * @param query a parameter the decoded query must hold, such as $deltatoken=1, or null
+     * @param status the status of the reply
+     * @param body the JSON body of the reply, or null for none
+     */
+    void reply(String method, String path, String query, int status, String body) {
+        replies.add(0, new Reply(method, path, query, status, body));
+    }
+
+    /**
+     * Return the requests received, as the method, the path below the version root and the
+     * decoded query, such as "GET users/delta?$deltatoken=1"
+     */
+    List<String> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<String>(requests);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getRawPath();
+        path = path.startsWith(VERSION_PATH) ? path.substring(VERSION_PATH.length()) : path;
+        // The connector ends the paths of entities with a slash
+        path = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        String query = exchange.getRequestURI().getQuery();
+        requests.add(method + " " + path + (query == null ? "" : "?" + query));
+
+        Reply reply = null;
+        for (Reply candidate : replies) {
+            if (candidate.method.equals(method) && candidate.path.equals(path) && (candidate.query == null
+                    || query != null && ("&" + query + "&").contains("&" + candidate.query + "&"))) {
+                reply = candidate;
+                break;
+            }
+        }
+        if (reply == null) {
+            reply = new Reply(method, path, null, 404,
+                    "{\"error\":{\"code\":\"Request_ResourceNotFound\",\"message\":\"" + path + "\"}}");
+        }
+        try {
+            if (reply.body == null) {
+                exchange.sendResponseHeaders(reply.status, -1);
+            } else {
+                byte[] bytes = reply.body.getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                exchange.sendResponseHeaders(reply.status, bytes.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(bytes);
+                out.close();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static final class Reply {
+        final String method;
+        final String path;
+        final String query;
+        final int status;
+        final String body;
+
+        Reply(String method, String path, String query, int status, String body) {
+            this.method = method;
+            this.path = path;
+            this.query = query;
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.forgerock.openicf.connectors.office365.O365Configuration;
+import org.identityconnectors.common.security.GuardedString;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the liveness window of {@link Office365Client#checkAlive()}.
+ */
+public class CheckAliveTests {
+
+    private final AtomicInteger probes = new AtomicInteger();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private HttpServer server = null;
+
+    @BeforeClass
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/v1.0/users", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                probes.incrementAndGet();
+                byte[] body = "{\"value\":[{\"id\":\"a\"}]}".getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @AfterClass
+    public void stopServer() {
+        if (server != null) {
+            server.stop(0);
+        }
+        executor.shutdownNow();
+    }
+
+    private O365Configuration configuration(long livenessCheckInterval) {
+        O365Configuration configuration = new O365Configuration();
+        // A tenant of its own, so that no other test's success counts
+        configuration.setTenant("alive-" + System.nanoTime());
+        configuration.setClientId("clientid");
+        configuration.setClientSecret(new GuardedString("secret".toCharArray()));
+        configuration.setAccessToken("accesstoken");
+        configuration.setTokenExpiration(System.currentTimeMillis() / 1000 + 3600);
+        configuration.setRefreshToken("refreshtoken");
+        configuration.setGraphEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/v1.0/");
+        configuration.setLivenessCheckInterval(livenessCheckInterval);
+        return configuration;
+    }
+
+    @Test
+    public void recentSuccessSkipsTheProbe() throws Exception {
+        Office365Client client = new Office365Client(configuration(60));
+        try {
+            int before = probes.get();
+            client.checkAlive();
+            Assert.assertEquals(probes.get(), before + 1);
+            client.checkAlive();
+            client.checkAlive();
+            Assert.assertEquals(probes.get(), before + 1);
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void clientsOfATenantShareTheWindow() throws Exception {
+        O365Configuration configuration = configuration(60);
+        Office365Client first = new Office365Client(configuration);
+        Office365Client second = new Office365Client(configuration);
+        try {
+            int before = probes.get();
+            first.checkAlive();
+            second.checkAlive();
+            Assert.assertEquals(probes.get(), before + 1);
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    public void zeroIntervalAlwaysProbes() throws Exception {
+        Office365Client client = new Office365Client(configuration(0));
+        try {
+            int before = probes.get();
+            client.checkAlive();
+            client.checkAlive();
+            Assert.assertEquals(probes.get(), before + 2);
+        } finally {
+            client.close();
+        }
+    }
+}
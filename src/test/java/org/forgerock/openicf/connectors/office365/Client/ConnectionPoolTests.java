@@ -0,0 +1,112 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import org.forgerock.openicf.connectors.office365.O365Configuration;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the keys telling apart the {@link ConnectionPool}s of a tenant, and the resources they
+ * hold.
+ */
+public class ConnectionPoolTests {
+
+    private static O365Configuration configuration(String tenant) {
+        O365Configuration configuration = new O365Configuration();
+        configuration.setTenant(tenant);
+        return configuration;
+    }
+
+    @Test
+    public void sameSettingsShareAPool() {
+        Assert.assertEquals(ConnectionPool.getKey(configuration("contoso")),
+                ConnectionPool.getKey(configuration("contoso")));
+    }
+
+    @Test
+    public void tenantsDoNotShareAPool() {
+        Assert.assertNotEquals(ConnectionPool.getKey(configuration("contoso")),
+                ConnectionPool.getKey(configuration("fabrikam")));
+    }
+
+    @Test
+    public void endpointsDoNotShareAPool() {
+        O365Configuration changed = configuration("contoso");
+        changed.setGraphEndpoint("https://graph.microsoft.us/v1.0/");
+        Assert.assertNotEquals(ConnectionPool.getKey(configuration("contoso")), ConnectionPool.getKey(changed));
+    }
+
+    @Test
+    public void changedLimitsGetANewPool() {
+        O365Configuration changed = configuration("contoso");
+        changed.setReadRequestsPerSecond(10);
+        Assert.assertNotEquals(ConnectionPool.getKey(configuration("contoso")), ConnectionPool.getKey(changed));
+
+        changed = configuration("contoso");
+        changed.setMaxConnectionsPerRoute(50);
+        Assert.assertNotEquals(ConnectionPool.getKey(configuration("contoso")), ConnectionPool.getKey(changed));
+
+        changed = configuration("contoso");
+        changed.setConnectionIdleTimeout(5);
+        Assert.assertNotEquals(ConnectionPool.getKey(configuration("contoso")), ConnectionPool.getKey(changed));
+
+        changed = configuration("contoso");
+        changed.setMaxRetries(1);
+        Assert.assertNotEquals(ConnectionPool.getKey(configuration("contoso")), ConnectionPool.getKey(changed));
+    }
+
+    @Test
+    public void credentialsDoNotChangeThePool() {
+        O365Configuration changed = configuration("contoso");
+        changed.setClientId("another");
+        Assert.assertEquals(ConnectionPool.getKey(configuration("contoso")), ConnectionPool.getKey(changed));
+    }
+
+    @Test
+    public void applicationsDoNotShareCachedObjects() {
+        O365Configuration configuration = configuration("cache-" + System.nanoTime());
+        configuration.setClientId("clientid");
+        configuration.setObjectCacheSize(100);
+        O365Configuration another = configuration(configuration.getTenant());
+        another.setClientId("another");
+        another.setObjectCacheSize(100);
+        ConnectionPool pool = ConnectionPool.acquire(configuration);
+        try {
+            Assert.assertSame(pool.getObjectCache(configuration), pool.getObjectCache(configuration));
+            Assert.assertNotSame(pool.getObjectCache(configuration), pool.getObjectCache(another));
+        } finally {
+            pool.release();
+        }
+    }
+
+    @Test
+    public void successIsTrustedForTheLivenessInterval() throws InterruptedException {
+        ConnectionPool pool = ConnectionPool.acquire(configuration("liveness-" + System.nanoTime()));
+        try {
+            Assert.assertFalse(pool.succeededWithin(60000));
+            pool.markSuccess();
+            Assert.assertTrue(pool.succeededWithin(60000));
+            // An interval of 0 always probes
+            Assert.assertFalse(pool.succeededWithin(0));
+            Thread.sleep(100);
+            Assert.assertFalse(pool.succeededWithin(50));
+            Assert.assertTrue(pool.succeededWithin(60000));
+        } finally {
+            pool.release();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.forgerock.openicf.connectors.office365.client.objects.Group;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Tests the decode of delta query pages by the {@link DeltaReader}.
+ */
+public class DeltaReaderTests {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static Page<Delta> read(String json) throws IOException {
+        return new DeltaReader(mapper, Group.class).read(new ByteArrayInputStream(json.getBytes("UTF-8")));
+    }
+
+    @Test
+    public void readsTheDeltaLinkOfTheLastPage() throws IOException {
+        Page<Delta> page = read("{\"value\":[],"
+                + "\"@odata.deltaLink\":\"https://graph.microsoft.com/v1.0/groups/delta?$deltatoken=abc\"}");
+        Assert.assertNull(page.getNextLink());
+        Assert.assertEquals(page.getDeltaLink(), "https://graph.microsoft.com/v1.0/groups/delta?$deltatoken=abc");
+    }
+
+    @Test
+    public void otherPagesOnlyHaveANextLink() throws IOException {
+        Page<Delta> page = read("{\"@odata.nextLink\":\"https://graph.microsoft.com/v1.0/groups/delta?$skiptoken=1\","
+                + "\"value\":[{\"id\":\"a\",\"displayName\":\"A\"}]}");
+        Assert.assertEquals(page.getNextLink(), "https://graph.microsoft.com/v1.0/groups/delta?$skiptoken=1");
+        Assert.assertNull(page.getDeltaLink());
+    }
+
+    @Test
+    public void updatesRecordTheirProperties() throws IOException {
+        Page<Delta> page = read("{\"value\":[{\"id\":\"a\",\"displayName\":\"A\",\"description\":null}]}");
+        Delta delta = page.getObjects().get(0);
+        Assert.assertFalse(delta.isRemoved());
+        Assert.assertEquals(delta.getId(), "a");
+        Assert.assertEquals(((Group) delta.getObject()).displayName, "A");
+        // A property sent as null was cleared, unlike the properties that were not sent
+        Assert.assertEquals(delta.getProperties(), new HashSet<String>(Arrays.asList("id", "displayName", "description")));
+    }
+
+    @Test
+    public void removalsOnlyHaveAnId() throws IOException {
+        Page<Delta> page = read("{\"value\":[{\"id\":\"a\",\"@removed\":{\"reason\":\"changed\"}},"
+                + "{\"id\":\"b\",\"displayName\":\"B\"}]}");
+        Delta removal = page.getObjects().get(0);
+        Assert.assertTrue(removal.isRemoved());
+        Assert.assertEquals(removal.getId(), "a");
+        Assert.assertNull(removal.getObject());
+        Assert.assertNull(removal.getProperties());
+        Assert.assertFalse(page.getObjects().get(1).isRemoved());
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Tests the coalesced writes of the {@link FileCheckpointStore}.
+ */
+public class FileCheckpointStoreTests {
+
+    private static final long MAX_AGE = 60000;
+
+    /**
+     * Return a file name that is not used yet
+     */
+    private static File newFile() throws IOException {
+        File file = File.createTempFile("o365-checkpoints", ".json");
+        Assert.assertTrue(file.delete());
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Return the checkpoint of a query as read from the file by a new store
+     */
+    private static String read(File file, String query) {
+        return new FileCheckpointStore(file, MAX_AGE).get(query);
+    }
+
+    @Test
+    public void putsAreWrittenTogether() throws Exception {
+        File file = newFile();
+        FileCheckpointStore store = new FileCheckpointStore(file, MAX_AGE, 200);
+        for (int i = 0; i < 10; i++) {
+            store.put("query", "page" + i);
+        }
+        Assert.assertEquals(store.get("query"), "page9");
+        Assert.assertFalse(file.exists());
+        Thread.sleep(600);
+        Assert.assertEquals(read(file, "query"), "page9");
+    }
+
+    @Test
+    public void closeWritesPendingPuts() throws IOException {
+        File file = newFile();
+        FileCheckpointStore store = new FileCheckpointStore(file, MAX_AGE, 60000);
+        store.put("query", "page1");
+        store.close();
+        Assert.assertEquals(read(file, "query"), "page1");
+    }
+
+    @Test
+    public void removeIsWrittenAtOnce() throws IOException {
+        File file = newFile();
+        FileCheckpointStore store = new FileCheckpointStore(file, MAX_AGE, 60000);
+        store.put("query", "page1");
+        store.put("other", "page2");
+        store.remove("query");
+        Assert.assertNull(read(file, "query"));
+        Assert.assertEquals(read(file, "other"), "page2");
+    }
+
+    @Test
+    public void expiredCheckpointsAreIgnored() throws Exception {
+        File file = newFile();
+        FileCheckpointStore store = new FileCheckpointStore(file, 100, 60000);
+        store.put("query", "page1");
+        store.close();
+        Thread.sleep(200);
+        Assert.assertNull(new FileCheckpointStore(file, 100).get("query"));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests the snapshots of a {@link Histogram}.
+ */
+public class HistogramTests {
+
+    @Test
+    public void emptySnapshot() {
+        Distribution snapshot = new Histogram().snapshot("empty", 1);
+        Assert.assertEquals(snapshot.getName(), "empty");
+        Assert.assertEquals(snapshot.getCount(), 0);
+        Assert.assertEquals(snapshot.getMean(), 0.0);
+        Assert.assertEquals(snapshot.getMax(), 0.0);
+        Assert.assertEquals(snapshot.getP99(), 0.0);
+    }
+
+    @Test
+    public void countsMeanAndMax() {
+        Histogram histogram = new Histogram();
+        histogram.record(10);
+        histogram.record(20);
+        histogram.recordError(60);
+        Distribution snapshot = histogram.snapshot("values", 1);
+        Assert.assertEquals(snapshot.getCount(), 3);
+        Assert.assertEquals(snapshot.getErrors(), 1);
+        Assert.assertEquals(snapshot.getMean(), 30.0);
+        Assert.assertEquals(snapshot.getMax(), 60.0);
+    }
+
+    @Test
+    public void percentilesAreWithinAFactorOfTwo() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        Distribution snapshot = histogram.snapshot("values", 1);
+        Assert.assertTrue(snapshot.getP50() >= 500 && snapshot.getP50() < 1000, String.valueOf(snapshot.getP50()));
+        Assert.assertTrue(snapshot.getP95() >= 950 && snapshot.getP95() <= 1000, String.valueOf(snapshot.getP95()));
+        // No percentile exceeds the maximum
+        Assert.assertEquals(snapshot.getP99(), 1000.0);
+    }
+
+    @Test
+    public void negativeValuesAreRecordedAsZero() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        Distribution snapshot = histogram.snapshot("values", 1);
+        Assert.assertEquals(snapshot.getCount(), 1);
+        Assert.assertEquals(snapshot.getMean(), 0.0);
+        Assert.assertEquals(snapshot.getP50(), 0.0);
+    }
+
+    @Test
+    public void snapshotIsScaled() {
+        Histogram histogram = new Histogram();
+        histogram.record(2000);
+        Distribution snapshot = histogram.snapshot("values", 0.001);
+        Assert.assertEquals(snapshot.getMean(), 2.0, 1e-9);
+        Assert.assertEquals(snapshot.getMax(), 2.0, 1e-9);
+    }
+
+    @Test
+    public void concurrentRecordsAreCounted() throws InterruptedException {
+        final Histogram histogram = new Histogram();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            final int offset = i;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        histogram.record(offset * 10000 + j);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Distribution snapshot = histogram.snapshot("values", 1);
+        Assert.assertEquals(snapshot.getCount(), 40000);
+        Assert.assertEquals(snapshot.getMax(), 39999.0);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests reading entity types from a $metadata document with the {@link MetadataReader}.
+ */
+public class MetadataReaderTests {
+
+    private static Map<String, List<MetadataReader.Property>> read(String schema) throws IOException {
+        String document = "<edmx:Edmx xmlns:edmx=\"http://docs.oasis-open.org/odata/ns/edmx\" Version=\"4.0\">"
+                + "<edmx:DataServices><Schema xmlns=\"http://docs.oasis-open.org/odata/ns/edm\""
+                + " Namespace=\"microsoft.graph\">" + schema + "</Schema></edmx:DataServices></edmx:Edmx>";
+        return new MetadataReader().read(new ByteArrayInputStream(document.getBytes("UTF-8")));
+    }
+
+    private static MetadataReader.Property find(List<MetadataReader.Property> properties, String name) {
+        for (MetadataReader.Property property : properties) {
+            if (property.name.equals(name)) {
+                return property;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void inheritsBaseTypeProperties() throws IOException {
+        Map<String, List<MetadataReader.Property>> types = read(
+                "<EntityType Name=\"entity\"><Property Name=\"id\" Type=\"Edm.String\"/></EntityType>"
+                + "<EntityType Name=\"user\" BaseType=\"microsoft.graph.entity\">"
+                + "<Property Name=\"otherMails\" Type=\"Collection(Edm.String)\"/></EntityType>");
+        List<MetadataReader.Property> user = types.get("user");
+        Assert.assertEquals(user.size(), 2);
+        Assert.assertNotNull(find(user, "id"));
+        Assert.assertTrue(find(user, "otherMails").collection);
+        Assert.assertEquals(find(user, "otherMails").type, "Edm.String");
+    }
+
+    @Test
+    public void stopsAtInheritanceCycles() throws IOException {
+        Map<String, List<MetadataReader.Property>> types = read(
+                "<EntityType Name=\"a\" BaseType=\"microsoft.graph.b\"/>"
+                + "<EntityType Name=\"b\" BaseType=\"microsoft.graph.a\"/>"
+                + "<EntityType Name=\"c\" BaseType=\"microsoft.graph.a\">"
+                + "<Property Name=\"name\" Type=\"Edm.String\"/></EntityType>");
+        Assert.assertTrue(types.get("a").isEmpty());
+        Assert.assertEquals(types.get("c").size(), 1);
+    }
+
+    @Test
+    public void mapsCoreAnnotationsOntoWritability() throws IOException {
+        List<MetadataReader.Property> user = read(
+                "<EntityType Name=\"user\">"
+                + "<Property Name=\"createdDateTime\" Type=\"Edm.DateTimeOffset\">"
+                + "<Annotation Term=\"Org.OData.Core.V1.Computed\" Bool=\"true\"/></Property>"
+                + "<Property Name=\"onPremisesSyncEnabled\" Type=\"Edm.Boolean\"/>"
+                + "<Property Name=\"creationType\" Type=\"Edm.String\"/>"
+                + "<Property Name=\"city\" Type=\"Edm.String\"/></EntityType>"
+                + "<Annotations Target=\"microsoft.graph.user/onPremisesSyncEnabled\">"
+                + "<Annotation Term=\"Org.OData.Core.V1.Permissions\""
+                + " EnumMember=\"Org.OData.Core.V1.Permission/Read\"/></Annotations>"
+                + "<Annotations Target=\"microsoft.graph.user/creationType\">"
+                + "<Annotation Term=\"Core.Immutable\" Bool=\"true\"/></Annotations>").get("user");
+        Assert.assertFalse(find(user, "createdDateTime").createable);
+        Assert.assertFalse(find(user, "createdDateTime").updateable);
+        Assert.assertFalse(find(user, "onPremisesSyncEnabled").createable);
+        Assert.assertFalse(find(user, "onPremisesSyncEnabled").updateable);
+        Assert.assertTrue(find(user, "creationType").createable);
+        Assert.assertFalse(find(user, "creationType").updateable);
+        Assert.assertTrue(find(user, "city").createable);
+        Assert.assertTrue(find(user, "city").updateable);
+    }
+}
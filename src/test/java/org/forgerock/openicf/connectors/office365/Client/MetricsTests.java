@@ -0,0 +1,132 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests the recording and the JMX exposure of the {@link Metrics}.
+ */
+public class MetricsTests {
+
+    @Test
+    public void endpointsHideObjectIds() {
+        Assert.assertEquals(Metrics.getEndpoint(URI.create("https://graph.microsoft.com/v1.0/users")),
+                "/v1.0/users");
+        Assert.assertEquals(Metrics.getEndpoint(URI.create(
+                "https://graph.microsoft.com/v1.0/groups/5a1c8a3e-7d54-4b8e-9f60-0b8e3c1e2f11/members/$ref")),
+                "/v1.0/groups/{id}/members/$ref");
+        Assert.assertEquals(Metrics.getEndpoint(URI.create(
+                "https://graph.microsoft.com/v1.0/users/alice@contoso.com/?$select=id")),
+                "/v1.0/users/{id}");
+    }
+
+    @Test
+    public void responsesAreCountedByEndpointAndStatus() {
+        Metrics metrics = new Metrics();
+        long start = System.nanoTime();
+        metrics.recordResponse("GET", URI.create("https://graph.microsoft.com/v1.0/users"), 200, start);
+        metrics.recordResponse("GET", URI.create("https://graph.microsoft.com/v1.0/users"), 429, start);
+        metrics.recordResponse("PATCH", URI.create(
+                "https://graph.microsoft.com/v1.0/users/5a1c8a3e-7d54-4b8e-9f60-0b8e3c1e2f11"), 503, start);
+        metrics.recordResponse("DELETE", URI.create(
+                "https://graph.microsoft.com/v1.0/users/5a1c8a3e-7d54-4b8e-9f60-0b8e3c1e2f11"), 204, start);
+
+        List<Distribution> endpoints = metrics.getEndpoints();
+        Assert.assertEquals(endpoints.size(), 3);
+        // Sorted by name
+        Assert.assertEquals(endpoints.get(0).getName(), "DELETE /v1.0/users/{id}");
+        Assert.assertEquals(endpoints.get(1).getName(), "GET /v1.0/users");
+        Assert.assertEquals(endpoints.get(1).getCount(), 2);
+        Assert.assertEquals(endpoints.get(1).getErrors(), 1);
+        Assert.assertEquals(endpoints.get(2).getErrors(), 1);
+
+        Map<String, Long> statusClasses = metrics.getResponseStatusClasses();
+        Assert.assertEquals(statusClasses.get("2xx"), Long.valueOf(2));
+        Assert.assertEquals(statusClasses.get("4xx"), Long.valueOf(1));
+        Assert.assertEquals(statusClasses.get("5xx"), Long.valueOf(1));
+        Assert.assertEquals(metrics.getThrottledResponses(), 2);
+    }
+
+    @Test
+    public void operationsAreTimed() throws InterruptedException {
+        Metrics metrics = new Metrics();
+        Metrics.Timer timer = metrics.startOperation("search");
+        Thread.sleep(20);
+        timer.stop();
+        timer = metrics.startOperation("create");
+        timer.failed();
+        timer.stop();
+
+        List<Distribution> operations = metrics.getOperations();
+        Assert.assertEquals(operations.size(), 2);
+        Assert.assertEquals(operations.get(0).getName(), "create");
+        Assert.assertEquals(operations.get(0).getErrors(), 1);
+        Assert.assertEquals(operations.get(1).getName(), "search");
+        Assert.assertEquals(operations.get(1).getErrors(), 0);
+        // Reported in milliseconds
+        Assert.assertTrue(operations.get(1).getMax() >= 20 && operations.get(1).getMax() < 1000,
+                operations.get(1).getMax() + "ms");
+    }
+
+    @Test
+    public void countersAreRecorded() {
+        Metrics metrics = new Metrics();
+        metrics.recordRetry();
+        metrics.recordRetry();
+        metrics.recordBytes(100);
+        metrics.recordBytes(24);
+        metrics.recordPageSize(999);
+        metrics.recordPageSize(1);
+        metrics.recordTokenRefresh(System.nanoTime(), true);
+        Assert.assertEquals(metrics.getRetries(), 2);
+        Assert.assertEquals(metrics.getBytesReceived(), 124);
+        Assert.assertEquals(metrics.getPageSizes().getCount(), 2);
+        Assert.assertEquals(metrics.getPageSizes().getMax(), 999.0);
+        Assert.assertEquals(metrics.getTokenRefreshes().getErrors(), 1);
+        Assert.assertEquals(metrics.getRateLimitWaits().getCount(), 0);
+    }
+
+    @Test
+    public void metricsAreExposedWhileRegistered() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.recordRetry();
+        metrics.startOperation("test").stop();
+        metrics.register("metrics.onmicrosoft.com", "0");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("org.forgerock.openicf.connectors.office365:type=Metrics,tenant="
+                + ObjectName.quote("metrics.onmicrosoft.com") + ",settings=0");
+        try {
+            Assert.assertEquals(server.getAttribute(name, "Retries"), 1L);
+            CompositeData[] operations = (CompositeData[]) server.getAttribute(name, "Operations");
+            Assert.assertEquals(operations.length, 1);
+            Assert.assertEquals(operations[0].get("name"), "test");
+            Assert.assertEquals(operations[0].get("count"), 1L);
+        } finally {
+            metrics.unregister();
+        }
+        Assert.assertFalse(server.isRegistered(name));
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import org.forgerock.openicf.connectors.office365.client.objects.Group;
+import org.forgerock.openicf.connectors.office365.client.objects.O365Object;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the single-flight reads and invalidation of the {@link ObjectCache}.
+ */
+public class ObjectCacheTests {
+
+    private static Group newGroup(String id) {
+        Group group = new Group(Collections.<Attribute>emptySet());
+        group.id = id;
+        return group;
+    }
+
+    /**
+     * Loader counting its calls, optionally blocking until released
+     */
+    private static class CountingLoader implements Callable<O365Object> {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release;
+        final O365Object object;
+
+        CountingLoader(O365Object object, CountDownLatch release) {
+            this.object = object;
+            this.release = release;
+        }
+
+        @Override
+        public O365Object call() throws Exception {
+            calls.incrementAndGet();
+            started.countDown();
+            if (release != null) {
+                release.await(10, TimeUnit.SECONDS);
+            }
+            return object;
+        }
+    }
+
+    @Test
+    public void cachesObjects() {
+        ObjectCache cache = new ObjectCache(10, 60000);
+        CountingLoader loader = new CountingLoader(newGroup("g1"), null);
+
+        O365Object first = cache.get(ObjectClass.GROUP, "g1", loader);
+        Assert.assertSame(cache.get(ObjectClass.GROUP, "G1", loader), first);
+        Assert.assertEquals(loader.calls.get(), 1);
+    }
+
+    @Test
+    public void doesNotCacheMissingObjects() {
+        ObjectCache cache = new ObjectCache(10, 60000);
+        CountingLoader loader = new CountingLoader(null, null);
+
+        Assert.assertNull(cache.get(ObjectClass.GROUP, "g1", loader));
+        Assert.assertNull(cache.get(ObjectClass.GROUP, "g1", loader));
+        Assert.assertEquals(loader.calls.get(), 2);
+    }
+
+    @Test
+    public void expiresObjects() throws InterruptedException {
+        ObjectCache cache = new ObjectCache(10, 50);
+        CountingLoader loader = new CountingLoader(newGroup("g1"), null);
+
+        cache.get(ObjectClass.GROUP, "g1", loader);
+        Thread.sleep(100);
+        cache.get(ObjectClass.GROUP, "g1", loader);
+        Assert.assertEquals(loader.calls.get(), 2);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        ObjectCache cache = new ObjectCache(2, 60000);
+        CountingLoader first = new CountingLoader(newGroup("g1"), null);
+
+        cache.get(ObjectClass.GROUP, "g1", first);
+        cache.get(ObjectClass.GROUP, "g2", new CountingLoader(newGroup("g2"), null));
+        cache.get(ObjectClass.GROUP, "g3", new CountingLoader(newGroup("g3"), null));
+        cache.get(ObjectClass.GROUP, "g1", first);
+        Assert.assertEquals(first.calls.get(), 2);
+    }
+
+    @Test
+    public void readsOnceForConcurrentLookups() throws Exception {
+        final ObjectCache cache = new ObjectCache(10, 60000);
+        final CountingLoader loader = new CountingLoader(newGroup("g1"), new CountDownLatch(1));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<O365Object>> results = new ArrayList<Future<O365Object>>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(new Callable<O365Object>() {
+                    @Override
+                    public O365Object call() {
+                        return cache.get(ObjectClass.GROUP, "g1", loader);
+                    }
+                }));
+            }
+            Assert.assertTrue(loader.started.await(10, TimeUnit.SECONDS));
+            // Give the other lookups time to find the read in progress
+            Thread.sleep(100);
+            loader.release.countDown();
+            for (Future<O365Object> result : results) {
+                Assert.assertSame(result.get(10, TimeUnit.SECONDS), loader.object);
+            }
+            Assert.assertEquals(loader.calls.get(), 1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void invalidateDuringReadDiscardsObject() throws Exception {
+        final ObjectCache cache = new ObjectCache(10, 60000);
+        final CountingLoader loader = new CountingLoader(newGroup("g1"), new CountDownLatch(1));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<O365Object> result = executor.submit(new Callable<O365Object>() {
+                @Override
+                public O365Object call() {
+                    return cache.get(ObjectClass.GROUP, "user@example.com", loader);
+                }
+            });
+            Assert.assertTrue(loader.started.await(10, TimeUnit.SECONDS));
+            cache.invalidate(ObjectClass.GROUP, "g1");
+            loader.release.countDown();
+            Assert.assertSame(result.get(10, TimeUnit.SECONDS), loader.object);
+
+            // The object read before the write must not be cached
+            CountingLoader reload = new CountingLoader(newGroup("g1"), null);
+            cache.get(ObjectClass.GROUP, "user@example.com", reload);
+            Assert.assertEquals(reload.calls.get(), 1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void invalidateRemovesEveryKey() {
+        ObjectCache cache = new ObjectCache(10, 60000);
+        CountingLoader loader = new CountingLoader(newGroup("g1"), null);
+
+        cache.get(ObjectClass.GROUP, "g1", loader);
+        cache.get(ObjectClass.GROUP, "name", loader);
+        cache.invalidate(ObjectClass.GROUP, "g1");
+        cache.get(ObjectClass.GROUP, "g1", loader);
+        cache.get(ObjectClass.GROUP, "name", loader);
+        Assert.assertEquals(loader.calls.get(), 4);
+    }
+
+    @Test
+    public void invalidateKeepsOtherClasses() {
+        ObjectCache cache = new ObjectCache(10, 60000);
+        CountingLoader loader = new CountingLoader(newGroup("g1"), null);
+
+        cache.get(ObjectClass.ACCOUNT, "g1", loader);
+        cache.invalidate(ObjectClass.GROUP, "g1");
+        cache.get(ObjectClass.ACCOUNT, "g1", loader);
+        Assert.assertEquals(loader.calls.get(), 1);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Tests the streaming decode of collection pages by the {@link PageReader}.
+ */
+public class PageReaderTests {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Bean of the collection elements
+     */
+    public static class Item {
+        public String id;
+    }
+
+    private static Page<Item> read(String json) throws IOException {
+        return new PageReader<Item>(mapper, Item.class).read(new ByteArrayInputStream(json.getBytes("UTF-8")));
+    }
+
+    @Test
+    public void bindsEveryElementInOrder() throws IOException {
+        Page<Item> page = read("{\"value\":[{\"id\":\"a\"},{\"id\":\"b\"},{\"id\":\"c\"}]}");
+        Assert.assertEquals(page.getObjects().size(), 3);
+        Assert.assertEquals(page.getObjects().get(0).id, "a");
+        Assert.assertEquals(page.getObjects().get(2).id, "c");
+        Assert.assertNull(page.getNextLink());
+    }
+
+    @Test
+    public void readsTheNextLinkAfterTheValue() throws IOException {
+        Page<Item> page = read("{\"value\":[{\"id\":\"a\"}],"
+                + "\"@odata.nextLink\":\"https://graph.microsoft.com/v1.0/users?$skiptoken=X%27ab\"}");
+        Assert.assertEquals(page.getObjects().size(), 1);
+        Assert.assertEquals(page.getNextLink(), "https://graph.microsoft.com/v1.0/users?$skiptoken=X%27ab");
+    }
+
+    @Test
+    public void readsTheNextLinkBeforeTheValue() throws IOException {
+        Page<Item> page = read("{\"@odata.nextLink\":\"https://graph.microsoft.com/v1.0/users?$skiptoken=1\","
+                + "\"value\":[{\"id\":\"a\"}]}");
+        Assert.assertEquals(page.getObjects().get(0).id, "a");
+        Assert.assertEquals(page.getNextLink(), "https://graph.microsoft.com/v1.0/users?$skiptoken=1");
+    }
+
+    @Test
+    public void skipsOtherFields() throws IOException {
+        Page<Item> page = read("{\"@odata.context\":\"https://graph.microsoft.com/v1.0/$metadata#users\","
+                + "\"@odata.count\":2,\"nested\":{\"value\":[{\"id\":\"x\"}],\"list\":[1,[2]]},"
+                + "\"value\":[{\"id\":\"a\"},{\"id\":\"b\"}]}");
+        Assert.assertEquals(page.getObjects().size(), 2);
+        Assert.assertEquals(page.getObjects().get(1).id, "b");
+    }
+
+    @Test
+    public void emptyPage() throws IOException {
+        Page<Item> page = read("{\"value\":[]}");
+        Assert.assertTrue(page.getObjects().isEmpty());
+        Assert.assertNull(page.getNextLink());
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void rejectsADocumentThatIsNotAnObject() throws IOException {
+        read("[{\"id\":\"a\"}]");
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+
+/**
+ * Tests the paging cookie of a {@link Page}.
+ */
+public class PageTests {
+
+    private static String skipToken(String nextLink) {
+        return new Page<Object>(Collections.emptyList(), nextLink).getSkipToken();
+    }
+
+    @Test
+    public void lastPageHasNoSkipToken() {
+        Assert.assertNull(skipToken(null));
+    }
+
+    @Test
+    public void readsTheSkipTokenOfTheNextLink() {
+        Assert.assertEquals(skipToken("https://graph.microsoft.com/v1.0/users?$skiptoken=X'4453'"), "X'4453'");
+    }
+
+    @Test
+    public void readsTheSkipTokenBeforeOtherParameters() {
+        Assert.assertEquals(skipToken("https://graph.microsoft.com/v1.0/users?$top=10&$skipToken=abc&$select=id"),
+                "abc");
+    }
+
+    @Test
+    public void nextLinkWithoutSkipTokenHasNone() {
+        Assert.assertNull(skipToken("https://graph.microsoft.com/v1.0/users?$top=10"));
+    }
+
+    @Test
+    public void copiesKeepTheSkipToken() {
+        Page<Object> page = new Page<Object>(Collections.emptyList(), "https://graph.microsoft.com/v1.0/users?$skiptoken=a")
+                .at("https://graph.microsoft.com/v1.0/users", "https://graph.microsoft.com/v1.0/users");
+        Assert.assertEquals(page.getSkipToken(), "a");
+        Assert.assertEquals(page.getLink(), "https://graph.microsoft.com/v1.0/users");
+    }
+}
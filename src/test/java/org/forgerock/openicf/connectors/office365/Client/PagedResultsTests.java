@@ -0,0 +1,243 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tests walking the pages of queries with {@link PagedResults}.
+ */
+public class PagedResultsTests {
+
+    private static final String QUERY = "https://graph.microsoft.com/v1.0/users";
+
+    /**
+     * Serves the pages of a query, {@link #PAGE_SIZE} ids each, and the failures set on some of their URLs
+     */
+    private static final class FakeHttpClient extends HttpClient {
+        static final int PAGE_SIZE = 2;
+
+        final Map<String, RuntimeException> failures = new ConcurrentHashMap<String, RuntimeException>();
+        final List<String> requested = new CopyOnWriteArrayList<String>();
+        final int pages;
+
+        FakeHttpClient(int pages) {
+            super(new PassthroughSigner());
+            this.pages = pages;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T sendGetRequest(URI uri, ResponseReader<T> reader) {
+            String link = uri.toString();
+            requested.add(link);
+            RuntimeException failure = failures.get(link);
+            if (failure != null) {
+                throw failure;
+            }
+            String query = link.contains("?") ? link.substring(0, link.indexOf('?')) : link;
+            int page = link.contains("$skiptoken=") ? Integer.parseInt(link.substring(link.indexOf('=') + 1)) : 0;
+            List<String> ids = new ArrayList<String>();
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                ids.add(query.substring(query.lastIndexOf('/') + 1) + (page * PAGE_SIZE + i));
+            }
+            return (T) new Page<String>(ids, page + 1 < pages ? link(query, page + 1) : null);
+        }
+    }
+
+    /**
+     * Keeps checkpoints in memory
+     */
+    private static final class MemoryCheckpointStore implements CheckpointStore {
+        final Map<String, String> checkpoints = new ConcurrentHashMap<String, String>();
+
+        @Override
+        public String get(String query) {
+            return checkpoints.get(query);
+        }
+
+        @Override
+        public void put(String query, String link) {
+            checkpoints.put(query, link);
+        }
+
+        @Override
+        public void remove(String query) {
+            checkpoints.remove(query);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static String link(String query, int page) {
+        return query + "?$skiptoken=" + page;
+    }
+
+    private static PagedResults<String> walk(HttpClient client, CheckpointStore checkpoints, boolean resume,
+            String... queries) {
+        List<URI> partitions = new ArrayList<URI>();
+        for (String query : queries) {
+            partitions.add(URI.create(query));
+        }
+        return new PagedResults<String>(client, null, partitions, 2, 1, checkpoints, resume);
+    }
+
+    private static List<String> readAll(PagedResults<String> results) {
+        List<String> ids = new ArrayList<String>();
+        try {
+            Page<String> page;
+            while ((page = results.nextPage()) != null) {
+                ids.addAll(page.getObjects());
+            }
+        } finally {
+            results.close();
+        }
+        return ids;
+    }
+
+    private static IllegalStateException failure(int status) {
+        return new IllegalStateException("Unable to perform request", new HttpResponseException(status, "Failed"));
+    }
+
+    @Test
+    public void walksEveryPageInOrder() {
+        List<String> ids = readAll(walk(new FakeHttpClient(3), null, false, QUERY));
+        Assert.assertEquals(ids, Arrays.asList("users0", "users1", "users2", "users3", "users4", "users5"));
+    }
+
+    @Test
+    public void walksEveryPartition() {
+        List<String> ids = readAll(walk(new FakeHttpClient(2), null, false, QUERY, QUERY + "2", QUERY + "3"));
+        Assert.assertEquals(ids.size(), 12);
+        Assert.assertEquals(new HashSet<String>(ids).size(), 12);
+    }
+
+    @Test
+    public void producerErrorIsRethrownAfterTheFetchedPages() {
+        FakeHttpClient client = new FakeHttpClient(3);
+        client.failures.put(link(QUERY, 1), failure(500));
+        PagedResults<String> results = walk(client, null, false, QUERY);
+        try {
+            Assert.assertEquals(results.nextPage().getObjects(), Arrays.asList("users0", "users1"));
+            try {
+                results.nextPage();
+                Assert.fail("The failure should have been rethrown");
+            } catch (ConnectorException e) {
+                Assert.assertSame(e.getCause(), client.failures.get(link(QUERY, 1)));
+            }
+            Assert.assertNull(results.nextPage());
+        } finally {
+            results.close();
+        }
+    }
+
+    @Test
+    public void closeStopsFetching() throws InterruptedException {
+        FakeHttpClient client = new FakeHttpClient(1000);
+        PagedResults<String> results = walk(client, null, false, QUERY);
+        Assert.assertNotNull(results.nextPage());
+        results.close();
+        Thread.sleep(100);
+        int requested = client.requested.size();
+        Thread.sleep(100);
+        Assert.assertEquals(client.requested.size(), requested);
+        Assert.assertTrue(requested < 10, requested + " pages fetched");
+        Assert.assertNull(results.nextPage());
+    }
+
+    @Test
+    public void pageIsCheckpointedOnceHandled() {
+        MemoryCheckpointStore checkpoints = new MemoryCheckpointStore();
+        PagedResults<String> results = walk(new FakeHttpClient(3), checkpoints, false, QUERY);
+        try {
+            results.nextPage();
+            // The first page is being handled, a failure now must return it again
+            Assert.assertNull(checkpoints.get(QUERY));
+            results.nextPage();
+            Assert.assertEquals(checkpoints.get(QUERY), link(QUERY, 1));
+            results.nextPage();
+            Assert.assertEquals(checkpoints.get(QUERY), link(QUERY, 2));
+            Assert.assertNull(results.nextPage());
+            // A complete walk leaves no checkpoint
+            Assert.assertTrue(checkpoints.checkpoints.isEmpty());
+        } finally {
+            results.close();
+        }
+    }
+
+    @Test
+    public void completedPartitionsAreSkippedOnResume() {
+        MemoryCheckpointStore checkpoints = new MemoryCheckpointStore();
+        checkpoints.put(QUERY, "");
+        checkpoints.put(QUERY + "2", link(QUERY + "2", 1));
+        FakeHttpClient client = new FakeHttpClient(2);
+        List<String> ids = readAll(walk(client, checkpoints, true, QUERY, QUERY + "2"));
+        Assert.assertEquals(ids, Arrays.asList("users22", "users23"));
+        Assert.assertEquals(client.requested, Collections.singletonList(link(QUERY + "2", 1)));
+    }
+
+    @Test
+    public void startsFromTheFirstPageUnlessResuming() {
+        MemoryCheckpointStore checkpoints = new MemoryCheckpointStore();
+        checkpoints.put(QUERY, link(QUERY, 2));
+        PagedResults<String> results = walk(new FakeHttpClient(3), checkpoints, false, QUERY);
+        // The checkpoint of an earlier walk is discarded rather than mixed with this one
+        Assert.assertNull(checkpoints.get(QUERY));
+        Assert.assertEquals(readAll(results).size(), 6);
+    }
+
+    @Test
+    public void restartsWhenTheCheckpointExpired() {
+        MemoryCheckpointStore checkpoints = new MemoryCheckpointStore();
+        checkpoints.put(QUERY, link(QUERY, 2));
+        FakeHttpClient client = new FakeHttpClient(3);
+        client.failures.put(link(QUERY, 2), failure(400));
+        PagedResults<String> results = walk(client, checkpoints, true, QUERY);
+        Page<String> first = results.nextPage();
+        Assert.assertEquals(first.getObjects(), Arrays.asList("users0", "users1"));
+        results.close();
+    }
+
+    @Test
+    public void keepsTheCheckpointOnOtherFailures() {
+        MemoryCheckpointStore checkpoints = new MemoryCheckpointStore();
+        checkpoints.put(QUERY, link(QUERY, 2));
+        FakeHttpClient client = new FakeHttpClient(3);
+        client.failures.put(link(QUERY, 2), failure(503));
+        try {
+            readAll(walk(client, checkpoints, true, QUERY));
+            Assert.fail("The failure should have been rethrown");
+        } catch (ConnectorException e) {
+            // expected
+        }
+        Assert.assertEquals(checkpoints.get(QUERY), link(QUERY, 2));
+        Assert.assertEquals(client.requested, Collections.singletonList(link(QUERY, 2)));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the pacing of the {@link RateLimiter}.
+ */
+public class RateLimiterTests {
+
+    private static long acquire(RateLimiter limiter, int permits) {
+        long start = System.nanoTime();
+        for (int i = 0; i < permits; i++) {
+            limiter.acquire();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    @Test
+    public void burstUpToOneSecondOfPermits() {
+        RateLimiter limiter = new RateLimiter(100);
+        Assert.assertTrue(acquire(limiter, 100) < 100);
+    }
+
+    @Test
+    public void pacesOnceTheBurstIsSpent() {
+        RateLimiter limiter = new RateLimiter(100);
+        acquire(limiter, 100);
+        long elapsed = acquire(limiter, 30);
+        // 30 permits at 100 per second take 300ms
+        Assert.assertTrue(elapsed >= 250 && elapsed < 600, elapsed + "ms");
+    }
+
+    @Test
+    public void refillsWhileIdle() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(100);
+        acquire(limiter, 100);
+        Thread.sleep(250);
+        Assert.assertTrue(acquire(limiter, 20) < 100);
+    }
+
+    @Test
+    public void pacesPermitsAcquiredTogether() {
+        RateLimiter limiter = new RateLimiter(100);
+        long start = System.nanoTime();
+        limiter.acquire(100);
+        // The burst covers the first 100 permits, the next 20 are due 200ms later
+        limiter.acquire(20);
+        limiter.acquire();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue(elapsed >= 150 && elapsed < 450, elapsed + "ms");
+    }
+
+    @Test
+    public void pacesConcurrentCallers() throws InterruptedException {
+        final RateLimiter limiter = new RateLimiter(200);
+        acquire(limiter, 200);
+        long start = System.nanoTime();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    acquire(limiter, 25);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // 100 permits shared by the callers at 200 per second take 500ms
+        Assert.assertTrue(elapsed >= 450 && elapsed < 900, elapsed + "ms");
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the operations counted by a {@link RequestCost}.
+ */
+public class RequestCostTests {
+
+    @Test
+    public void methodsCostASingleOperation() {
+        Assert.assertSame(RequestCost.of("GET"), RequestCost.READ);
+        Assert.assertSame(RequestCost.of("POST"), RequestCost.WRITE);
+        Assert.assertSame(RequestCost.of("PATCH"), RequestCost.WRITE);
+        Assert.assertSame(RequestCost.of("DELETE"), RequestCost.WRITE);
+    }
+
+    @Test
+    public void combinedCostsAddUp() {
+        RequestCost cost = RequestCost.writes(19).plus(RequestCost.READ);
+        Assert.assertEquals(cost.getReads(), 1);
+        Assert.assertEquals(cost.getWrites(), 19);
+        Assert.assertEquals(cost.getOperations(), 20);
+        Assert.assertFalse(cost.isRetry());
+    }
+
+    @Test
+    public void retriesKeepTheirOperations() {
+        RequestCost retry = RequestCost.writes(3).asRetry();
+        Assert.assertTrue(retry.isRetry());
+        Assert.assertEquals(retry.getWrites(), 3);
+        Assert.assertTrue(retry.plus(RequestCost.WRITE.asRetry()).isRetry());
+        Assert.assertFalse(retry.plus(RequestCost.WRITE).isRetry());
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the tenant-wide limit of the {@link RetryBudget}.
+ */
+public class RetryBudgetTests {
+
+    private static int withdrawAll(RetryBudget budget) {
+        int retries = 0;
+        while (budget.tryWithdraw()) {
+            retries++;
+        }
+        return retries;
+    }
+
+    @Test
+    public void reserveAllowsInitialRetries() {
+        Assert.assertEquals(withdrawAll(new RetryBudget(0.1)), 100);
+    }
+
+    @Test
+    public void exhaustedBudgetRefusesRetries() {
+        RetryBudget budget = new RetryBudget(0.1);
+        withdrawAll(budget);
+        Assert.assertFalse(budget.tryWithdraw());
+        // Nine requests do not earn a whole retry at 10%
+        for (int i = 0; i < 9; i++) {
+            budget.deposit();
+        }
+        Assert.assertFalse(budget.tryWithdraw());
+    }
+
+    @Test
+    public void requestsEarnBackRetries() {
+        RetryBudget budget = new RetryBudget(0.25);
+        withdrawAll(budget);
+        for (int i = 0; i < 40; i++) {
+            budget.deposit();
+        }
+        Assert.assertEquals(withdrawAll(budget), 10);
+    }
+
+    @Test
+    public void batchesEarnAndSpendPerRequest() {
+        RetryBudget budget = new RetryBudget(0.25);
+        withdrawAll(budget);
+        budget.deposit(20);
+        Assert.assertFalse(budget.tryWithdraw(6));
+        Assert.assertTrue(budget.tryWithdraw(5));
+        Assert.assertFalse(budget.tryWithdraw());
+    }
+
+    @Test
+    public void balanceIsCappedAtTheReserve() {
+        RetryBudget budget = new RetryBudget(0.5);
+        for (int i = 0; i < 1000; i++) {
+            budget.deposit();
+        }
+        Assert.assertEquals(withdrawAll(budget), 100);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Tests the retry decisions and delays of the {@link RetryPolicy}.
+ */
+public class RetryPolicyTests {
+
+    private final RetryPolicy policy = new RetryPolicy(3, 100, 1000, 10000);
+
+    @Test
+    public void retriesThrottledAndUnavailableForEveryMethod() {
+        for (String method : new String[] {"GET", "POST", "PATCH", "DELETE"}) {
+            Assert.assertTrue(policy.isRetryable(method, 429), method);
+            Assert.assertTrue(policy.isRetryable(method, 503), method);
+        }
+    }
+
+    @Test
+    public void retriesGatewayFailuresExceptForPost() {
+        Assert.assertTrue(policy.isRetryable("GET", 502));
+        Assert.assertTrue(policy.isRetryable("PATCH", 504));
+        Assert.assertTrue(policy.isRetryable("DELETE", 502));
+        Assert.assertFalse(policy.isRetryable("POST", 502));
+        Assert.assertFalse(policy.isRetryable("POST", 504));
+    }
+
+    @Test
+    public void doesNotRetryOtherFailures() {
+        for (int status : new int[] {400, 401, 403, 404, 409, 412, 500}) {
+            Assert.assertFalse(policy.isRetryable("GET", status), String.valueOf(status));
+        }
+    }
+
+    @Test
+    public void parsesRetryAfterMilliseconds() {
+        Assert.assertEquals(RetryPolicy.getRetryAfter("1500", null), 1500L);
+        Assert.assertEquals(RetryPolicy.getRetryAfter(" 250 ", "10"), 250L);
+    }
+
+    @Test
+    public void parsesRetryAfterSeconds() {
+        Assert.assertEquals(RetryPolicy.getRetryAfter(null, "3"), 3000L);
+        // An unreadable x-ms-retry-after-ms falls back to Retry-After
+        Assert.assertEquals(RetryPolicy.getRetryAfter("soon", "2"), 2000L);
+    }
+
+    @Test
+    public void parsesRetryAfterDate() {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        long delay = RetryPolicy.getRetryAfter(null,
+                format.format(new Date(System.currentTimeMillis() + 60000)));
+        Assert.assertTrue(delay > 55000 && delay <= 60000, String.valueOf(delay));
+        // A date in the past asks for no delay
+        Assert.assertEquals(RetryPolicy.getRetryAfter(null, format.format(new Date(0))), 0L);
+    }
+
+    @Test
+    public void ignoresMissingOrUnreadableHints() {
+        Assert.assertEquals(RetryPolicy.getRetryAfter(null, null), -1L);
+        Assert.assertEquals(RetryPolicy.getRetryAfter(null, "later"), -1L);
+    }
+
+    @Test
+    public void honorsHintWithBoundedJitter() {
+        for (int i = 0; i < 100; i++) {
+            long delay = policy.getDelay(0, "2000", null);
+            Assert.assertTrue(delay >= 2000 && delay <= 2200, String.valueOf(delay));
+        }
+    }
+
+    @Test
+    public void backsOffExponentiallyUpToTheMaximum() {
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(policy.getDelay(0, null, null) < 100);
+            Assert.assertTrue(policy.getDelay(2, null, null) < 400);
+            Assert.assertTrue(policy.getDelay(40, null, null) < 1000);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.forgerock.openicf.connectors.office365.O365Configuration;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the keys telling apart the {@link TokenManager}s of a tenant, and the single-flight
+ * refreshes of a manager.
+ */
+public class TokenManagerTests {
+
+    private static O365Configuration configuration(String secret, String refreshToken) {
+        O365Configuration configuration = new O365Configuration();
+        configuration.setTenant("contoso");
+        configuration.setClientId("clientid");
+        configuration.setClientSecret(new GuardedString(secret.toCharArray()));
+        configuration.setRefreshToken(refreshToken);
+        return configuration;
+    }
+
+    @Test
+    public void sameCredentialsShareAManager() {
+        Assert.assertEquals(TokenManager.getKey(configuration("secret", "refresh")),
+                TokenManager.getKey(configuration("secret", "refresh")));
+    }
+
+    @Test
+    public void rotatedSecretGetsANewManager() {
+        Assert.assertNotEquals(TokenManager.getKey(configuration("secret", "refresh")),
+                TokenManager.getKey(configuration("rotated", "refresh")));
+    }
+
+    @Test
+    public void rotatedRefreshTokenGetsANewManager() {
+        Assert.assertNotEquals(TokenManager.getKey(configuration("secret", "refresh")),
+                TokenManager.getKey(configuration("secret", "rotated")));
+    }
+
+    @Test
+    public void keyDoesNotHoldTheSecrets() {
+        String key = TokenManager.getKey(configuration("secret", "refresh"));
+        Assert.assertTrue(key.startsWith("clientid|"));
+        Assert.assertFalse(key.contains("secret"));
+        Assert.assertFalse(key.contains("refresh"));
+    }
+
+    @Test
+    public void failedRefreshIsSharedByItsWaiters() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/token", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                try {
+                    // Long enough for every caller to queue behind the first refresh
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                byte[] body = "{\"error\":\"invalid_grant\"}".getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(400, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        server.start();
+        O365Configuration configuration = configuration("secret", "refresh");
+        configuration.setTenant("token-" + System.nanoTime());
+        configuration.setTokenEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/token");
+        ConnectionPool pool = ConnectionPool.acquire(configuration);
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            final TokenManager tokenManager = pool.getTokenManager(configuration);
+            List<Callable<String>> calls = new ArrayList<Callable<String>>();
+            for (int i = 0; i < 4; i++) {
+                calls.add(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return tokenManager.getAccessToken();
+                    }
+                });
+            }
+            for (Future<String> future : callers.invokeAll(calls)) {
+                try {
+                    future.get();
+                    Assert.fail("The refresh should have failed");
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof ConnectorException);
+                }
+            }
+            Assert.assertEquals(requests.get(), 1);
+
+            // A later caller tries again
+            try {
+                tokenManager.getAccessToken();
+                Assert.fail("The refresh should have failed");
+            } catch (ConnectorException e) {
+                Assert.assertEquals(requests.get(), 2);
+            }
+        } finally {
+            callers.shutdownNow();
+            pool.release();
+            server.stop(0);
+        }
+    }
+}
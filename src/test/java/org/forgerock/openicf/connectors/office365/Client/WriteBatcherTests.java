@@ -0,0 +1,130 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client;
+
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests how the {@link WriteBatcher} coalesces requests into batches.
+ */
+public class WriteBatcherTests {
+
+    /**
+     * Records the size of each batch it is asked to send
+     */
+    private static final class RecordingSender implements BatchSender {
+        final List<Integer> batches = Collections.synchronizedList(new ArrayList<Integer>());
+        volatile RuntimeException failure;
+
+        @Override
+        public List<BatchResponse> executeBatch(List<BatchRequest> requests) {
+            batches.add(requests.size());
+            if (failure != null) {
+                throw failure;
+            }
+            List<BatchResponse> responses = new ArrayList<BatchResponse>(requests.size());
+            for (BatchRequest request : requests) {
+                // Echo the position of the request in its URL as the status, to check correlation
+                responses.add(new BatchResponse(Integer.parseInt(request.getUrl().substring(1)), null));
+            }
+            return responses;
+        }
+    }
+
+    private static List<Future<BatchResponse>> submitAll(final WriteBatcher batcher, final BatchSender sender,
+            int count, ExecutorService executor) {
+        List<Future<BatchResponse>> futures = new ArrayList<Future<BatchResponse>>();
+        for (int i = 0; i < count; i++) {
+            final int status = 200 + i;
+            futures.add(executor.submit(new Callable<BatchResponse>() {
+                @Override
+                public BatchResponse call() {
+                    return batcher.submit(sender, new BatchRequest("DELETE", "/" + status, null));
+                }
+            }));
+        }
+        return futures;
+    }
+
+    @Test
+    public void fullBatchIsSentWithoutLingering() throws Exception {
+        WriteBatcher batcher = new WriteBatcher(60000);
+        RecordingSender sender = new RecordingSender();
+        ExecutorService executor = Executors.newFixedThreadPool(Office365Client.MAX_BATCH_SIZE);
+        try {
+            long start = System.currentTimeMillis();
+            List<Future<BatchResponse>> futures = submitAll(batcher, sender, Office365Client.MAX_BATCH_SIZE,
+                    executor);
+            for (int i = 0; i < futures.size(); i++) {
+                Assert.assertEquals(futures.get(i).get().getStatus(), 200 + i);
+            }
+            Assert.assertTrue(System.currentTimeMillis() - start < 30000, "The full batch lingered");
+            Assert.assertEquals(sender.batches, Collections.singletonList(Office365Client.MAX_BATCH_SIZE));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void partialBatchIsSentAfterLinger() {
+        WriteBatcher batcher = new WriteBatcher(50);
+        RecordingSender sender = new RecordingSender();
+        long start = System.currentTimeMillis();
+        BatchResponse response = batcher.submit(sender, new BatchRequest("DELETE", "/204", null));
+        Assert.assertEquals(response.getStatus(), 204);
+        Assert.assertTrue(System.currentTimeMillis() - start >= 50, "The batch was sent before the linger");
+        Assert.assertEquals(sender.batches, Collections.singletonList(1));
+    }
+
+    @Test
+    public void failedBatchFailsEveryCaller() throws Exception {
+        WriteBatcher batcher = new WriteBatcher(60000);
+        RecordingSender sender = new RecordingSender();
+        sender.failure = new ConnectorException("injected");
+        ExecutorService executor = Executors.newFixedThreadPool(Office365Client.MAX_BATCH_SIZE);
+        try {
+            for (Future<BatchResponse> future : submitAll(batcher, sender, Office365Client.MAX_BATCH_SIZE,
+                    executor)) {
+                try {
+                    future.get();
+                    Assert.fail("The request should have failed");
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof ConnectorException);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expectedExceptions = ConnectorException.class)
+    public void closedBatcherRejectsRequests() {
+        WriteBatcher batcher = new WriteBatcher(50);
+        batcher.close();
+        batcher.submit(new RecordingSender(), new BatchRequest("DELETE", "/204", null));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client.objects;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.identityconnectors.framework.common.exceptions.InvalidAttributeValueException;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.AttributeUtil;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests the field table of the {@link AttributeBinding}.
+ */
+public class AttributeBindingTests {
+
+    /**
+     * Bean with bound fields and fields the table must leave out
+     */
+    public static class Bean {
+        @JsonProperty
+        public String id;
+
+        @JsonProperty
+        public String displayName;
+
+        @JsonProperty
+        public Boolean enabled;
+
+        @JsonProperty
+        public List<Object> aliases;
+
+        /* Not a simple or list type */
+        @JsonProperty
+        public PasswordProfile profile;
+
+        /* Not bound to a JSON property */
+        public String transientNote;
+    }
+
+    private static final AttributeBinding BINDING = new AttributeBinding(Bean.class,
+            Uid.NAME, "id", Name.NAME, "displayName");
+
+    private static Set<Attribute> attributes(Attribute... attrs) {
+        return new LinkedHashSet<Attribute>(Arrays.asList(attrs));
+    }
+
+    private static Set<String> names(Set<Attribute> attrs) {
+        Set<String> names = new HashSet<String>();
+        for (Attribute attr : attrs) {
+            names.add(attr.getName());
+        }
+        return names;
+    }
+
+    @Test
+    public void writesTheFieldsWithAValue() {
+        Bean bean = new Bean();
+        bean.id = "a";
+        bean.enabled = true;
+        bean.aliases = Arrays.<Object>asList("x", "y");
+        bean.transientNote = "note";
+        Set<Attribute> attrs = BINDING.write(bean, null, 0);
+        Assert.assertEquals(names(attrs), new HashSet<String>(Arrays.asList("id", "enabled", "aliases")));
+        Assert.assertEquals(AttributeUtil.find("aliases", attrs).getValue(), Arrays.<Object>asList("x", "y"));
+        Assert.assertEquals(AttributeUtil.getSingleValue(AttributeUtil.find("enabled", attrs)), Boolean.TRUE);
+    }
+
+    @Test
+    public void writesRequestedFieldsEvenWithoutAValue() {
+        Bean bean = new Bean();
+        bean.id = "a";
+        Set<Attribute> attrs = BINDING.write(bean,
+                new HashSet<String>(Arrays.asList("displayName", "transientNote", "unknown")), 0);
+        // Only bound fields are written, the aliases are not
+        Assert.assertEquals(names(attrs), Collections.singleton("displayName"));
+        Assert.assertNull(AttributeUtil.getSingleValue(AttributeUtil.find("displayName", attrs)));
+    }
+
+    @Test
+    public void readsFieldsAndAliases() {
+        Bean bean = new Bean();
+        BINDING.read(bean, attributes(
+                new Uid("a"),
+                new Name("Alice"),
+                AttributeBuilder.build("enabled", false),
+                AttributeBuilder.build("transientNote", "ignored"),
+                AttributeBuilder.build("unknown", "ignored")));
+        Assert.assertEquals(bean.id, "a");
+        Assert.assertEquals(bean.displayName, "Alice");
+        Assert.assertEquals(bean.enabled, Boolean.FALSE);
+        Assert.assertNull(bean.transientNote);
+    }
+
+    @Test
+    public void readsListsAsCopies() {
+        Bean bean = new Bean();
+        Attribute aliases = AttributeBuilder.build("aliases", "x", "y");
+        BINDING.read(bean, attributes(aliases));
+        Assert.assertEquals(bean.aliases, Arrays.<Object>asList("x", "y"));
+        Assert.assertNotSame(bean.aliases, aliases.getValue());
+
+        BINDING.read(bean, attributes(AttributeBuilder.build("aliases")));
+        Assert.assertTrue(bean.aliases.isEmpty());
+    }
+
+    @Test
+    public void emptyValueClearsAField() {
+        Bean bean = new Bean();
+        bean.displayName = "Alice";
+        BINDING.read(bean, attributes(AttributeBuilder.build("displayName")));
+        Assert.assertNull(bean.displayName);
+    }
+
+    @Test(expectedExceptions = InvalidAttributeValueException.class)
+    public void rejectsAValueOfTheWrongType() {
+        BINDING.read(new Bean(), attributes(AttributeBuilder.build("enabled", "yes")));
+    }
+
+    @Test
+    public void groupNameIsBoundToTheDisplayName() {
+        Group group = new Group(attributes(new Uid("g"), new Name("Sales")));
+        Assert.assertEquals(group.id, "g");
+        Assert.assertEquals(group.displayName, "Sales");
+    }
+}
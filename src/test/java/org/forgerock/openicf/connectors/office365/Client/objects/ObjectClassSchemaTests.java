@@ -0,0 +1,103 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365.client.objects;
+
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.common.exceptions.InvalidAttributeValueException;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.OperationalAttributes;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tests the PATCH bodies built by the {@link ObjectClassSchema}.
+ */
+public class ObjectClassSchemaTests {
+
+    private static Set<Attribute> attributes(Attribute... attrs) {
+        return new LinkedHashSet<Attribute>(Arrays.asList(attrs));
+    }
+
+    @Test
+    public void sendsOnlySuppliedAttributes() {
+        Map<String, Object> changes = ObjectClassSchema.ACCOUNT.getChanges(attributes(
+                new Name("jane@example.com"),
+                AttributeBuilder.build("jobTitle", "Tester"),
+                AttributeBuilder.build("department")), "userPrincipalName");
+
+        Assert.assertEquals(changes.keySet(), new LinkedHashSet<String>(
+                Arrays.asList("userPrincipalName", "jobTitle", "department")));
+        Assert.assertEquals(changes.get("userPrincipalName"), "jane@example.com");
+        Assert.assertEquals(changes.get("jobTitle"), "Tester");
+        Assert.assertTrue(changes.containsKey("department"));
+        Assert.assertNull(changes.get("department"));
+    }
+
+    @Test
+    public void clearsMultivaluedAttributesWithAnEmptyList() {
+        Map<String, Object> changes = ObjectClassSchema.GROUP.getChanges(
+                attributes(AttributeBuilder.build("proxyAddresses")), "displayName");
+
+        Assert.assertEquals(changes.get("proxyAddresses"), Collections.emptyList());
+    }
+
+    @Test
+    public void setsThePasswordThroughThePasswordProfile() {
+        Map<String, Object> changes = ObjectClassSchema.ACCOUNT.getChanges(attributes(
+                AttributeBuilder.build(OperationalAttributes.PASSWORD_NAME,
+                        new GuardedString("Secret1!".toCharArray()))), "userPrincipalName");
+
+        Assert.assertEquals(changes, Collections.singletonMap("passwordProfile",
+                Collections.singletonMap("password", "Secret1!")));
+    }
+
+    @Test(expectedExceptions = InvalidAttributeValueException.class)
+    public void rejectsThePasswordProperty() {
+        ObjectClassSchema.ACCOUNT.getChanges(attributes(AttributeBuilder.build("password",
+                new GuardedString("Secret1!".toCharArray()))), "userPrincipalName");
+    }
+
+    @Test(expectedExceptions = InvalidAttributeValueException.class)
+    public void rejectsPasswordsOfGroups() {
+        ObjectClassSchema.GROUP.getChanges(attributes(AttributeBuilder.build(OperationalAttributes.PASSWORD_NAME,
+                new GuardedString("Secret1!".toCharArray()))), "displayName");
+    }
+
+    @Test(expectedExceptions = InvalidAttributeValueException.class)
+    public void rejectsMembers() {
+        ObjectClassSchema.GROUP.getChanges(attributes(AttributeBuilder.build("members", "u1")), "displayName");
+    }
+
+    @Test(expectedExceptions = InvalidAttributeValueException.class)
+    public void rejectsReadOnlyProperties() {
+        ObjectClassSchema.GROUP.getChanges(attributes(AttributeBuilder.build("lastDirSyncTime", "2016")),
+                "displayName");
+    }
+
+    @Test(expectedExceptions = InvalidAttributeValueException.class)
+    public void rejectsUnknownAttributes() {
+        ObjectClassSchema.ACCOUNT.getChanges(attributes(AttributeBuilder.build("favouriteColour", "blue")),
+                "userPrincipalName");
+    }
+}
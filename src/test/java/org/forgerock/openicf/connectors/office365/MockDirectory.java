@@ -0,0 +1,269 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory entity set of the mock Graph server.
+ *
+ * The initial objects are generated from their position on demand, so a set of millions of
+ * objects costs no memory until they are written. Writes are kept in an overlay, and every
+ * write is appended to a change log that delta queries read.
+ */
+final class MockDirectory {
+
+    static final String DOMAIN = "@contoso.onmicrosoft.com";
+
+    private final String entitySet;
+    private final long seed;
+    private final int generated;
+
+    /* Written objects and deleted ids, by lower-case id */
+    private final Map<String, Map<String, Object>> written = new ConcurrentHashMap<String, Map<String, Object>>();
+    private final Set<String> removed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /* Ids of created objects, in creation order, and the change log; guarded by this */
+    private final List<String> created = new ArrayList<String>();
+    private final List<Change> changes = new ArrayList<Change>();
+
+    /**
+     * Create an entity set
+     *
+     * @param entitySet users or groups
+     * @param generated number of generated objects
+     */
+    MockDirectory(String entitySet, int generated) {
+        this.entitySet = entitySet;
+        this.seed = "users".equals(entitySet) ? 0x5eedL : 0x6e0cL;
+        this.generated = generated;
+    }
+
+    String getEntitySet() {
+        return entitySet;
+    }
+
+    /**
+     * Return the number of positions, including those of deleted objects
+     */
+    synchronized int size() {
+        return generated + created.size();
+    }
+
+    /**
+     * Return the object at a position in enumeration order
+     *
+     * @param position the position
+     * @return the object, or null if it was deleted
+     */
+    Map<String, Object> at(int position) {
+        String id;
+        if (position < generated) {
+            id = new UUID(seed, position).toString();
+        } else {
+            synchronized (this) {
+                id = created.get(position - generated);
+            }
+        }
+        return get(id);
+    }
+
+    /**
+     * Return an object by id
+     *
+     * @param id the object id
+     * @return the object, or null if it does not exist
+     */
+    Map<String, Object> get(String id) {
+        String key = id.toLowerCase();
+        if (removed.contains(key)) {
+            return null;
+        }
+        Map<String, Object> object = written.get(key);
+        if (object != null) {
+            return object;
+        }
+        UUID uuid;
+        try {
+            uuid = UUID.fromString(key);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (uuid.getMostSignificantBits() != seed
+                || uuid.getLeastSignificantBits() < 0 || uuid.getLeastSignificantBits() >= generated) {
+            return null;
+        }
+        return generate((int) uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * Resolve the key of an object in a URL, its id or the user principal name of a user
+     *
+     * @param key the id or user principal name
+     * @return the id
+     */
+    String resolve(String key) {
+        if (key.indexOf('@') < 0) {
+            return key;
+        }
+        String name = key.toLowerCase();
+        for (Map<String, Object> object : written.values()) {
+            if (name.equalsIgnoreCase(String.valueOf(object.get("userPrincipalName")))) {
+                return String.valueOf(object.get("id"));
+            }
+        }
+        if ("users".equals(entitySet) && name.startsWith("user") && name.endsWith(DOMAIN)) {
+            try {
+                int i = Integer.parseInt(name.substring(4, name.length() - DOMAIN.length()));
+                if (i >= 0 && i < generated) {
+                    return new UUID(seed, i).toString();
+                }
+            } catch (NumberFormatException e) {
+                // not a generated user
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Create an object
+     *
+     * @param object the properties of the object, without id
+     * @return the created object
+     */
+    Map<String, Object> create(Map<String, Object> object) {
+        Map<String, Object> stored = new LinkedHashMap<String, Object>(object);
+        String id = UUID.randomUUID().toString();
+        stored.put("id", id);
+        written.put(id, stored);
+        synchronized (this) {
+            created.add(id);
+            changes.add(new Change(id, false));
+        }
+        return stored;
+    }
+
+    /**
+     * Update the given properties of an object
+     *
+     * @param id the object id
+     * @param properties the properties to set
+     * @return false if the object does not exist
+     */
+    boolean update(String id, Map<String, Object> properties) {
+        synchronized (this) {
+            Map<String, Object> current = get(id);
+            if (current == null) {
+                return false;
+            }
+            Map<String, Object> updated = new LinkedHashMap<String, Object>(current);
+            updated.putAll(properties);
+            updated.put("id", current.get("id"));
+            written.put(id.toLowerCase(), updated);
+            changes.add(new Change(id.toLowerCase(), false));
+            return true;
+        }
+    }
+
+    /**
+     * Delete an object
+     *
+     * @param id the object id
+     * @return false if the object does not exist
+     */
+    boolean delete(String id) {
+        synchronized (this) {
+            if (get(id) == null) {
+                return false;
+            }
+            removed.add(id.toLowerCase());
+            written.remove(id.toLowerCase());
+            changes.add(new Change(id.toLowerCase(), true));
+            return true;
+        }
+    }
+
+    /**
+     * Return the number of changes so far, the delta token of the current state
+     */
+    synchronized int getChangeCount() {
+        return changes.size();
+    }
+
+    /**
+     * Return the changes after a delta token, the last change of each object only
+     *
+     * @param since the delta token
+     * @return the changes
+     */
+    synchronized List<Change> getChangesSince(int since) {
+        Map<String, Change> latest = new LinkedHashMap<String, Change>();
+        for (Change change : changes.subList(Math.min(since, changes.size()), changes.size())) {
+            latest.remove(change.id);
+            latest.put(change.id, change);
+        }
+        return new ArrayList<Change>(latest.values());
+    }
+
+    private Map<String, Object> generate(int i) {
+        Map<String, Object> object = new LinkedHashMap<String, Object>();
+        if ("users".equals(entitySet)) {
+            object.put("id", new UUID(seed, i).toString());
+            object.put("accountEnabled", i % 10 != 0);
+            object.put("city", "Bristol");
+            object.put("country", "United Kingdom");
+            object.put("department", "Engineering " + (i % 20));
+            object.put("displayName", "User " + i);
+            object.put("givenName", "Given" + i);
+            object.put("jobTitle", "Engineer");
+            object.put("mail", "user" + i + DOMAIN);
+            object.put("mailNickname", "user" + i);
+            object.put("surname", "Surname" + i);
+            object.put("usageLocation", "GB");
+            object.put("userPrincipalName", "user" + i + DOMAIN);
+            object.put("userType", "Member");
+        } else {
+            object.put("id", new UUID(seed, i).toString());
+            object.put("description", "Generated group " + i);
+            object.put("displayName", "Group " + i);
+            object.put("mailEnabled", false);
+            object.put("mailNickname", "group" + i);
+            object.put("proxyAddresses", Collections.emptyList());
+            object.put("securityEnabled", true);
+        }
+        return object;
+    }
+
+    /**
+     * A write recorded in the change log
+     */
+    static final class Change {
+        final String id;
+        final boolean removed;
+
+        Change(String id, boolean removed) {
+            this.id = id;
+            this.removed = removed;
+        }
+    }
+}
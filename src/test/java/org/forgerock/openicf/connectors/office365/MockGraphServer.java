@@ -0,0 +1,514 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.identityconnectors.common.logging.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the Graph API and its token endpoint, serving generated users and
+ * groups on localhost.
+ *
+ * It supports what the connector sends: collection queries with $filter, $select, $top and
+ * skip token paging, reads, creates, updates and deletes by id, delta queries, $batch and
+ * directoryObjects/getByIds. Latency, throttling and errors can be injected to exercise the
+ * connector's retries.
+ */
+final class MockGraphServer {
+    private static final Log logger = Log.getLog(MockGraphServer.class);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final String VERSION_PATH = "/v1.0/";
+    private static final String TOKEN_PATH = "/common/oauth2/token";
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 999;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, MockDirectory> directories = new HashMap<String, MockDirectory>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong tokens = new AtomicLong();
+
+    private volatile long latency = 0;
+    private volatile int throttleEvery = 0;
+    private volatile int retryAfter = 0;
+    private volatile int failEvery = 0;
+    private volatile int failStatus = 503;
+
+    /**
+     * Create a server listening on an ephemeral localhost port
+     *
+     * @param users number of generated users
+     * @param groups number of generated groups
+     */
+    MockGraphServer(int users, int groups) throws IOException {
+        directories.put("users", new MockDirectory("users", users));
+        directories.put("groups", new MockDirectory("groups", groups));
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                MockGraphServer.this.handle(exchange);
+            }
+        });
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Return the root of the Graph API served, to use as graphEndpoint
+     */
+    String getGraphEndpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + VERSION_PATH;
+    }
+
+    /**
+     * Return the token endpoint served, to use as tokenEndpoint
+     */
+    String getTokenEndpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + TOKEN_PATH;
+    }
+
+    /**
+     * Delay every response
+     *
+     * @param millis the delay in milliseconds
+     */
+    void setLatency(long millis) {
+        this.latency = millis;
+    }
+
+    /**
+     * Answer every n-th request with 429 Too Many Requests
+     *
+     * @param every the request interval, 0 to disable throttling
+     * @param retryAfterSeconds the Retry-After value of the throttled responses
+     */
+    void setThrottling(int every, int retryAfterSeconds) {
+        this.throttleEvery = every;
+        this.retryAfter = retryAfterSeconds;
+    }
+
+    /**
+     * Fail every n-th request
+     *
+     * @param every the request interval, 0 to disable errors
+     * @param status the status of the failed responses
+     */
+    void setErrors(int every, int status) {
+        this.failEvery = every;
+        this.failStatus = status;
+    }
+
+    /**
+     * Return the number of HTTP requests received
+     */
+    long getRequestCount() {
+        return requests.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Reply reply;
+        try {
+            long n = requests.incrementAndGet();
+            if (latency > 0) {
+                Thread.sleep(latency);
+            }
+            byte[] body = readAll(exchange.getRequestBody());
+            String path = exchange.getRequestURI().getRawPath();
+            if (throttleEvery > 0 && n % throttleEvery == 0) {
+                reply = error(429, "TooManyRequests", "Throttled by the mock server");
+                reply.headers.put("Retry-After", String.valueOf(retryAfter));
+            } else if (failEvery > 0 && n % failEvery == 0) {
+                reply = error(failStatus, "InjectedError", "Error injected by the mock server");
+            } else if (TOKEN_PATH.equals(path) && "POST".equals(exchange.getRequestMethod())) {
+                reply = token();
+            } else if (!String.valueOf(exchange.getRequestHeaders().getFirst("Authorization")).startsWith("Bearer ")) {
+                reply = error(401, "InvalidAuthenticationToken", "Access token is empty");
+            } else if (path.startsWith(VERSION_PATH)) {
+                reply = dispatch(exchange.getRequestMethod(), path.substring(VERSION_PATH.length()),
+                        exchange.getRequestURI().getRawQuery(), body);
+            } else {
+                reply = error(404, "NotFound", path);
+            }
+        } catch (IllegalArgumentException e) {
+            reply = error(400, "BadRequest", e.getMessage());
+        } catch (Exception e) {
+            logger.warn(e, "Mock request failed");
+            reply = error(500, "InternalServerError", String.valueOf(e));
+        }
+        try {
+            for (Map.Entry<String, String> header : reply.headers.entrySet()) {
+                exchange.getResponseHeaders().set(header.getKey(), header.getValue());
+            }
+            if (reply.body == null) {
+                exchange.sendResponseHeaders(reply.status, -1);
+            } else {
+                byte[] bytes = mapper.writeValueAsBytes(reply.body);
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                exchange.sendResponseHeaders(reply.status, bytes.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(bytes);
+                out.close();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Serve a Graph request
+     *
+     * @param method the request method
+     * @param path the path below the version root, still URL-encoded
+     * @param rawQuery the query string, or null
+     * @param body the request body
+     */
+    private Reply dispatch(String method, String path, String rawQuery, byte[] body) throws IOException {
+        Map<String, String> query = parseQuery(rawQuery);
+        String[] segments = path.split("/");
+        if ("$batch".equals(path) && "POST".equals(method)) {
+            return batch(body);
+        }
+        if ("directoryObjects/getByIds".equals(path) && "POST".equals(method)) {
+            return getByIds(body);
+        }
+        MockDirectory directory = directories.get(segments[0]);
+        if (directory == null) {
+            return error(404, "NotFound", path);
+        }
+        if (segments.length == 1) {
+            if ("GET".equals(method)) {
+                return list(directory, query);
+            } else if ("POST".equals(method)) {
+                return create(directory, body);
+            }
+        } else if (segments.length == 2 && "delta".equals(segments[1]) && "GET".equals(method)) {
+            return delta(directory, query);
+        } else if (segments.length == 2) {
+            String id = directory.resolve(URLDecoder.decode(segments[1], "UTF-8"));
+            if ("GET".equals(method)) {
+                Map<String, Object> object = directory.get(id);
+                return object == null
+                        ? error(404, "Request_ResourceNotFound", id)
+                        : new Reply(200, project(object, parseSelect(query)));
+            } else if ("PATCH".equals(method)) {
+                return directory.update(id, readProperties(body))
+                        ? new Reply(204, null)
+                        : error(404, "Request_ResourceNotFound", id);
+            } else if ("DELETE".equals(method)) {
+                return directory.delete(id)
+                        ? new Reply(204, null)
+                        : error(404, "Request_ResourceNotFound", id);
+            }
+        } else if (segments.length == 3 && "members".equals(segments[2]) && "GET".equals(method)) {
+            // Memberships are not modelled
+            return new Reply(200, Collections.singletonMap("value", Collections.emptyList()));
+        } else if (segments.length == 4 && "members".equals(segments[2]) && "POST".equals(method)) {
+            return new Reply(204, null);
+        } else if (segments.length == 5 && "members".equals(segments[2]) && "DELETE".equals(method)) {
+            return new Reply(204, null);
+        }
+        return error(405, "MethodNotAllowed", method + " " + path);
+    }
+
+    private Reply list(MockDirectory directory, Map<String, String> query) {
+        ODataFilter filter = query.containsKey("$filter") ? ODataFilter.parse(query.get("$filter")) : null;
+        Set<String> select = parseSelect(query);
+        int top = query.containsKey("$top")
+                ? Math.min(Integer.parseInt(query.get("$top")), MAX_PAGE_SIZE)
+                : DEFAULT_PAGE_SIZE;
+        int position = query.containsKey("$skiptoken") ? Integer.parseInt(query.get("$skiptoken")) : 0;
+        List<Map<String, Object>> value = new ArrayList<Map<String, Object>>();
+        int size = directory.size();
+        while (position < size && value.size() < top) {
+            Map<String, Object> object = directory.at(position++);
+            if (object != null && (filter == null || filter.matches(object))) {
+                value.add(project(object, select));
+            }
+        }
+        Map<String, Object> page = page(directory, value);
+        if (position < size) {
+            page.put("@odata.nextLink", link(directory.getEntitySet(), query, "$skiptoken", String.valueOf(position)));
+        }
+        return new Reply(200, page);
+    }
+
+    /**
+     * Serve a delta query. The initial round enumerates every object, its skip tokens carry
+     * the position and the change count it started at; later rounds return the changes since
+     * their delta token.
+     */
+    private Reply delta(MockDirectory directory, Map<String, String> query) {
+        Set<String> select = parseSelect(query);
+        String path = directory.getEntitySet() + "/delta";
+        List<Map<String, Object>> value = new ArrayList<Map<String, Object>>();
+        Map<String, Object> page = page(directory, value);
+        String deltaToken = query.get("$deltatoken");
+        if (deltaToken != null) {
+            if (!"latest".equals(deltaToken)) {
+                for (MockDirectory.Change change : directory.getChangesSince(Integer.parseInt(deltaToken))) {
+                    Map<String, Object> object = change.removed ? null : directory.get(change.id);
+                    if (object == null) {
+                        Map<String, Object> removed = new LinkedHashMap<String, Object>();
+                        removed.put("id", change.id);
+                        removed.put("@removed", Collections.singletonMap("reason", "deleted"));
+                        value.add(removed);
+                    } else {
+                        value.add(project(object, select));
+                    }
+                }
+            }
+            page.put("@odata.deltaLink", link(path, query, "$deltatoken",
+                    String.valueOf(directory.getChangeCount())));
+            return new Reply(200, page);
+        }
+        int position = 0;
+        int startedAt = directory.getChangeCount();
+        String skipToken = query.get("$skiptoken");
+        if (skipToken != null) {
+            String[] parts = skipToken.split("\\.");
+            position = Integer.parseInt(parts[0]);
+            startedAt = Integer.parseInt(parts[1]);
+        }
+        int size = directory.size();
+        while (position < size && value.size() < DEFAULT_PAGE_SIZE) {
+            Map<String, Object> object = directory.at(position++);
+            if (object != null) {
+                value.add(project(object, select));
+            }
+        }
+        if (position < size) {
+            page.put("@odata.nextLink", link(path, query, "$skiptoken", position + "." + startedAt));
+        } else {
+            page.put("@odata.deltaLink", link(path, query, "$deltatoken", String.valueOf(startedAt)));
+        }
+        return new Reply(200, page);
+    }
+
+    private Reply create(MockDirectory directory, byte[] body) throws IOException {
+        Map<String, Object> properties = readProperties(body);
+        String name = "users".equals(directory.getEntitySet()) ? "userPrincipalName" : "displayName";
+        if (properties.get(name) == null) {
+            return error(400, "Request_BadRequest", name + " is required");
+        }
+        return new Reply(201, directory.create(properties));
+    }
+
+    private Reply getByIds(byte[] body) throws IOException {
+        Map<String, Object> request = mapper.readValue(body, new TypeReference<Map<String, Object>>() {});
+        @SuppressWarnings("unchecked")
+        List<String> ids = (List<String>) request.get("ids");
+        @SuppressWarnings("unchecked")
+        List<String> types = (List<String>) request.get("types");
+        List<Map<String, Object>> value = new ArrayList<Map<String, Object>>();
+        for (String id : ids) {
+            for (String type : types == null ? Arrays.asList("user", "group") : types) {
+                MockDirectory directory = directories.get(type + "s");
+                Map<String, Object> object = directory == null ? null : directory.get(id);
+                if (object != null) {
+                    Map<String, Object> typed = new LinkedHashMap<String, Object>();
+                    typed.put("@odata.type", "#microsoft.graph." + type);
+                    typed.putAll(object);
+                    value.add(typed);
+                }
+            }
+        }
+        return new Reply(200, Collections.singletonMap("value", value));
+    }
+
+    private Reply batch(byte[] body) throws IOException {
+        Map<String, Object> request = mapper.readValue(body, new TypeReference<Map<String, Object>>() {});
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> subRequests = (List<Map<String, Object>>) request.get("requests");
+        if (subRequests == null || subRequests.size() > 20) {
+            return error(400, "BadRequest", "A batch holds 1 to 20 requests");
+        }
+        List<Map<String, Object>> responses = new ArrayList<Map<String, Object>>(subRequests.size());
+        for (Map<String, Object> subRequest : subRequests) {
+            String url = String.valueOf(subRequest.get("url"));
+            int queryStart = url.indexOf('?');
+            String path = (queryStart < 0 ? url : url.substring(0, queryStart)).replaceFirst("^/", "");
+            Object subBody = subRequest.get("body");
+            Reply reply;
+            try {
+                reply = dispatch(String.valueOf(subRequest.get("method")), path,
+                        queryStart < 0 ? null : url.substring(queryStart + 1),
+                        subBody == null ? new byte[0] : mapper.writeValueAsBytes(subBody));
+            } catch (IllegalArgumentException e) {
+                reply = error(400, "BadRequest", e.getMessage());
+            }
+            Map<String, Object> response = new LinkedHashMap<String, Object>();
+            response.put("id", subRequest.get("id"));
+            response.put("status", reply.status);
+            if (reply.body != null) {
+                response.put("body", reply.body);
+            }
+            responses.add(response);
+        }
+        return new Reply(200, Collections.singletonMap("responses", responses));
+    }
+
+    private Reply token() {
+        long n = tokens.incrementAndGet();
+        Map<String, Object> token = new LinkedHashMap<String, Object>();
+        token.put("token_type", "Bearer");
+        token.put("expires_in", 3600);
+        token.put("access_token", "mock-access-" + n);
+        token.put("refresh_token", "mock-refresh-" + n);
+        return new Reply(200, token);
+    }
+
+    private Map<String, Object> page(MockDirectory directory, List<Map<String, Object>> value) {
+        Map<String, Object> page = new LinkedHashMap<String, Object>();
+        page.put("@odata.context", getGraphEndpoint() + "$metadata#" + directory.getEntitySet());
+        page.put("value", value);
+        return page;
+    }
+
+    /**
+     * Return the URL of a follow-up request: the same query with one parameter replaced
+     */
+    private String link(String path, Map<String, String> query, String name, String value) {
+        StringBuilder link = new StringBuilder(getGraphEndpoint()).append(path);
+        char separator = '?';
+        try {
+            for (Map.Entry<String, String> parameter : query.entrySet()) {
+                if (!parameter.getKey().equals(name) && !parameter.getKey().equals("$skiptoken")
+                        && !parameter.getKey().equals("$deltatoken")) {
+                    link.append(separator).append(parameter.getKey()).append('=')
+                            .append(URLEncoder.encode(parameter.getValue(), "UTF-8"));
+                    separator = '&';
+                }
+            }
+            link.append(separator).append(name).append('=').append(URLEncoder.encode(value, "UTF-8"));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return link.toString();
+    }
+
+    private static Map<String, Object> project(Map<String, Object> object, Set<String> select) {
+        if (select == null) {
+            return object;
+        }
+        Map<String, Object> projected = new LinkedHashMap<String, Object>();
+        projected.put("id", object.get("id"));
+        for (String property : select) {
+            if (object.containsKey(property)) {
+                projected.put(property, object.get(property));
+            }
+        }
+        return projected;
+    }
+
+    private static Set<String> parseSelect(Map<String, String> query) {
+        String select = query.get("$select");
+        return select == null ? null : new HashSet<String>(Arrays.asList(select.split(",")));
+    }
+
+    /**
+     * Parse a query string, with lower-case parameter names as Graph ignores their case
+     */
+    private static Map<String, String> parseQuery(String rawQuery) throws IOException {
+        Map<String, String> query = new LinkedHashMap<String, String>();
+        if (rawQuery != null) {
+            for (String parameter : rawQuery.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0) {
+                    query.put(URLDecoder.decode(parameter.substring(0, equals), "UTF-8").toLowerCase(),
+                            URLDecoder.decode(parameter.substring(equals + 1), "UTF-8"));
+                }
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Read the properties of a create or update body, without the write-only ones
+     */
+    private static Map<String, Object> readProperties(byte[] body) throws IOException {
+        Map<String, Object> properties = mapper.readValue(body, new TypeReference<Map<String, Object>>() {});
+        properties.remove("passwordProfile");
+        for (String name : new ArrayList<String>(properties.keySet())) {
+            if (name.indexOf('@') >= 0) {
+                properties.remove(name);
+            }
+        }
+        return properties;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static Reply error(int status, String code, String message) {
+        Map<String, Object> error = new LinkedHashMap<String, Object>();
+        error.put("code", code);
+        error.put("message", message);
+        return new Reply(status, Collections.singletonMap("error", error));
+    }
+
+    private static final class Reply {
+        final int status;
+        final Object body;
+        final Map<String, String> headers = new HashMap<String, String>();
+
+        Reply(int status, Object body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365;
+
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.AndFilter;
+import org.identityconnectors.framework.common.objects.filter.AttributeFilter;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.OrFilter;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Tests the split of filters between Graph and the connector by the {@link O365FilterSplitter}.
+ */
+public class O365FilterSplitterTests {
+
+    private static final List<String> FILTERABLE = Arrays.asList("displayName", "mail", "accountEnabled");
+
+    private static O365FilterSplitter split(Filter filter) {
+        return new O365FilterSplitter(filter, FILTERABLE);
+    }
+
+    private static void assertAttributeFilter(Filter filter, Class<? extends AttributeFilter> type,
+            String name, Object value) {
+        Assert.assertTrue(type.isInstance(filter), String.valueOf(filter));
+        Assert.assertEquals(((AttributeFilter) filter).getAttribute().getName(), name);
+        Assert.assertEquals(((AttributeFilter) filter).getAttribute().getValue(), Collections.singletonList(value));
+    }
+
+    @Test
+    public void pushesSupportedFilters() {
+        Filter equals = FilterBuilder.equalTo(AttributeBuilder.build("displayName", "Sales"));
+        Filter startsWith = FilterBuilder.startsWith(AttributeBuilder.build("mail", "sales"));
+        O365FilterSplitter splitter = split(FilterBuilder.and(equals, startsWith));
+
+        Assert.assertTrue(splitter.getPushed() instanceof AndFilter);
+        Assert.assertSame(((AndFilter) splitter.getPushed()).getLeft(), equals);
+        Assert.assertSame(((AndFilter) splitter.getPushed()).getRight(), startsWith);
+        Assert.assertNull(splitter.getResidual());
+        Assert.assertTrue(splitter.getResidualAttributes().isEmpty());
+    }
+
+    @Test
+    public void keepsUnfilterableProperties() {
+        Filter kept = FilterBuilder.equalTo(AttributeBuilder.build("department", "Sales"));
+        Filter pushed = FilterBuilder.equalTo(AttributeBuilder.build("displayName", "Sales"));
+        O365FilterSplitter splitter = split(FilterBuilder.and(kept, pushed));
+
+        Assert.assertSame(splitter.getPushed(), pushed);
+        Assert.assertSame(splitter.getResidual(), kept);
+        Assert.assertEquals(splitter.getResidualAttributes(), Collections.singleton("department"));
+    }
+
+    @Test
+    public void pushesInclusiveBoundForGreaterThan() {
+        Filter filter = FilterBuilder.greaterThan(AttributeBuilder.build("displayName", "M"));
+        O365FilterSplitter splitter = split(filter);
+
+        assertAttributeFilter(splitter.getPushed(), GreaterThanOrEqualFilter.class, "displayName", "M");
+        Assert.assertSame(splitter.getResidual(), filter);
+        Assert.assertEquals(splitter.getResidualAttributes(), Collections.singleton("displayName"));
+    }
+
+    @Test
+    public void pushesInclusiveBoundForLessThan() {
+        Filter filter = FilterBuilder.lessThan(AttributeBuilder.build("displayName", "M"));
+        O365FilterSplitter splitter = split(filter);
+
+        assertAttributeFilter(splitter.getPushed(), LessThanOrEqualFilter.class, "displayName", "M");
+        Assert.assertSame(splitter.getResidual(), filter);
+        Assert.assertEquals(splitter.getResidualAttributes(), Collections.singleton("displayName"));
+    }
+
+    @Test
+    public void pushesBothBoundsOfARange() {
+        Filter lower = FilterBuilder.greaterThan(AttributeBuilder.build("displayName", "A"));
+        Filter upper = FilterBuilder.lessThan(AttributeBuilder.build("displayName", "M"));
+        O365FilterSplitter splitter = split(FilterBuilder.and(lower, upper));
+
+        Assert.assertTrue(splitter.getPushed() instanceof AndFilter);
+        AndFilter pushed = (AndFilter) splitter.getPushed();
+        assertAttributeFilter(pushed.getLeft(), GreaterThanOrEqualFilter.class, "displayName", "A");
+        assertAttributeFilter(pushed.getRight(), LessThanOrEqualFilter.class, "displayName", "M");
+
+        Assert.assertTrue(splitter.getResidual() instanceof AndFilter);
+        AndFilter residual = (AndFilter) splitter.getResidual();
+        Assert.assertSame(residual.getLeft(), lower);
+        Assert.assertSame(residual.getRight(), upper);
+    }
+
+    @Test
+    public void keepsGreaterThanOnUnfilterableProperties() {
+        Filter filter = FilterBuilder.greaterThan(AttributeBuilder.build("department", "M"));
+        O365FilterSplitter splitter = split(filter);
+
+        Assert.assertNull(splitter.getPushed());
+        Assert.assertSame(splitter.getResidual(), filter);
+    }
+
+    @Test
+    public void keepsGreaterThanOnBooleans() {
+        Filter filter = FilterBuilder.greaterThan(AttributeBuilder.build("accountEnabled", false));
+        O365FilterSplitter splitter = split(filter);
+
+        Assert.assertNull(splitter.getPushed());
+        Assert.assertSame(splitter.getResidual(), filter);
+    }
+
+    @Test
+    public void keepsGreaterThanOnUid() {
+        Filter filter = FilterBuilder.greaterThan(new Uid("a"));
+        O365FilterSplitter splitter = split(filter);
+
+        Assert.assertNull(splitter.getPushed());
+        Assert.assertSame(splitter.getResidual(), filter);
+        Assert.assertEquals(splitter.getResidualAttributes(), Collections.singleton(Uid.NAME));
+    }
+
+    @Test
+    public void keepsWholeDisjunctionWithGreaterThan() {
+        Filter filter = FilterBuilder.or(
+                FilterBuilder.equalTo(AttributeBuilder.build("displayName", "Sales")),
+                FilterBuilder.greaterThan(AttributeBuilder.build("mail", "m")));
+        O365FilterSplitter splitter = split(filter);
+
+        Assert.assertNull(splitter.getPushed());
+        Assert.assertSame(splitter.getResidual(), filter);
+        Assert.assertEquals(splitter.getResidualAttributes(),
+                new HashSet<String>(Arrays.asList("displayName", "mail")));
+    }
+
+    @Test
+    public void pushesWholeDisjunction() {
+        Filter filter = FilterBuilder.or(
+                FilterBuilder.equalTo(AttributeBuilder.build("displayName", "Sales")),
+                FilterBuilder.greaterThanOrEqualTo(AttributeBuilder.build("mail", "m")));
+        O365FilterSplitter splitter = split(filter);
+
+        Assert.assertTrue(splitter.getPushed() instanceof OrFilter);
+        Assert.assertNull(splitter.getResidual());
+    }
+
+    @Test
+    public void keepsNegations() {
+        Filter filter = FilterBuilder.not(FilterBuilder.equalTo(AttributeBuilder.build("displayName", "Sales")));
+        O365FilterSplitter splitter = split(filter);
+
+        Assert.assertNull(splitter.getPushed());
+        Assert.assertSame(splitter.getResidual(), filter);
+        Assert.assertEquals(splitter.getResidualAttributes(), Collections.singleton("displayName"));
+    }
+
+    @Test
+    public void returnsUidsOfLookups() {
+        Filter filter = FilterBuilder.or(FilterBuilder.equalTo(new Uid("a")),
+                FilterBuilder.or(FilterBuilder.equalTo(new Uid("b")), FilterBuilder.equalTo(new Uid("a"))));
+
+        Assert.assertEquals(O365FilterSplitter.getUids(filter), Arrays.asList("a", "b"));
+        Assert.assertNull(O365FilterSplitter.getUids(FilterBuilder.and(
+                FilterBuilder.equalTo(new Uid("a")), FilterBuilder.equalTo(new Uid("b")))));
+        Assert.assertNull(O365FilterSplitter.getUids(
+                FilterBuilder.greaterThan(AttributeBuilder.build("displayName", "M"))));
+    }
+}
@@ -0,0 +1,393 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.identityconnectors.framework.spi.SearchResultsHandler;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load tests running the {@link O365Connector} against a {@link MockGraphServer}.
+ *
+ * The number of generated users defaults to 20000 and is set with the o365.load.users system
+ * property, e.g. -Do365.load.users=1000000 to enumerate a million users.
+ */
+public class O365LoadTests {
+
+    private static final Log logger = Log.getLog(O365LoadTests.class);
+
+    private static final int USERS = Integer.getInteger("o365.load.users", 20000);
+    private static final int GROUPS = Integer.getInteger("o365.load.groups", 1000);
+    private static final int WRITERS = Integer.getInteger("o365.load.writers", 8);
+    private static final int WRITES = Integer.getInteger("o365.load.writes", 500);
+
+    private MockGraphServer server = null;
+    private O365Connector conn = null;
+
+    @BeforeClass
+    public void startServer() throws Exception {
+        server = new MockGraphServer(USERS, GROUPS);
+        server.start();
+
+        conn = connect(0, null);
+    }
+
+    /**
+     * Return a connector to the mock server
+     *
+     * @param partitions the number of partitions of a full enumeration
+     * @param checkpointDirectory the directory of the enumeration checkpoints, or null
+     */
+    private O365Connector connect(int partitions, String checkpointDirectory) {
+        O365Configuration config = new O365Configuration();
+        // A tenant of its own so that no pooled connection, token or cache is shared with other tests
+        config.setTenant("load-" + System.nanoTime());
+        config.setClientId("clientid");
+        config.setClientSecret(new GuardedString("clientsecret".toCharArray()));
+        config.setAccessToken("accesstoken");
+        config.setTokenExpiration(0L);
+        config.setRefreshToken("refreshtoken");
+        config.setGraphEndpoint(server.getGraphEndpoint());
+        config.setTokenEndpoint(server.getTokenEndpoint());
+        config.setMaxConnectionsPerRoute(WRITERS * 2);
+        config.setRetryBaseDelay(10);
+        config.setEnumerationPartitions(partitions);
+        config.setCheckpointDirectory(checkpointDirectory);
+        config.validate();
+
+        O365Connector connector = new O365Connector();
+        connector.init(config);
+        return connector;
+    }
+
+    @AfterClass
+    public void stopServer() {
+        if (conn != null) {
+            conn.dispose();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test(priority = 0)
+    public void searchAllUsers() {
+        long start = System.currentTimeMillis();
+        int count = count(ObjectClass.ACCOUNT, null);
+        report("Searched", count, start);
+        Assert.assertEquals(count, USERS);
+    }
+
+    @Test(priority = 0)
+    public void searchAllGroups() {
+        long start = System.currentTimeMillis();
+        int count = count(ObjectClass.GROUP, null);
+        report("Searched", count, start);
+        Assert.assertEquals(count, GROUPS);
+    }
+
+    @Test(priority = 0)
+    public void searchAllUsersByPartition() {
+        O365Connector partitioned = connect(8, null);
+        try {
+            final Set<String> uids = new HashSet<String>();
+            long start = System.currentTimeMillis();
+            partitioned.executeQuery(ObjectClass.ACCOUNT, null, new SearchResultsHandler() {
+                @Override
+                public boolean handle(ConnectorObject object) {
+                    Assert.assertTrue(uids.add(object.getUid().getUidValue()), "Duplicate " + object.getUid());
+                    return true;
+                }
+
+                @Override
+                public void handleResult(SearchResult result) {
+                }
+            }, null);
+            report("Searched by partition", uids.size(), start);
+            Assert.assertEquals(uids.size(), USERS);
+        } finally {
+            partitioned.dispose();
+        }
+    }
+
+    @Test(priority = 0)
+    public void resumeFailedSearch() throws Exception {
+        File directory = File.createTempFile("o365-checkpoints", "");
+        Assert.assertTrue(directory.delete() && directory.mkdir());
+        O365Connector resumable = connect(0, directory.getPath());
+        try {
+            final Set<String> uids = new HashSet<String>();
+            final int failAfter = Math.min(USERS / 2, 2500);
+            failSearch(resumable, uids, failAfter);
+
+            // Only the pages handled as a whole are skipped, the failed one is returned again
+            long start = System.currentTimeMillis();
+            final AtomicInteger resumed = new AtomicInteger();
+            resumable.executeQuery(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+                @Override
+                public boolean handle(ConnectorObject object) {
+                    resumed.incrementAndGet();
+                    uids.add(object.getUid().getUidValue());
+                    return true;
+                }
+            }, new OperationOptionsBuilder().setOption(O365Connector.OP_RESUME, Boolean.TRUE).build());
+            report("Resumed", resumed.get(), start);
+            Assert.assertTrue(resumed.get() < USERS, "The search was not resumed");
+            Assert.assertEquals(uids.size(), USERS);
+
+            // A completed search leaves no checkpoint behind, resuming it walks every page
+            final AtomicInteger again = new AtomicInteger();
+            resumable.executeQuery(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+                @Override
+                public boolean handle(ConnectorObject object) {
+                    again.incrementAndGet();
+                    return true;
+                }
+            }, new OperationOptionsBuilder().setOption(O365Connector.OP_RESUME, Boolean.TRUE).build());
+            Assert.assertEquals(again.get(), USERS);
+
+            // Without the resume option a search starts from the first page despite the checkpoint
+            failSearch(resumable, new HashSet<String>(), failAfter);
+            Assert.assertEquals(count(resumable, ObjectClass.ACCOUNT, null), USERS);
+        } finally {
+            resumable.dispose();
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    /**
+     * Run a search of every user that fails once the handler has seen some of them
+     */
+    private static void failSearch(O365Connector connector, final Set<String> uids, final int failAfter) {
+        try {
+            connector.executeQuery(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+                @Override
+                public boolean handle(ConnectorObject object) {
+                    if (uids.size() == failAfter) {
+                        throw new IllegalStateException("Failure injected by the test");
+                    }
+                    uids.add(object.getUid().getUidValue());
+                    return true;
+                }
+            }, null);
+            Assert.fail("The search should have failed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test(priority = 0)
+    public void searchUsersByPage() {
+        final Set<String> uids = new HashSet<String>();
+        final String[] cookie = new String[1];
+        long start = System.currentTimeMillis();
+        int pages = 0;
+        do {
+            OperationOptions options = new OperationOptionsBuilder()
+                    .setPageSize(500)
+                    .setPagedResultsCookie(cookie[0])
+                    .build();
+            cookie[0] = null;
+            conn.executeQuery(ObjectClass.ACCOUNT, null, new SearchResultsHandler() {
+                @Override
+                public boolean handle(ConnectorObject object) {
+                    Assert.assertTrue(uids.add(object.getUid().getUidValue()), "Duplicate " + object.getUid());
+                    return true;
+                }
+
+                @Override
+                public void handleResult(SearchResult result) {
+                    cookie[0] = result.getPagedResultsCookie();
+                }
+            }, options);
+            pages++;
+        } while (cookie[0] != null);
+        report("Paged through", uids.size(), start);
+        logger.info("Read {0} pages", pages);
+        Assert.assertEquals(uids.size(), USERS);
+    }
+
+    @Test(priority = 0)
+    public void searchUsersWithFilter() {
+        long start = System.currentTimeMillis();
+        int count = count(ObjectClass.ACCOUNT,
+                FilterBuilder.startsWith(AttributeBuilder.build("displayName", "User 1")));
+        report("Filtered", count, start);
+        Assert.assertEquals(count, expectedPrefixCount(USERS, 1));
+    }
+
+    @Test(priority = 0)
+    public void readUsersByUid() {
+        long start = System.currentTimeMillis();
+        int reads = Math.min(USERS, WRITES);
+        for (int i = 0; i < reads; i++) {
+            Uid uid = new Uid(new UUID(0x5eedL, i).toString());
+            Assert.assertEquals(count(ObjectClass.ACCOUNT, FilterBuilder.equalTo(uid)), 1);
+        }
+        report("Read", reads, start);
+    }
+
+    @Test(priority = 1)
+    public void concurrentCreatesAndUpdates() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        try {
+            final AtomicInteger next = new AtomicInteger();
+            List<Callable<Uid>> creates = new ArrayList<Callable<Uid>>();
+            for (int i = 0; i < WRITES; i++) {
+                creates.add(new Callable<Uid>() {
+                    @Override
+                    public Uid call() {
+                        String name = "load" + next.getAndIncrement() + MockDirectory.DOMAIN;
+                        return conn.create(ObjectClass.ACCOUNT, new HashSet<Attribute>(Arrays.asList(
+                                new Name(name),
+                                AttributeBuilder.build("displayName", name),
+                                AttributeBuilder.build("mailNickname", name.substring(0, name.indexOf('@'))),
+                                AttributeBuilder.build("accountEnabled", true),
+                                AttributeBuilder.buildPassword("Passw0rd!".toCharArray()))), null);
+                    }
+                });
+            }
+            long start = System.currentTimeMillis();
+            final List<Uid> uids = new ArrayList<Uid>();
+            for (Future<Uid> future : executor.invokeAll(creates)) {
+                uids.add(future.get());
+            }
+            report("Created", uids.size(), start);
+
+            List<Callable<Uid>> updates = new ArrayList<Callable<Uid>>();
+            for (final Uid uid : uids) {
+                updates.add(new Callable<Uid>() {
+                    @Override
+                    public Uid call() {
+                        return conn.update(ObjectClass.ACCOUNT, uid,
+                                Collections.singleton(AttributeBuilder.build("jobTitle", "Load tester")), null);
+                    }
+                });
+            }
+            start = System.currentTimeMillis();
+            for (Future<Uid> future : executor.invokeAll(updates)) {
+                Assert.assertNotNull(future.get());
+            }
+            report("Updated", uids.size(), start);
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(count(ObjectClass.ACCOUNT,
+                FilterBuilder.equalTo(AttributeBuilder.build("jobTitle", "Load tester"))), WRITES);
+    }
+
+    @Test(priority = 2)
+    public void searchWhileThrottled() {
+        int expected = count(ObjectClass.ACCOUNT, null);
+        server.setThrottling(7, 0);
+        try {
+            long start = System.currentTimeMillis();
+            int count = count(ObjectClass.ACCOUNT, null);
+            report("Searched while throttled", count, start);
+            Assert.assertEquals(count, expected);
+        } finally {
+            server.setThrottling(0, 0);
+        }
+    }
+
+    @Test(priority = 2)
+    public void searchWithErrors() {
+        int expected = count(ObjectClass.ACCOUNT, null);
+        server.setErrors(11, 503);
+        server.setLatency(2);
+        try {
+            long start = System.currentTimeMillis();
+            int count = count(ObjectClass.ACCOUNT, null);
+            report("Searched with errors", count, start);
+            Assert.assertEquals(count, expected);
+        } finally {
+            server.setErrors(0, 503);
+            server.setLatency(0);
+        }
+    }
+
+    private int count(ObjectClass objectClass, Filter filter) {
+        return count(conn, objectClass, filter);
+    }
+
+    private static int count(O365Connector connector, ObjectClass objectClass, Filter filter) {
+        final AtomicInteger count = new AtomicInteger();
+        connector.executeQuery(objectClass, filter, new SearchResultsHandler() {
+            @Override
+            public boolean handle(ConnectorObject object) {
+                count.incrementAndGet();
+                return true;
+            }
+
+            @Override
+            public void handleResult(SearchResult result) {
+            }
+        }, null);
+        return count.get();
+    }
+
+    /**
+     * Return how many of the users 0 to n - 1 have a number starting with the given digit
+     */
+    private static int expectedPrefixCount(int n, int digit) {
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (Integer.toString(i).startsWith(Integer.toString(digit))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void report(String operation, int count, long start) {
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        logger.info("{0} {1} objects in {2}ms, {3} objects/s, {4} requests so far",
+                operation, count, elapsed, count * 1000L / elapsed, server.getRequestCount());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365;
+
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests the lookup of objects by {@link Uid} against a {@link CannedGraphServer}.
+ */
+public class O365LookupTests {
+
+    private static final String GROUP_ID = "5a1c8a3e-7d54-4b8e-9f60-0b8e3c1e2f11";
+
+    private CannedGraphServer server = null;
+    private O365Connector conn = null;
+
+    @BeforeClass
+    public void startServer() throws Exception {
+        server = new CannedGraphServer();
+        server.start();
+        server.reply("GET", "groups/" + GROUP_ID, null, 200,
+                "{\"id\":\"" + GROUP_ID + "\",\"displayName\":\"Sales\"}");
+        server.reply("GET", "groups/not-an-id", null, 400, "{\"error\":{\"code\":\"Request_BadRequest\","
+                + "\"message\":\"Invalid object identifier 'not-an-id'.\"}}");
+        server.reply("GET", "groups/bad-request", null, 400, "{\"error\":{\"code\":\"Request_BadRequest\","
+                + "\"message\":\"Unsupported query.\"}}");
+
+        conn = new O365Connector();
+        conn.init(server.newConfiguration("lookup"));
+    }
+
+    @AfterClass
+    public void stopServer() {
+        if (conn != null) {
+            conn.dispose();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private List<ConnectorObject> find(ObjectClass objectClass, String uid) {
+        final List<ConnectorObject> objects = new ArrayList<ConnectorObject>();
+        conn.executeQuery(objectClass, FilterBuilder.equalTo(new Uid(uid)), new ResultsHandler() {
+            @Override
+            public boolean handle(ConnectorObject object) {
+                objects.add(object);
+                return true;
+            }
+        }, null);
+        return objects;
+    }
+
+    @Test
+    public void findsObjectByUid() {
+        List<ConnectorObject> objects = find(ObjectClass.GROUP, GROUP_ID);
+        Assert.assertEquals(objects.size(), 1);
+        Assert.assertEquals(objects.get(0).getUid().getUidValue(), GROUP_ID);
+    }
+
+    @Test
+    public void unknownUidIsNotFound() {
+        Assert.assertTrue(find(ObjectClass.ACCOUNT, "0b2d6c41-9a7e-4f0c-8d35-6e1f4a2b9c70").isEmpty());
+    }
+
+    @Test
+    public void invalidUidIsNotFound() {
+        // Graph answers 400 rather than 404 for a malformed id
+        Assert.assertTrue(find(ObjectClass.GROUP, "not-an-id").isEmpty());
+    }
+
+    @Test(expectedExceptions = RuntimeException.class)
+    public void otherBadRequestsFail() {
+        find(ObjectClass.GROUP, "bad-request");
+    }
+
+    @Test
+    public void uidIsEncodedAsOnePathSegment() {
+        int before = server.getRequests().size();
+        // Unencoded, these would address the members or carry a query string
+        Assert.assertTrue(find(ObjectClass.GROUP, GROUP_ID + "/members").isEmpty());
+        Assert.assertTrue(find(ObjectClass.ACCOUNT, "user 1?$select=id").isEmpty());
+        List<String> requests = server.getRequests();
+        Assert.assertTrue(requests.get(before).startsWith("GET groups/" + GROUP_ID + "%2Fmembers"),
+                requests.get(before));
+        Assert.assertTrue(requests.get(before + 1).startsWith("GET users/user%201%3F%24select%3Did"),
+                requests.get(before + 1));
+    }
+}
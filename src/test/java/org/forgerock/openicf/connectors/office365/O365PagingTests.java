@@ -0,0 +1,158 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365;
+
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.spi.SearchResultsHandler;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests the paged searches of the {@link O365Connector} against a {@link CannedGraphServer}.
+ */
+public class O365PagingTests {
+
+    private CannedGraphServer server = null;
+    private O365Connector conn = null;
+
+    @BeforeClass
+    public void startServer() throws Exception {
+        server = new CannedGraphServer();
+        server.start();
+        String groups = server.getGraphEndpoint() + "groups";
+        // Three pages of two groups
+        server.reply("GET", "groups", "$top=2", 200, "{\"value\":[{\"id\":\"a\"},{\"id\":\"b\"}],"
+                + "\"@odata.nextLink\":\"" + groups + "?$top=2&$skiptoken=p2\"}");
+        server.reply("GET", "groups", "$skipToken=p2", 200, "{\"value\":[{\"id\":\"c\"},{\"id\":\"d\"}],"
+                + "\"@odata.nextLink\":\"" + groups + "?$top=2&$skiptoken=p3\"}");
+        server.reply("GET", "groups", "$skipToken=p3", 200, "{\"value\":[{\"id\":\"e\"}]}");
+
+        conn = new O365Connector();
+        conn.init(server.newConfiguration("paging"));
+    }
+
+    @AfterClass
+    public void stopServer() {
+        if (conn != null) {
+            conn.dispose();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    /**
+     * Handler collecting the names of a page and its paging cookie
+     */
+    private static class CollectingHandler implements SearchResultsHandler {
+        final List<String> names = new ArrayList<String>();
+        String cookie;
+
+        @Override
+        public boolean handle(ConnectorObject object) {
+            names.add(object.getName().getNameValue());
+            return true;
+        }
+
+        @Override
+        public void handleResult(SearchResult result) {
+            cookie = result.getPagedResultsCookie();
+        }
+    }
+
+    private CollectingHandler search(String cookie) {
+        OperationOptionsBuilder builder = new OperationOptionsBuilder();
+        builder.setPageSize(2);
+        if (cookie != null) {
+            builder.setPagedResultsCookie(cookie);
+        }
+        CollectingHandler handler = new CollectingHandler();
+        conn.executeQuery(ObjectClass.GROUP, null, handler, builder.build());
+        return handler;
+    }
+
+    /**
+     * Page through every group, returning the names in the order they were read
+     */
+    private List<String> searchAll() {
+        List<String> names = new ArrayList<String>();
+        String cookie = null;
+        do {
+            CollectingHandler handler = search(cookie);
+            names.addAll(handler.names);
+            cookie = handler.cookie;
+        } while (cookie != null);
+        return names;
+    }
+
+    @Test
+    public void cookieLocatesTheNextPage() {
+        CollectingHandler first = search(null);
+        Assert.assertEquals(first.names, Arrays.asList("a", "b"));
+        Assert.assertEquals(first.cookie, "p2");
+        CollectingHandler second = search(first.cookie);
+        Assert.assertEquals(second.names, Arrays.asList("c", "d"));
+        Assert.assertEquals(second.cookie, "p3");
+        CollectingHandler last = search(second.cookie);
+        Assert.assertEquals(last.names, Arrays.asList("e"));
+        Assert.assertNull(last.cookie);
+    }
+
+    @Test
+    public void interleavedSearchesKeepTheirOwnPosition() {
+        CollectingHandler first = search(null);
+        CollectingHandler other = search(null);
+        CollectingHandler second = search(first.cookie);
+        // Starting another search does not reset the first one, nor the reverse
+        Assert.assertEquals(second.names, Arrays.asList("c", "d"));
+        Assert.assertEquals(search(other.cookie).names, Arrays.asList("c", "d"));
+        Assert.assertEquals(search(second.cookie).names, Arrays.asList("e"));
+    }
+
+    @Test
+    public void concurrentSearchesShareTheConnector() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<String>>> results = new ArrayList<Future<List<String>>>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() {
+                        return searchAll();
+                    }
+                }));
+            }
+            for (Future<List<String>> result : results) {
+                Assert.assertEquals(result.get(), Arrays.asList("a", "b", "c", "d", "e"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
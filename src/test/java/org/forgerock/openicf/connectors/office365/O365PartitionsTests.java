@@ -0,0 +1,120 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365;
+
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.filter.AndFilter;
+import org.identityconnectors.framework.common.objects.filter.AttributeFilter;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanOrEqualFilter;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests the name ranges and the de-duplication of their shared bounds by the {@link O365Partitions}.
+ */
+public class O365PartitionsTests {
+
+    private static ConnectorObject newObject(String uid, String name) {
+        return new ConnectorObjectBuilder().setUid(uid).setName(name).build();
+    }
+
+    private static void assertBound(Filter filter, Class<? extends AttributeFilter> type, String bound) {
+        Assert.assertTrue(type.isInstance(filter), String.valueOf(filter));
+        Assert.assertEquals(((AttributeFilter) filter).getAttribute().getName(), Name.NAME);
+        Assert.assertEquals(((AttributeFilter) filter).getAttribute().getValue(), Collections.singletonList(bound));
+    }
+
+    private static void assertRange(Filter filter, String lower, String upper) {
+        Assert.assertTrue(filter instanceof AndFilter, String.valueOf(filter));
+        assertBound(((AndFilter) filter).getLeft(), GreaterThanOrEqualFilter.class, lower);
+        assertBound(((AndFilter) filter).getRight(), LessThanOrEqualFilter.class, upper);
+    }
+
+    @Test
+    public void splitsIntoOpenEndedRanges() {
+        List<Filter> filters = new O365Partitions(null, 4).getFilters();
+
+        Assert.assertEquals(filters.size(), 4);
+        assertBound(filters.get(0), LessThanOrEqualFilter.class, "9");
+        assertRange(filters.get(1), "9", "i");
+        assertRange(filters.get(2), "i", "r");
+        assertBound(filters.get(3), GreaterThanOrEqualFilter.class, "r");
+    }
+
+    @Test
+    public void doesNotSplitASingleRange() {
+        Assert.assertEquals(new O365Partitions(null, 1).getFilters(), Collections.<Filter>singletonList(null));
+        Assert.assertEquals(new O365Partitions(null, 0).getFilters(), Collections.<Filter>singletonList(null));
+    }
+
+    @Test
+    public void splitsOncePerCharacterAtMost() {
+        List<Filter> filters = new O365Partitions(null, 100).getFilters();
+
+        Assert.assertEquals(filters.size(), 36);
+        assertBound(filters.get(0), LessThanOrEqualFilter.class, "1");
+        assertRange(filters.get(1), "1", "2");
+        assertBound(filters.get(35), GreaterThanOrEqualFilter.class, "z");
+    }
+
+    @Test
+    public void andsRangesWithTheQuery() {
+        Filter query = FilterBuilder.equalTo(AttributeBuilder.build("department", "Sales"));
+        List<Filter> filters = new O365Partitions(query, 2).getFilters();
+
+        Assert.assertEquals(filters.size(), 2);
+        for (Filter filter : filters) {
+            Assert.assertTrue(filter instanceof AndFilter);
+            Assert.assertSame(((AndFilter) filter).getLeft(), query);
+        }
+        assertBound(((AndFilter) filters.get(0)).getRight(), LessThanOrEqualFilter.class, "i");
+        assertBound(((AndFilter) filters.get(1)).getRight(), GreaterThanOrEqualFilter.class, "i");
+
+        Assert.assertEquals(new O365Partitions(query, 1).getFilters(), Collections.singletonList(query));
+    }
+
+    @Test
+    public void dropsSecondCopyOfObjectsNamedLikeABound() {
+        O365Partitions partitions = new O365Partitions(null, 4);
+
+        Assert.assertFalse(partitions.isDuplicate(newObject("u1", "i")));
+        Assert.assertTrue(partitions.isDuplicate(newObject("u1", "i")));
+        // Bounds are compared without case
+        Assert.assertFalse(partitions.isDuplicate(newObject("u2", "R")));
+        Assert.assertTrue(partitions.isDuplicate(newObject("u2", "R")));
+        // Other objects named like a bound are distinct
+        Assert.assertFalse(partitions.isDuplicate(newObject("u3", "i")));
+    }
+
+    @Test
+    public void keepsObjectsNotNamedLikeABound() {
+        O365Partitions partitions = new O365Partitions(null, 4);
+
+        Assert.assertFalse(partitions.isDuplicate(newObject("u1", "ingrid")));
+        Assert.assertFalse(partitions.isDuplicate(newObject("u1", "ingrid")));
+        Assert.assertFalse(partitions.isDuplicate(newObject("u2", "a")));
+        Assert.assertFalse(partitions.isDuplicate(newObject("u2", "a")));
+    }
+}
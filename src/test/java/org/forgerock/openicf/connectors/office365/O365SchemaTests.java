@@ -0,0 +1,122 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365;
+
+import org.forgerock.openicf.connectors.office365.client.objects.CreateUser;
+import org.forgerock.openicf.connectors.office365.client.objects.Group;
+import org.forgerock.openicf.connectors.office365.client.objects.ObjectClassSchema;
+import org.forgerock.openicf.connectors.office365.client.objects.SchemaAttribute;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.AttributeInfo;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.ObjectClassInfo;
+import org.identityconnectors.framework.common.objects.Schema;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tests the built-in {@link Schema} shared by every {@link O365Connector}.
+ */
+public class O365SchemaTests {
+
+    private CannedGraphServer server = null;
+
+    @BeforeClass
+    public void startServer() throws Exception {
+        server = new CannedGraphServer();
+        server.start();
+    }
+
+    @AfterClass
+    public void stopServer() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private Schema schema(String tenant) {
+        O365Connector conn = new O365Connector();
+        conn.init(server.newConfiguration(tenant));
+        try {
+            return conn.schema();
+        } finally {
+            conn.dispose();
+        }
+    }
+
+    private static Set<String> names(ObjectClassInfo info) {
+        Set<String> names = new HashSet<String>();
+        for (AttributeInfo attr : info.getAttributeInfo()) {
+            names.add(attr.getName());
+        }
+        return names;
+    }
+
+    @Test
+    public void connectorsShareTheSchema() {
+        Assert.assertSame(schema("schema-a"), schema("schema-a"));
+        Assert.assertSame(schema("schema-a"), schema("schema-b"));
+    }
+
+    @Test
+    public void schemaDescribesUsersAndGroups() {
+        Schema schema = schema("schema-a");
+        Assert.assertEquals(schema.getObjectClassInfo().size(), 2);
+        Assert.assertSame(schema.findObjectClassInfo(ObjectClass.ACCOUNT_NAME),
+                ObjectClassSchema.ACCOUNT.getObjectClassInfo());
+        Assert.assertSame(schema.findObjectClassInfo(ObjectClass.GROUP_NAME),
+                ObjectClassSchema.GROUP.getObjectClassInfo());
+
+        Set<String> account = names(ObjectClassSchema.ACCOUNT.getObjectClassInfo());
+        Assert.assertTrue(account.contains(Name.NAME));
+        Assert.assertTrue(account.contains("userPrincipalName"));
+        Set<String> group = names(ObjectClassSchema.GROUP.getObjectClassInfo());
+        Assert.assertTrue(group.contains("displayName"));
+        Assert.assertTrue(group.contains("members"));
+    }
+
+    @Test
+    public void beansShareTheirAttributeList() {
+        Assert.assertSame(new Group(new HashSet<Attribute>()).getSchemaAttributes(),
+                new Group(new HashSet<Attribute>()).getSchemaAttributes());
+        Assert.assertEquals(new CreateUser(new HashSet<Attribute>()).getSchemaAttributes(),
+                ObjectClassSchema.ACCOUNT.getAttributes());
+        Assert.assertEquals(new Group(new HashSet<Attribute>()).getSchemaAttributes(),
+                ObjectClassSchema.GROUP.getAttributes());
+        Assert.assertSame(ObjectClassSchema.of(ObjectClass.ACCOUNT), ObjectClassSchema.ACCOUNT);
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void attributeListIsReadOnly() {
+        ObjectClassSchema.GROUP.getAttributes().add(new SchemaAttribute("extra", ""));
+    }
+
+    @Test
+    public void attributesAreCopiedWhenChanged() {
+        SchemaAttribute attr = ObjectClassSchema.GROUP.getAttributes().get(0);
+        SchemaAttribute copy = attr.withRequired(!attr.required);
+        Assert.assertNotSame(copy, attr);
+        Assert.assertEquals(copy.required, !attr.required);
+        Assert.assertEquals(ObjectClassSchema.GROUP.getAttributes().get(0).required, attr.required);
+        Assert.assertEquals(copy.property, attr.property);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365;
+
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.AttributeUtil;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncDeltaType;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.spi.SyncTokenResultsHandler;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests the sync of the {@link O365Connector} on the delta queries of a {@link CannedGraphServer}.
+ */
+public class O365SyncTests {
+
+    private CannedGraphServer server = null;
+    private O365Connector conn = null;
+
+    @BeforeClass
+    public void startServer() throws Exception {
+        server = new CannedGraphServer();
+        server.start();
+        String delta = server.getGraphEndpoint() + "users/delta";
+        // The initial round, in two pages
+        server.reply("GET", "users/delta", null, 200, "{\"value\":["
+                + "{\"id\":\"a\",\"userPrincipalName\":\"a@contoso.com\",\"displayName\":\"A\"}],"
+                + "\"@odata.nextLink\":\"" + delta + "?$skiptoken=2\"}");
+        server.reply("GET", "users/delta", "$skiptoken=2", 200, "{\"value\":["
+                + "{\"id\":\"b\",\"userPrincipalName\":\"b@contoso.com\",\"displayName\":\"B\"}],"
+                + "\"@odata.deltaLink\":\"" + delta + "?$deltatoken=1\"}");
+        // The changes since, an update and a removal
+        server.reply("GET", "users/delta", "$deltatoken=1", 200, "{\"value\":["
+                + "{\"id\":\"b\",\"userPrincipalName\":\"b@contoso.com\",\"displayName\":\"B2\"},"
+                + "{\"id\":\"a\",\"@removed\":{\"reason\":\"deleted\"}}],"
+                + "\"@odata.deltaLink\":\"" + delta + "?$deltatoken=2\"}");
+        server.reply("GET", "users/delta", "$deltatoken=2", 200, "{\"value\":[],"
+                + "\"@odata.deltaLink\":\"" + delta + "?$deltatoken=2\"}");
+        // The current state, without enumerating the objects
+        server.reply("GET", "users/delta", "$deltatoken=latest", 200, "{\"value\":[],"
+                + "\"@odata.deltaLink\":\"" + delta + "?$deltatoken=3\"}");
+        server.reply("GET", "groups/delta", "$deltatoken=latest", 200, "{\"value\":[]}");
+
+        conn = new O365Connector();
+        conn.init(server.newConfiguration("sync"));
+    }
+
+    @AfterClass
+    public void stopServer() {
+        if (conn != null) {
+            conn.dispose();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    /**
+     * Handler collecting the deltas and the final token of a sync
+     */
+    private static class CollectingHandler implements SyncTokenResultsHandler {
+        final List<SyncDelta> deltas = new ArrayList<SyncDelta>();
+        SyncToken token;
+
+        @Override
+        public boolean handle(SyncDelta delta) {
+            deltas.add(delta);
+            return true;
+        }
+
+        @Override
+        public void handleResult(SyncToken result) {
+            token = result;
+        }
+    }
+
+    private CollectingHandler sync(SyncToken token, OperationOptions options) {
+        CollectingHandler handler = new CollectingHandler();
+        conn.sync(ObjectClass.ACCOUNT, token, handler, options);
+        return handler;
+    }
+
+    /**
+     * Return the requests made by an action
+     */
+    private List<String> requestsOf(Runnable action) {
+        int before = server.getRequests().size();
+        action.run();
+        List<String> requests = server.getRequests();
+        return requests.subList(before, requests.size());
+    }
+
+    @Test
+    public void initialRoundReturnsEveryPage() {
+        CollectingHandler handler = sync(null, null);
+        Assert.assertEquals(handler.deltas.size(), 2);
+        for (SyncDelta delta : handler.deltas) {
+            Assert.assertEquals(delta.getDeltaType(), SyncDeltaType.CREATE_OR_UPDATE);
+        }
+        Assert.assertEquals(handler.deltas.get(0).getObject().getName().getNameValue(), "a@contoso.com");
+        Assert.assertEquals(handler.deltas.get(1).getObject().getName().getNameValue(), "b@contoso.com");
+        Assert.assertEquals(handler.token.getValue(), server.getGraphEndpoint() + "users/delta?$deltatoken=1");
+    }
+
+    @Test
+    public void deltaLinkIsTheNextToken() {
+        final CollectingHandler[] handler = new CollectingHandler[1];
+        List<String> requests = requestsOf(new Runnable() {
+            @Override
+            public void run() {
+                handler[0] = sync(new SyncToken(server.getGraphEndpoint() + "users/delta?$deltatoken=1"), null);
+            }
+        });
+        // The token is followed as is, and the changes are not read again by id
+        Assert.assertEquals(requests, Arrays.asList("GET users/delta?$deltatoken=1"));
+        Assert.assertEquals(handler[0].deltas.size(), 2);
+        Assert.assertEquals(handler[0].token.getValue(), server.getGraphEndpoint() + "users/delta?$deltatoken=2");
+
+        CollectingHandler next = sync(handler[0].token, null);
+        Assert.assertTrue(next.deltas.isEmpty());
+        Assert.assertEquals(next.token.getValue(), handler[0].token.getValue());
+    }
+
+    @Test
+    public void updatesAreReturnedFromTheDelta() {
+        CollectingHandler handler = sync(new SyncToken(server.getGraphEndpoint() + "users/delta?$deltatoken=1"),
+                new OperationOptionsBuilder().setAttributesToGet("displayName").build());
+        SyncDelta update = handler.deltas.get(0);
+        Assert.assertEquals(update.getDeltaType(), SyncDeltaType.CREATE_OR_UPDATE);
+        Assert.assertEquals(update.getUid().getUidValue(), "b");
+        Assert.assertEquals(update.getObject().getName().getNameValue(), "b@contoso.com");
+        Assert.assertEquals(AttributeUtil.getStringValue(update.getObject().getAttributeByName("displayName")), "B2");
+    }
+
+    @Test
+    public void removedObjectsAreDeleted() {
+        CollectingHandler handler = sync(new SyncToken(server.getGraphEndpoint() + "users/delta?$deltatoken=1"), null);
+        SyncDelta removal = handler.deltas.get(1);
+        Assert.assertEquals(removal.getDeltaType(), SyncDeltaType.DELETE);
+        Assert.assertEquals(removal.getUid().getUidValue(), "a");
+        Assert.assertNull(removal.getObject());
+    }
+
+    @Test
+    public void firstRoundSelectsTheName() {
+        List<String> requests = requestsOf(new Runnable() {
+            @Override
+            public void run() {
+                sync(null, new OperationOptionsBuilder().setAttributesToGet("displayName").build());
+            }
+        });
+        String first = requests.get(0);
+        Assert.assertTrue(first.startsWith("GET users/delta?$select="), first);
+        List<String> select = Arrays.asList(first.substring(first.indexOf('=') + 1).split(","));
+        Assert.assertTrue(select.contains("userPrincipalName"), first);
+        Assert.assertTrue(select.contains("displayName"), first);
+    }
+
+    @Test
+    public void latestTokenTakesASingleRequest() {
+        final SyncToken[] latest = new SyncToken[1];
+        List<String> requests = requestsOf(new Runnable() {
+            @Override
+            public void run() {
+                latest[0] = conn.getLatestSyncToken(ObjectClass.ACCOUNT);
+            }
+        });
+        Assert.assertEquals(latest[0].getValue(), server.getGraphEndpoint() + "users/delta?$deltatoken=3");
+        Assert.assertEquals(requests.size(), 1);
+        Assert.assertTrue(requests.get(0).startsWith("GET users/delta?$select="), requests.get(0));
+        Assert.assertTrue(requests.get(0).endsWith("&$deltatoken=latest"), requests.get(0));
+        // Every property is selected, as later rounds keep the selection of the link
+        Assert.assertTrue(requests.get(0).contains("userPrincipalName"), requests.get(0));
+    }
+
+    @Test(expectedExceptions = ConnectorException.class)
+    public void latestTokenRequiresADeltaLink() {
+        conn.getLatestSyncToken(ObjectClass.GROUP);
+    }
+}
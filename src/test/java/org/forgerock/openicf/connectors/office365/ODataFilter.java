@@ -0,0 +1,214 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for
+ * the specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file
+ * and include the License file at legal/CDDLv1.0.txt. If applicable, add the following
+ * below the CDDL Header, with the fields enclosed by brackets [] replaced by your
+ * own identifying information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openicf.connectors.office365;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parser and evaluator of the $filter expressions the connector sends: eq, ge and le
+ * comparisons, startsWith, not, and, or and parentheses. Comparisons ignore case, like Graph.
+ */
+abstract class ODataFilter {
+
+    /**
+     * Evaluate the filter on an object
+     *
+     * @param object the JSON object
+     * @return true if the object matches
+     */
+    abstract boolean matches(Map<String, Object> object);
+
+    /**
+     * Parse a filter
+     *
+     * @param filter the $filter expression
+     * @return the parsed filter
+     * @throws IllegalArgumentException if the expression is not supported
+     */
+    static ODataFilter parse(String filter) {
+        Parser parser = new Parser(tokenize(filter));
+        ODataFilter parsed = parser.or();
+        if (parser.position < parser.tokens.size()) {
+            throw new IllegalArgumentException("Unexpected " + parser.tokens.get(parser.position));
+        }
+        return parsed;
+    }
+
+    private static List<String> tokenize(String filter) {
+        List<String> tokens = new ArrayList<String>();
+        int i = 0;
+        while (i < filter.length()) {
+            char c = filter.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')' || c == ',') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (c == '\'') {
+                // Keep the opening quote to tell literals from names, '' is an escaped quote
+                StringBuilder literal = new StringBuilder("'");
+                i++;
+                while (i < filter.length()) {
+                    if (filter.charAt(i) == '\'') {
+                        if (i + 1 < filter.length() && filter.charAt(i + 1) == '\'') {
+                            literal.append('\'');
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    literal.append(filter.charAt(i++));
+                }
+                if (i >= filter.length()) {
+                    throw new IllegalArgumentException("Unterminated string in " + filter);
+                }
+                i++;
+                tokens.add(literal.toString());
+            } else {
+                int start = i;
+                while (i < filter.length() && !Character.isWhitespace(filter.charAt(i))
+                        && "(),'".indexOf(filter.charAt(i)) < 0) {
+                    i++;
+                }
+                tokens.add(filter.substring(start, i));
+            }
+        }
+        return tokens;
+    }
+
+    private static final class Parser {
+        final List<String> tokens;
+        int position = 0;
+
+        Parser(List<String> tokens) {
+            this.tokens = tokens;
+        }
+
+        ODataFilter or() {
+            ODataFilter left = and();
+            while (accept("or")) {
+                final ODataFilter l = left;
+                final ODataFilter r = and();
+                left = new ODataFilter() {
+                    boolean matches(Map<String, Object> object) {
+                        return l.matches(object) || r.matches(object);
+                    }
+                };
+            }
+            return left;
+        }
+
+        ODataFilter and() {
+            ODataFilter left = factor();
+            while (accept("and")) {
+                final ODataFilter l = left;
+                final ODataFilter r = factor();
+                left = new ODataFilter() {
+                    boolean matches(Map<String, Object> object) {
+                        return l.matches(object) && r.matches(object);
+                    }
+                };
+            }
+            return left;
+        }
+
+        ODataFilter factor() {
+            if (accept("not")) {
+                final ODataFilter negated = factor();
+                return new ODataFilter() {
+                    boolean matches(Map<String, Object> object) {
+                        return !negated.matches(object);
+                    }
+                };
+            }
+            if (accept("(")) {
+                ODataFilter nested = or();
+                expect(")");
+                return nested;
+            }
+            if (accept("startsWith")) {
+                expect("(");
+                final String property = next();
+                expect(",");
+                final String prefix = literal(next()).toString().toLowerCase();
+                expect(")");
+                return new ODataFilter() {
+                    boolean matches(Map<String, Object> object) {
+                        Object value = object.get(property);
+                        return value != null && value.toString().toLowerCase().startsWith(prefix);
+                    }
+                };
+            }
+            final String property = next();
+            final String operator = next();
+            final Object operand = literal(next());
+            if (!"eq".equals(operator) && !"ge".equals(operator) && !"le".equals(operator)) {
+                throw new IllegalArgumentException("Unsupported operator " + operator);
+            }
+            return new ODataFilter() {
+                boolean matches(Map<String, Object> object) {
+                    Object value = object.get(property);
+                    if (value == null) {
+                        return false;
+                    }
+                    int comparison = value instanceof String
+                            ? ((String) value).compareToIgnoreCase(operand.toString())
+                            : (value.equals(operand) ? 0 : 1);
+                    if ("eq".equals(operator)) {
+                        return comparison == 0;
+                    }
+                    if (!(value instanceof String)) {
+                        return false;
+                    }
+                    return "ge".equals(operator) ? comparison >= 0 : comparison <= 0;
+                }
+            };
+        }
+
+        private Object literal(String token) {
+            if (token.startsWith("'")) {
+                return token.substring(1);
+            }
+            if ("true".equals(token) || "false".equals(token)) {
+                return Boolean.valueOf(token);
+            }
+            throw new IllegalArgumentException("Unsupported literal " + token);
+        }
+
+        private boolean accept(String token) {
+            if (position < tokens.size() && tokens.get(position).equalsIgnoreCase(token)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String token) {
+            if (!accept(token)) {
+                throw new IllegalArgumentException("Expected " + token);
+            }
+        }
+
+        private String next() {
+            if (position >= tokens.size()) {
+                throw new IllegalArgumentException("Unexpected end of filter");
+            }
+            return tokens.get(position++);
+        }
+    }
+}